@@ -0,0 +1,76 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.ReactiveApplication;
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.model.MetricsSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared fixtures for the benchmarks
+ */
+final class BenchmarkSupport {
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * An ObjectMapper configured as Spring Boot configures the application's
+     */
+    static ObjectMapper objectMapper() {
+        return Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+    }
+
+    /**
+     * A typical chat message, as broadcast to a room
+     */
+    static ChatMessage chatMessage() {
+        return new ChatMessage(1_234_567L, "general", "alice",
+                "Has anyone tried the new reactive endpoints yet? The latency numbers look great.",
+                LocalDateTime.of(2024, 5, 1, 12, 30, 15, 123_456_000));
+    }
+
+    /**
+     * A metrics snapshot with every section filled in, as sampled for the stream
+     */
+    static MetricsSnapshot metricsSnapshot() {
+        MetricsSnapshot.LatencyWindow window = new MetricsSnapshot.LatencyWindow(125.4, 3.2, 18.7, 42.1, 1254);
+        MetricsSnapshot.LatencyWindows windows = new MetricsSnapshot.LatencyWindows(window, window, window);
+        MetricsSnapshot.StageMetrics stage = new MetricsSnapshot.StageMetrics(254_321L, 4, 0.37, windows);
+        return new MetricsSnapshot(1_714_566_615_123L,
+                new MetricsSnapshot.JvmMetrics(134_217_728L, 268_435_456L, 4_294_967_296L, 98_566_144L, 42, 47, 30),
+                new MetricsSnapshot.HttpMetrics(1_254_321L, 125.4, 4.87, 312, windows),
+                new MetricsSnapshot.DbMetrics(1.92, 7, 843_210L, 12, 3, 0.84, 88.1, windows,
+                        new MetricsSnapshot.PoolMetrics(7, 3, 10, 20, 0, 843_215L, 0, 0.12, windows),
+                        new MetricsSnapshot.AdmissionMetrics(254_300L, 21, 0, 0)),
+                new MetricsSnapshot.ChatMetrics(stage, stage, stage, stage, stage));
+    }
+
+    /**
+     * Start the application without a web server, against its own in-memory H2 database
+     * @param args extra properties as --name=value
+     */
+    static ConfigurableApplicationContext startApplication(String... args) {
+        // Command-line arguments outrank application.yml, whose debug logging would swamp the results
+        List<String> all = new ArrayList<>(List.of(
+                "--spring.main.banner-mode=off",
+                "--spring.r2dbc.url=r2dbc:h2:mem:///benchmark;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--logging.level.root=WARN",
+                "--logging.level.com.demo.reactive=WARN",
+                "--logging.level.io.r2dbc=WARN"));
+        all.addAll(List.of(args));
+        return new SpringApplicationBuilder(ReactiveApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(all.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,111 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import com.demo.reactive.service.ChatMessageService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time from receiving a chat message until it may be broadcast, from four threads, for
+ * each way the write path has worked: insert waits for its row, as save().subscribe()
+ * did; write-behind returns once the message has an ID and is queued; journal also
+ * waits for the group commit that syncs its journal entry. Throughput and the sampled
+ * latency distribution (p99 among its percentiles) are both reported.
+ * <p>
+ * Senders hold off while a write buffer's worth of messages is queued, rather than have
+ * them rejected, so throughput is what the database sustains and backlog stalls show in
+ * the latency tail. Admission limits are lifted for the same reason, and queued rows are
+ * drained after each iteration.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ChatJournalBenchmark {
+
+    private static final int ROOMS = 10;
+    // Below chat.persistence.buffer-capacity, leaving room for threads that pass the check together
+    private static final int MAX_PENDING = 9_000;
+
+    @Param({"insert", "write-behind", "journal"})
+    public String path;
+
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private ChatMessageService chatMessageService;
+    private ChatMessageRepository chatMessageRepository;
+    private DatabaseClient databaseClient;
+    private Gauge pending;
+
+    @Setup(Level.Trial)
+    public void startApplication() throws IOException {
+        directory = Files.createTempDirectory("chat-journal-benchmark");
+        context = BenchmarkSupport.startApplication(
+                "--chat.persistence.journal.enabled=" + path.equals("journal"),
+                "--chat.persistence.journal.directory=" + directory.resolve("journal"),
+                "--chat.archive.directory=" + directory.resolve("archive"),
+                "--chat.persistence.admission.delay-threshold=1000000",
+                "--chat.persistence.admission.reject-threshold=1000000");
+        chatMessageService = context.getBean(ChatMessageService.class);
+        chatMessageRepository = context.getBean(ChatMessageRepository.class);
+        databaseClient = context.getBean(DatabaseClient.class);
+        pending = context.getBean(MeterRegistry.class).get("chat.persistence.pending").gauge();
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        while (pending.value() > 0) {
+            LockSupport.parkNanos(1_000_000);
+        }
+        databaseClient.sql("DELETE FROM chat_messages").then().block();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public ChatMessage accept() {
+        int n = sequence.getAndIncrement();
+        ChatMessage message = new ChatMessage("room-" + (n % ROOMS), "user-" + (n % 50), "Benchmark message number " + n);
+        if (path.equals("insert")) {
+            return chatMessageRepository.save(message).block();
+        }
+        while (pending.value() >= MAX_PENDING) {
+            LockSupport.parkNanos(100_000);
+        }
+        return chatMessageService.saveMessage(message).block();
+    }
+}
@@ -0,0 +1,77 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.service.ChatMessageService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link ChatMessageService#saveMessage} against the application's in-memory H2 database.
+ * saveMessage returns once a message is queued, so each invocation queues a burst and
+ * then waits for the write-behind pipeline to drain it; the score is messages written
+ * per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatPersistenceBenchmark {
+
+    private static final int MESSAGES = 1_000;
+    private static final int ROOMS = 10;
+
+    private ConfigurableApplicationContext context;
+    private ChatMessageService chatMessageService;
+    private DatabaseClient databaseClient;
+    private Gauge pending;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkSupport.startApplication();
+        chatMessageService = context.getBean(ChatMessageService.class);
+        databaseClient = context.getBean(DatabaseClient.class);
+        pending = context.getBean(MeterRegistry.class).get("chat.persistence.pending").gauge();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearMessages() {
+        databaseClient.sql("DELETE FROM chat_messages").then().block();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void saveMessage() {
+        for (int i = 0; i < MESSAGES; i++) {
+            chatMessageService.saveMessage(new ChatMessage("room-" + (i % ROOMS), "user-" + (i % 50),
+                    "Benchmark message number " + i)).subscribe();
+        }
+        while (pending.value() > 0) {
+            LockSupport.parkNanos(10_000);
+        }
+    }
+}
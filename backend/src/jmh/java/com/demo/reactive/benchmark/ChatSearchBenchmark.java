@@ -0,0 +1,126 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.model.ChatSearchPage;
+import com.demo.reactive.service.ChatMessageService;
+import com.demo.reactive.service.ChatSearchIndex;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Searching one room's history through {@link ChatSearchIndex} versus the SQL it replaces,
+ * a {@code LIKE '%term%'} per word over the room's rows in the application's in-memory H2
+ * database. Words are drawn from a skewed vocabulary, so w1 is common and w900 rare.
+ * indexOnly ranks IDs without touching the database; indexWithRows also loads the page's
+ * rows by primary key, as the search endpoint does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatSearchBenchmark {
+
+    private static final String ROOM = "search";
+    private static final int MESSAGES = 20_000;
+    private static final int OTHER_ROOMS = 4;
+    private static final int VOCABULARY = 1_000;
+    private static final int WORDS_PER_MESSAGE = 8;
+    private static final int PAGE_SIZE = 20;
+    // Stays below chat.persistence.buffer-capacity
+    private static final int SAVE_BURST = 5_000;
+
+    @Param({"w1", "w900", "w3 w500"})
+    public String query;
+
+    private ConfigurableApplicationContext context;
+    private ChatMessageService chatMessageService;
+    private ChatSearchIndex searchIndex;
+    private DatabaseClient databaseClient;
+    private String likeSql;
+    private List<String> patterns;
+
+    @Setup
+    public void startApplication() {
+        context = BenchmarkSupport.startApplication();
+        chatMessageService = context.getBean(ChatMessageService.class);
+        searchIndex = context.getBean(ChatSearchIndex.class);
+        databaseClient = context.getBean(DatabaseClient.class);
+        Gauge pending = context.getBean(MeterRegistry.class).get("chat.persistence.pending").gauge();
+
+        // The room searched, plus as many messages again in other rooms
+        Random random = new Random(42);
+        for (int saved = 0; saved < 2 * MESSAGES; ) {
+            for (int i = 0; i < SAVE_BURST; i++, saved++) {
+                String room = saved % 2 == 0 ? ROOM : "other-" + (saved % OTHER_ROOMS);
+                chatMessageService.saveMessage(new ChatMessage(room, "user-" + (saved % 50), text(random)))
+                        .subscribe();
+            }
+            while (pending.value() > 0) {
+                LockSupport.parkNanos(1_000_000);
+            }
+        }
+
+        String[] words = query.split(" ");
+        StringBuilder sql = new StringBuilder("SELECT * FROM chat_messages WHERE room_id = :room AND (");
+        for (int i = 0; i < words.length; i++) {
+            sql.append(i > 0 ? " OR " : "").append("LOWER(message_text) LIKE :p").append(i);
+        }
+        likeSql = sql.append(") ORDER BY created_at DESC LIMIT ").append(PAGE_SIZE).toString();
+        patterns = List.of(words).stream().map(word -> "%" + word + "%").toList();
+    }
+
+    private static String text(Random random) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < WORDS_PER_MESSAGE; i++) {
+            // Cubing skews the draw towards low-numbered words
+            int word = (int) (VOCABULARY * Math.pow(random.nextDouble(), 3));
+            text.append(i > 0 ? " " : "").append('w').append(word);
+        }
+        return text.toString();
+    }
+
+    @TearDown
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public ChatSearchIndex.Page indexOnly() {
+        return searchIndex.search(ROOM, query, 0, PAGE_SIZE).block();
+    }
+
+    @Benchmark
+    public ChatSearchPage indexWithRows() {
+        return chatMessageService.searchMessages(ROOM, query, 0, PAGE_SIZE).block();
+    }
+
+    @Benchmark
+    public List<Long> sqlLikeScan() {
+        DatabaseClient.GenericExecuteSpec spec = databaseClient.sql(likeSql).bind("room", ROOM);
+        for (int i = 0; i < patterns.size(); i++) {
+            spec = spec.bind("p" + i, patterns.get(i));
+        }
+        return spec.map(row -> row.get("id", Long.class)).all().collectList().block();
+    }
+}
@@ -0,0 +1,129 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.config.SmileEncoding;
+import com.demo.reactive.model.ChatFrame;
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.model.MetricsSnapshot;
+import com.demo.reactive.service.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON against Smile for what goes out on the wire: a chat message and a presence delta
+ * as WebSocket frames, a page of history, one metrics snapshot, and a run of snapshots
+ * written as one stream the way /api/metrics/stream sends them. Encoded sizes are
+ * printed once per trial, ahead of the timings.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodingBenchmark {
+
+    private static final int HISTORY_SIZE = 50;
+    private static final int STREAM_SIZE = 10;
+
+    @Param({"json", "smile"})
+    public String format;
+
+    private ObjectWriter frameWriter;
+    private ObjectReader frameReader;
+    private ObjectWriter historyWriter;
+    private ObjectWriter snapshotWriter;
+
+    private ChatFrame chatFrame;
+    private byte[] chatFrameBytes;
+    private ChatFrame presenceFrame;
+    private List<ChatMessage> history;
+    private MetricsSnapshot snapshot;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper json = BenchmarkSupport.objectMapper();
+        ObjectMapper mapper = format.equals("smile") ? new SmileEncoding(json).mapper() : json;
+        frameWriter = mapper.writerFor(ChatFrame.class);
+        frameReader = mapper.readerFor(ChatFrame.class);
+        historyWriter = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, ChatMessage.class));
+        snapshotWriter = mapper.writerFor(MetricsSnapshot.class);
+
+        ChatMessage message = BenchmarkSupport.chatMessage();
+        chatFrame = ChatFrame.message("/topic/chat/general", message);
+        chatFrameBytes = frameWriter.writeValueAsBytes(chatFrame);
+        presenceFrame = ChatFrame.message("/topic/presence/general",
+                new PresenceService.PresenceUpdate(PresenceService.PresenceUpdate.DELTA, 4_211, null,
+                        Set.of("bob", "carol"), Set.of("dave"), 37));
+        history = new ArrayList<>();
+        for (int i = 0; i < HISTORY_SIZE; i++) {
+            history.add(new ChatMessage(message.getId() + i, message.getRoomId(), "user-" + (i % 8),
+                    message.getMessageText(), message.getCreatedAt().plusSeconds(i)));
+        }
+        snapshot = BenchmarkSupport.metricsSnapshot();
+
+        System.out.printf("%n%s sizes: chat frame %d B, presence frame %d B, history of %d %d B, "
+                        + "snapshot %d B, stream of %d snapshots %d B%n",
+                format, chatFrameBytes.length, serializePresenceFrame().length, HISTORY_SIZE,
+                serializeHistory().length, serializeMetricsSnapshot().length, STREAM_SIZE,
+                serializeMetricsStream().length);
+    }
+
+    @Benchmark
+    public byte[] serializeChatFrame() throws IOException {
+        return frameWriter.writeValueAsBytes(chatFrame);
+    }
+
+    @Benchmark
+    public ChatFrame deserializeChatFrame() throws IOException {
+        return frameReader.readValue(chatFrameBytes);
+    }
+
+    @Benchmark
+    public byte[] serializePresenceFrame() throws IOException {
+        return frameWriter.writeValueAsBytes(presenceFrame);
+    }
+
+    @Benchmark
+    public byte[] serializeHistory() throws IOException {
+        return historyWriter.writeValueAsBytes(history);
+    }
+
+    @Benchmark
+    public byte[] serializeMetricsSnapshot() throws IOException {
+        return snapshotWriter.writeValueAsBytes(snapshot);
+    }
+
+    /**
+     * One subscriber's stream: later snapshots refer back to names written by the first
+     */
+    @Benchmark
+    public byte[] serializeMetricsStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SequenceWriter writer = snapshotWriter.writeValues(out)) {
+            for (int i = 0; i < STREAM_SIZE; i++) {
+                writer.write(snapshot);
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,67 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.model.MetricsSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encoding of the two payloads sent most often: chat messages, once per broadcast,
+ * and metrics snapshots, once per sample for every stream subscriber
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    private ObjectWriter chatMessageWriter;
+    private ObjectReader chatMessageReader;
+    private ObjectWriter snapshotWriter;
+
+    private ChatMessage chatMessage;
+    private byte[] chatMessageJson;
+    private MetricsSnapshot snapshot;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper objectMapper = BenchmarkSupport.objectMapper();
+        chatMessageWriter = objectMapper.writerFor(ChatMessage.class);
+        chatMessageReader = objectMapper.readerFor(ChatMessage.class);
+        snapshotWriter = objectMapper.writerFor(MetricsSnapshot.class);
+
+        chatMessage = BenchmarkSupport.chatMessage();
+        chatMessageJson = chatMessageWriter.writeValueAsBytes(chatMessage);
+        snapshot = BenchmarkSupport.metricsSnapshot();
+    }
+
+    @Benchmark
+    public byte[] serializeChatMessage() throws Exception {
+        return chatMessageWriter.writeValueAsBytes(chatMessage);
+    }
+
+    @Benchmark
+    public ChatMessage deserializeChatMessage() throws Exception {
+        return chatMessageReader.readValue(chatMessageJson);
+    }
+
+    @Benchmark
+    public byte[] serializeMetricsSnapshot() throws Exception {
+        return snapshotWriter.writeValueAsBytes(snapshot);
+    }
+}
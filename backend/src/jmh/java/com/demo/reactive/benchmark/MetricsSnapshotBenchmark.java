@@ -0,0 +1,142 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.MetricsSnapshot;
+import com.demo.reactive.service.MetricsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.JvmMemoryMetrics;
+import io.micrometer.core.instrument.binder.jvm.JvmThreadMetrics;
+import io.micrometer.core.instrument.search.Search;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of one metrics snapshot: {@link MetricsService#getCurrentMetrics()} reading through
+ * pre-resolved meter handles, against the registry searches it replaced. Search cost grows
+ * with the size of the registry, so the registry is padded with unrelated meters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsSnapshotBenchmark {
+
+    @Param({"50", "500"})
+    public int otherMeters;
+
+    private MetricsService metricsService;
+    private RegistrySearchSnapshots registrySearch;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        new JvmMemoryMetrics().bindTo(registry);
+        new JvmThreadMetrics().bindTo(registry);
+        AtomicInteger acquired = new AtomicInteger(3);
+        Gauge.builder("r2dbc.pool.acquired", acquired, AtomicInteger::get).tag("name", "connectionFactory").register(registry);
+        for (String uri : new String[] {"/api/chat/{roomId}/history", "/api/stocks", "/api/metrics/current", "/api/portfolio/{userId}"}) {
+            for (String status : new String[] {"200", "400", "500"}) {
+                Timer.builder("http.server.requests").tags("uri", uri, "status", status).register(registry)
+                        .record(Duration.ofMillis(5));
+            }
+        }
+        for (String operation : new String[] {"findRecentMessagesByRoomId", "findNewestPage", "insertAll", "save"}) {
+            for (String outcome : new String[] {"success", "error", "cancelled"}) {
+                Timer.builder("db.query").tags("repository", "ChatMessageRepository", "operation", operation,
+                        "outcome", outcome).register(registry).record(Duration.ofMillis(2));
+            }
+            Timer.builder("db.query.first-row").tags("repository", "ChatMessageRepository", "operation", operation)
+                    .register(registry).record(Duration.ofMillis(1));
+        }
+        for (int i = 0; i < otherMeters; i++) {
+            Counter.builder("app.other").tag("index", Integer.toString(i)).register(registry);
+        }
+
+        metricsService = new MetricsService(registry, Duration.ofSeconds(2), 500);
+        registrySearch = new RegistrySearchSnapshots(registry);
+        for (int i = 0; i < 1_000; i++) {
+            metricsService.recordHttpRequest(1_000_000L + i);
+            metricsService.recordDbQuery(500_000L + i);
+        }
+    }
+
+    @Benchmark
+    public void boundHandles(Blackhole blackhole) {
+        metricsService.getCurrentMetrics().subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void registrySearch(Blackhole blackhole) {
+        Mono.fromSupplier(registrySearch::snapshot).subscribe(blackhole::consume);
+    }
+
+    /**
+     * Snapshot assembly as it was before the meter bindings: a registry search per value,
+     * with the gauge looked up twice. It skips the sliding latency windows, the pool and
+     * admission sections and the chat pipeline stages, which the service also computes,
+     * so the gap between the two understates the saving.
+     */
+    static final class RegistrySearchSnapshots {
+        private final MeterRegistry registry;
+
+        RegistrySearchSnapshots(MeterRegistry registry) {
+            this.registry = registry;
+        }
+
+        MetricsSnapshot snapshot() {
+            MetricsSnapshot.JvmMetrics jvm = new MetricsSnapshot.JvmMetrics(
+                    (long) gauge("jvm.memory.used", "area", "heap"),
+                    (long) gauge("jvm.memory.committed", "area", "heap"),
+                    (long) gauge("jvm.memory.max", "area", "heap"),
+                    (long) gauge("jvm.memory.used", "area", "nonheap"),
+                    (int) gauge("jvm.threads.live"),
+                    (int) gauge("jvm.threads.peak"),
+                    (int) gauge("jvm.threads.daemon"));
+
+            Timer httpTimer = registry.find("http.server.requests").timer();
+            MetricsSnapshot.HttpMetrics http = new MetricsSnapshot.HttpMetrics(
+                    httpTimer != null ? httpTimer.count() : 0,
+                    0,
+                    httpTimer != null ? httpTimer.mean(TimeUnit.MILLISECONDS) : 0.0,
+                    (long) gauge("reactor.netty.http.server.connections.active"),
+                    null);
+
+            Timer dbTimer = registry.find("db.query").timer();
+            MetricsSnapshot.DbMetrics db = new MetricsSnapshot.DbMetrics(
+                    dbTimer != null ? dbTimer.mean(TimeUnit.MILLISECONDS) : 0.0,
+                    (long) gauge("r2dbc.pool.acquired"),
+                    dbTimer != null ? dbTimer.count() : 0,
+                    0, 0, 0, 0, null, null, null);
+
+            return new MetricsSnapshot(System.currentTimeMillis(), jvm, http, db, null);
+        }
+
+        private double gauge(String name, String... tags) {
+            Search search = registry.find(name);
+            if (tags.length > 0) {
+                search.tags(tags);
+            }
+            return search.gauge() != null ? search.gauge().value() : 0.0;
+        }
+    }
+}
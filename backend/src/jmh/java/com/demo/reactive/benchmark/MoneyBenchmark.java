@@ -0,0 +1,168 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.PortfolioValuation;
+import com.demo.reactive.model.StockPrice;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-point cents against the BigDecimal models they replaced, on the two per-tick
+ * paths: encoding every symbol's price, and valuing and encoding a portfolio.
+ * Run with -prof gc to compare allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+
+    private static final String[] SYMBOLS = {"AAPL", "GOOGL", "MSFT", "AMZN", "TSLA", "NVDA", "META", "NFLX", "AMD", "INTC"};
+    private static final int TICK_SYMBOLS = 5;
+
+    private ObjectMapper objectMapper;
+    private long[] priceCents;
+    private long[] openCents;
+    private long[] quantities;
+    private long[] costCents;
+    private long tick;
+
+    @Setup
+    public void setUp() {
+        objectMapper = BenchmarkSupport.objectMapper();
+        priceCents = new long[SYMBOLS.length];
+        openCents = new long[SYMBOLS.length];
+        quantities = new long[SYMBOLS.length];
+        costCents = new long[SYMBOLS.length];
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            openCents[i] = 10_000 + i * 2_345;
+            quantities[i] = 10 + i * 7;
+            costCents[i] = quantities[i] * (openCents[i] - 150);
+        }
+    }
+
+    private void move() {
+        tick++;
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            priceCents[i] = openCents[i] + (tick * (i + 1)) % 997 - 498;
+        }
+    }
+
+    @Benchmark
+    public void encodeTickBigDecimal(Blackhole blackhole) throws Exception {
+        move();
+        for (int i = 0; i < TICK_SYMBOLS; i++) {
+            double changePercent = (priceCents[i] - openCents[i]) * 100.0 / openCents[i];
+            LegacyStockPrice price = new LegacyStockPrice(SYMBOLS[i], BigDecimal.valueOf(priceCents[i], 2),
+                    Math.round(changePercent * 100) / 100.0, tick);
+            blackhole.consume(objectMapper.writeValueAsString(price));
+        }
+    }
+
+    @Benchmark
+    public void encodeTickCents(Blackhole blackhole) throws Exception {
+        move();
+        for (int i = 0; i < TICK_SYMBOLS; i++) {
+            double changePercent = (priceCents[i] - openCents[i]) * 100.0 / openCents[i];
+            StockPrice price = new StockPrice(SYMBOLS[i], priceCents[i], Math.round(changePercent * 100) / 100.0, tick);
+            blackhole.consume(objectMapper.writeValueAsString(price));
+        }
+    }
+
+    @Benchmark
+    public String valuePortfolioBigDecimal() throws Exception {
+        move();
+        // Values were already summed in cents; each figure became a BigDecimal on publish
+        List<LegacyValuation.Position> positions = new ArrayList<>(SYMBOLS.length);
+        long marketValue = 0;
+        long costBasis = 0;
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            long value = quantities[i] * priceCents[i];
+            marketValue += value;
+            costBasis += costCents[i];
+            positions.add(new LegacyValuation.Position(SYMBOLS[i], quantities[i],
+                    BigDecimal.valueOf(costCents[i] / quantities[i], 2), BigDecimal.valueOf(priceCents[i], 2),
+                    BigDecimal.valueOf(value, 2), BigDecimal.valueOf(value - costCents[i], 2)));
+        }
+        positions.sort(Comparator.comparing((LegacyValuation.Position position) -> position.unrealizedPnl().abs()).reversed());
+        return objectMapper.writeValueAsString(new LegacyValuation("alice", tick, BigDecimal.valueOf(marketValue, 2),
+                BigDecimal.valueOf(costBasis, 2), BigDecimal.valueOf(marketValue - costBasis, 2), positions));
+    }
+
+    @Benchmark
+    public String valuePortfolioCents() throws Exception {
+        move();
+        List<PortfolioValuation.Position> positions = new ArrayList<>(SYMBOLS.length);
+        long marketValue = 0;
+        long costBasis = 0;
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            long value = quantities[i] * priceCents[i];
+            marketValue += value;
+            costBasis += costCents[i];
+            positions.add(new PortfolioValuation.Position(SYMBOLS[i], quantities[i],
+                    costCents[i] / quantities[i], priceCents[i], value, value - costCents[i]));
+        }
+        positions.sort(Comparator.comparingLong((PortfolioValuation.Position position) -> Math.abs(position.unrealizedPnl())).reversed());
+        return objectMapper.writeValueAsString(new PortfolioValuation("alice", tick,
+                marketValue, costBasis, marketValue - costBasis, positions));
+    }
+
+    /**
+     * StockPrice as it was: BigDecimal price, boxed change and timestamp
+     */
+    public static class LegacyStockPrice {
+        private final String symbol;
+        private final BigDecimal price;
+        private final Double changePercent;
+        private final Long timestamp;
+
+        LegacyStockPrice(String symbol, BigDecimal price, Double changePercent, Long timestamp) {
+            this.symbol = symbol;
+            this.price = price;
+            this.changePercent = changePercent;
+            this.timestamp = timestamp;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public Double getChangePercent() {
+            return changePercent;
+        }
+
+        public Long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    /**
+     * PortfolioValuation as it was, with BigDecimal amounts
+     */
+    public record LegacyValuation(String userId, long timestamp, BigDecimal totalValue, BigDecimal costBasis,
+                                  BigDecimal unrealizedPnl, List<Position> positions) {
+        public record Position(String symbol, long quantity, BigDecimal averageCost, BigDecimal currentPrice,
+                               BigDecimal marketValue, BigDecimal unrealizedPnl) {}
+    }
+}
@@ -0,0 +1,105 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.service.ChatCluster;
+import com.demo.reactive.service.PresenceService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Presence index under contention: three threads join and leave rooms while a fourth
+ * reads the active users, as the WebSocket session threads and the REST endpoint do.
+ * With one room every thread hits the same map entry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PresenceBenchmark {
+
+    private static final int USERS_PER_ROOM = 50;
+    private static final int SESSIONS_PER_THREAD = 64;
+
+    @Param({"1", "100"})
+    public int rooms;
+
+    private PresenceService presenceService;
+    private String[] roomIds;
+
+    @Setup
+    public void setUp() {
+        // Deltas are still coalesced and built, then dropped by the broadcaster
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        // A single node: the cluster is disabled and never starts
+        ChatCluster cluster = new ChatCluster(new ObjectMapper(), null, registry, false, "localhost", 0, "",
+                List.of(), Duration.ofSeconds(1), 0, DataSize.ofMegabytes(1));
+        presenceService = new PresenceService((destination, payload) -> { }, cluster,
+                registry, Duration.ofMillis(100), Duration.ofSeconds(30));
+        roomIds = new String[rooms];
+        for (int r = 0; r < rooms; r++) {
+            roomIds[r] = "room-" + r;
+            for (int u = 0; u < USERS_PER_ROOM; u++) {
+                presenceService.userJoined("resident-" + r + "-" + u, roomIds[r], "resident-" + u);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Sessions {
+        String[] sessionIds;
+        String[] userNames;
+        int next;
+        int room;
+
+        @Setup
+        public void setUp(ThreadParams thread) {
+            sessionIds = new String[SESSIONS_PER_THREAD];
+            userNames = new String[SESSIONS_PER_THREAD];
+            for (int s = 0; s < SESSIONS_PER_THREAD; s++) {
+                sessionIds[s] = "session-" + thread.getThreadIndex() + "-" + s;
+                userNames[s] = "user-" + thread.getThreadIndex() + "-" + s;
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public void joinLeave(Sessions sessions) {
+        int s = sessions.next++ & (SESSIONS_PER_THREAD - 1);
+        String roomId = roomIds[sessions.room = (sessions.room + 1) % rooms];
+        presenceService.userJoined(sessions.sessionIds[s], roomId, sessions.userNames[s]);
+        presenceService.userLeft(sessions.sessionIds[s]);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void getActiveUsers(Sessions sessions, Blackhole blackhole) {
+        String roomId = roomIds[sessions.room = (sessions.room + 1) % rooms];
+        for (String user : presenceService.getActiveUsers(roomId)) {
+            blackhole.consume(user);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.aspect.RepositoryTimingAspect;
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import com.demo.reactive.service.MetricsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link RepositoryTimingAspect} on a repository call, with the database
+ * taken out: the repository is a stub returning ready-made publishers. The advised calls
+ * go through a Spring AOP proxy, as repository calls do in the application.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryAspectBenchmark {
+
+    private static final int ROWS = 10;
+
+    private ChatMessageRepository direct;
+    private ChatMessageRepository advised;
+    private List<ChatMessage> batch;
+
+    @Setup
+    public void setUp() {
+        ChatMessage[] rows = new ChatMessage[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = new ChatMessage((long) i, "general", "alice", "message " + i, LocalDateTime.now());
+        }
+        batch = List.of(rows);
+        Flux<ChatMessage> page = Flux.fromArray(rows);
+        Mono<Long> inserted = Mono.just((long) ROWS);
+
+        direct = (ChatMessageRepository) Proxy.newProxyInstance(ChatMessageRepository.class.getClassLoader(),
+                new Class<?>[] {ChatMessageRepository.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "findRecentMessagesByRoomId" -> page;
+                    case "insertAll" -> inserted;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+
+        MeterRegistry registry = new SimpleMeterRegistry();
+        AspectJProxyFactory factory = new AspectJProxyFactory(direct);
+        factory.addAspect(new RepositoryTimingAspect(registry,
+                new MetricsService(registry, Duration.ofSeconds(2), 500)));
+        advised = factory.getProxy();
+    }
+
+    @Benchmark
+    public void monoDirect(Blackhole blackhole) {
+        direct.insertAll(batch).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void monoAdvised(Blackhole blackhole) {
+        advised.insertAll(batch).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void fluxDirect(Blackhole blackhole) {
+        direct.findRecentMessagesByRoomId("general", ROWS).subscribe(blackhole::consume);
+    }
+
+    @Benchmark
+    public void fluxAdvised(Blackhole blackhole) {
+        advised.findRecentMessagesByRoomId("general", ROWS).subscribe(blackhole::consume);
+    }
+}
@@ -0,0 +1,77 @@
+package com.demo.reactive.benchmark;
+
+import com.demo.reactive.model.IngestResult;
+import com.demo.reactive.service.StockTransactionIngestService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NDJSON bulk ingest of stock transactions into the in-memory H2 database: parsing,
+ * validation and chunked multi-row inserts. The score is rows per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StockTransactionIngestBenchmark {
+
+    private static final int ROWS = 10_000;
+    private static final String[] SYMBOLS = {"AAPL", "GOOGL", "MSFT", "AMZN", "TSLA"};
+
+    @Param({"100", "500"})
+    public int chunkSize;
+
+    private ConfigurableApplicationContext context;
+    private StockTransactionIngestService ingestService;
+    private DatabaseClient databaseClient;
+    private String[] lines;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkSupport.startApplication("--stocks.ingest.chunk-size=" + chunkSize);
+        ingestService = context.getBean(StockTransactionIngestService.class);
+        databaseClient = context.getBean(DatabaseClient.class);
+
+        lines = new String[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            lines[i] = "{\"userId\":\"user-" + (i % 500) + "\",\"symbol\":\"" + SYMBOLS[i % SYMBOLS.length]
+                    + "\",\"quantity\":" + (1 + i % 100) + ",\"pricePerShare\":" + (100 + i % 400) + "." + (i % 100)
+                    + ",\"transactionType\":\"" + (i % 3 == 0 ? "SELL" : "BUY") + "\"}";
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void clearTransactions() {
+        databaseClient.sql("DELETE FROM stock_transactions").then().block();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public IngestResult ingest() {
+        return ingestService.ingest(Flux.fromArray(lines)).blockLast();
+    }
+}
@@ -0,0 +1,176 @@
+package com.demo.reactive.loadtest;
+
+import com.demo.reactive.ReactiveApplication;
+import com.demo.reactive.service.PresenceService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Chat fan-out load generator. Opens STOMP sessions against /ws spread over several rooms,
+ * sends chat messages at a fixed rate through /app/chat/{roomId} and renames sessions to
+ * produce presence changes, then reports delivery latency, throughput and drops for
+ * /topic/chat/{roomId} and /topic/presence/{roomId}.
+ * <p>
+ * Without --url the application is started in this JVM on a free port, so a run needs
+ * nothing else; pointing --url at a separately started backend keeps the server's CPU
+ * and garbage collection apart from the clients'. Several comma-separated URLs spread each
+ * room's sessions over the nodes of a cluster, so most deliveries cross between them.
+ * See {@link LoadOptions} for the settings.
+ */
+public final class ChatLoadGenerator {
+
+    private static final Duration JOIN_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+    // How often the send loop wakes up to send what has fallen due
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private ChatLoadGenerator() {
+    }
+
+    public static void main(String[] args) {
+        LoadOptions options = LoadOptions.parse(args);
+        ConfigurableApplicationContext application = null;
+        String url = options.url();
+        if (url == null) {
+            application = startApplication();
+            url = "ws://localhost:" + application.getEnvironment().getProperty("local.server.port") + "/ws/websocket";
+        }
+        try {
+            run(options, url);
+        } finally {
+            if (application != null) {
+                awaitDisconnects(application, options.rooms());
+                application.close();
+            }
+        }
+    }
+
+    /**
+     * The server handles disconnects on the broker's executor; let it finish with them
+     * before shutdown stops that executor, or each pending one logs a rejected task
+     */
+    private static void awaitDisconnects(ConfigurableApplicationContext application, int rooms) {
+        PresenceService presenceService = application.getBean(PresenceService.class);
+        long deadline = System.nanoTime() + CLOSE_TIMEOUT.toNanos();
+        for (int room = 0; room < rooms; room++) {
+            while (presenceService.getUserCount(roomId(room)) > 0 && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+    }
+
+    private static String roomId(int room) {
+        return "load-" + room;
+    }
+
+    private static ConfigurableApplicationContext startApplication() {
+        // DevTools is on the test classpath and would relaunch main() in a restart class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        // Per-message INFO logging would cost the server more than the fan-out being measured
+        return new SpringApplicationBuilder(ReactiveApplication.class).run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--spring.r2dbc.url=r2dbc:h2:mem:///loadtest;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE",
+                "--logging.level.root=WARN",
+                "--logging.level.com.demo.reactive=WARN",
+                "--logging.level.io.r2dbc=WARN");
+    }
+
+    private static void run(LoadOptions options, String url) {
+        System.out.printf("Connecting %d sessions in %d rooms to %s%n", options.sessions(), options.rooms(), url);
+        String[] urls = url.split(",");
+        LoadStats stats = new LoadStats();
+        // One connection per session; the default pool would cap how many can be open at once
+        HttpClient client = HttpClient.create(ConnectionProvider.newConnection());
+
+        long connectStart = System.nanoTime();
+        List<StompLoadSession> sessions = Flux.range(0, options.sessions())
+                .flatMap(i -> {
+                    StompLoadSession session = new StompLoadSession(roomId(i % options.rooms()), "user-" + i, stats);
+                    // Consecutive sessions of a room go to different nodes
+                    return session.connect(client, urls[(i / options.rooms()) % urls.length].trim())
+                            .timeout(JOIN_TIMEOUT)
+                            .thenReturn(session)
+                            .onErrorResume(error -> {
+                                System.out.printf("  session %d failed to join: %s%n", i, error.getMessage());
+                                return session.close().then(Mono.empty());
+                            });
+                }, options.connectConcurrency())
+                .collectList()
+                .block();
+        if (sessions == null || sessions.isEmpty()) {
+            throw new IllegalStateException("No session could join");
+        }
+        System.out.printf("%d sessions joined in %d ms%n", sessions.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart));
+
+        try {
+            generate(options, sessions, stats);
+        } finally {
+            // Let the server see every session go before the in-process application shuts down
+            Flux.fromIterable(sessions)
+                    .flatMap(StompLoadSession::close)
+                    .then()
+                    .timeout(CLOSE_TIMEOUT, Mono.empty())
+                    .block();
+        }
+    }
+
+    private static void generate(LoadOptions options, List<StompLoadSession> sessions, LoadStats stats) {
+        // Recipients per room, counting only the sessions that joined
+        Map<String, Integer> roomSizes = new HashMap<>();
+        for (StompLoadSession session : sessions) {
+            roomSizes.merge(session.roomId(), 1, Integer::sum);
+        }
+
+        long start = System.nanoTime();
+        long measureStart = start + options.warmup().toNanos();
+        long end = measureStart + options.duration().toNanos();
+        double chatInterval = 1e9 / options.rate();
+        double presenceInterval = 1e9 / options.presenceRate();
+        long chats = 0;
+        long presenceChanges = 0;
+        boolean measuring = false;
+
+        System.out.printf("Sending %.0f messages/s and %.1f presence changes/s: %d s warmup, %d s measured%n",
+                options.rate(), options.presenceRate(), options.warmup().toSeconds(), options.duration().toSeconds());
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            if (!measuring && now >= measureStart) {
+                stats.startMeasuring();
+                measuring = true;
+            }
+            // Catch up on everything that fell due since the last pass, stamped with when it was due
+            long due;
+            while (options.rate() > 0 && (due = start + (long) (chats * chatInterval)) <= now) {
+                StompLoadSession session = sessions.get((int) (chats % sessions.size()));
+                session.sendChat(stats.chatSent(due, roomSizes.get(session.roomId())));
+                chats++;
+            }
+            while (options.presenceRate() > 0 && (due = start + (long) (presenceChanges * presenceInterval)) <= now) {
+                StompLoadSession session = sessions.get((int) (presenceChanges % sessions.size()));
+                String userName = "renamed-" + presenceChanges;
+                stats.renamed(userName, due, roomSizes.get(session.roomId()));
+                session.rename(userName);
+                presenceChanges++;
+            }
+            LockSupport.parkNanos(TICK_NANOS);
+        }
+
+        LockSupport.parkNanos(options.drain().toNanos());
+        System.out.printf("Results over %d s (%d sessions, %d rooms):%n",
+                options.duration().toSeconds(), sessions.size(), roomSizes.size());
+        stats.print(System.out, options.duration());
+    }
+}
@@ -0,0 +1,64 @@
+package com.demo.reactive.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings for a load run, given on the command line as --name=value
+ *
+ * @param url            STOMP WebSocket URL, or several separated by commas to spread each room over
+ *                       cluster nodes; null starts the application in-process on a free port
+ * @param sessions       WebSocket sessions to open
+ * @param rooms          rooms the sessions are spread over, round-robin
+ * @param rate           chat messages per second across all sessions
+ * @param presenceRate   presence changes per second; each renames one session in its room
+ * @param warmup         traffic before measurement starts
+ * @param duration       measured traffic
+ * @param drain          how long to wait for late deliveries before counting the rest as dropped
+ * @param connectConcurrency handshakes in flight while the sessions connect
+ */
+record LoadOptions(String url, int sessions, int rooms, double rate, double presenceRate,
+                   Duration warmup, Duration duration, Duration drain, int connectConcurrency) {
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        LoadOptions options = new LoadOptions(
+                values.remove("url"),
+                Integer.parseInt(values.getOrDefault("sessions", "200")),
+                Integer.parseInt(values.getOrDefault("rooms", "10")),
+                Double.parseDouble(values.getOrDefault("rate", "500")),
+                Double.parseDouble(values.getOrDefault("presence-rate", "5")),
+                DurationStyle.detectAndParse(values.getOrDefault("warmup", "5s")),
+                DurationStyle.detectAndParse(values.getOrDefault("duration", "30s")),
+                DurationStyle.detectAndParse(values.getOrDefault("drain", "5s")),
+                Integer.parseInt(values.getOrDefault("connect-concurrency", "50")));
+        for (String name : new String[] {"sessions", "rooms", "rate", "presence-rate", "warmup", "duration", "drain",
+                "connect-concurrency"}) {
+            values.remove(name);
+        }
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+        if (options.sessions < 1 || options.rooms < 1 || options.rooms > options.sessions) {
+            throw new IllegalArgumentException("Need at least one session per room");
+        }
+        if (options.rate < 0 || options.presenceRate < 0) {
+            throw new IllegalArgumentException("Rates must not be negative");
+        }
+        if (options.connectConcurrency < 1) {
+            throw new IllegalArgumentException("connect-concurrency must be at least 1");
+        }
+        return options;
+    }
+}
@@ -0,0 +1,177 @@
+package com.demo.reactive.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms shared by every session. Only traffic sent after
+ * {@link #startMeasuring()} is counted. Latency runs from the moment a message was due,
+ * not from when it was written, so a generator falling behind shows up as latency
+ * rather than as a quietly lower rate.
+ */
+final class LoadStats {
+
+    private static final String CHAT_PREFIX = "/topic/chat/";
+    private static final String PRESENCE_PREFIX = "/topic/presence/";
+    private static final byte[] MESSAGE_TEXT = "\"messageText\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Histogram chatLatency = new ConcurrentHistogram(3);
+    private final Histogram presenceLatency = new ConcurrentHistogram(3);
+    // Due time of each rename, by the new user name
+    private final Map<String, Long> renamedAt = new ConcurrentHashMap<>();
+
+    private final LongAdder chatSent = new LongAdder();
+    private final LongAdder chatExpected = new LongAdder();
+    private final LongAdder chatDelivered = new LongAdder();
+    private final LongAdder presenceSent = new LongAdder();
+    private final LongAdder presenceExpected = new LongAdder();
+    private final LongAdder presenceDelivered = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder disconnects = new LongAdder();
+    private volatile String lastError;
+    private volatile long measureFrom = Long.MAX_VALUE;
+    // Due times travel relative to this, as nanoTime itself may be negative
+    private final long origin = System.nanoTime();
+
+    void startMeasuring() {
+        measureFrom = System.nanoTime();
+    }
+
+    /**
+     * Note a chat message about to be sent
+     * @param dueNanos when the message was due, by {@link System#nanoTime()}
+     * @param recipients sessions subscribed to its room, the sender included
+     * @return the message text, which carries the due time to the receivers
+     */
+    String chatSent(long dueNanos, int recipients) {
+        if (dueNanos >= measureFrom) {
+            chatSent.increment();
+            chatExpected.add(recipients);
+        }
+        return Long.toString(dueNanos - origin);
+    }
+
+    /**
+     * Note a session about to rename itself, which every session in its room should see as a join
+     */
+    void renamed(String userName, long dueNanos, int recipients) {
+        renamedAt.put(userName, dueNanos);
+        if (dueNanos >= measureFrom) {
+            presenceSent.increment();
+            presenceExpected.add(recipients);
+        }
+    }
+
+    void received(String destination, byte[] payload) {
+        long now = System.nanoTime();
+        if (destination == null) {
+            return;
+        }
+        try {
+            if (destination.startsWith(CHAT_PREFIX)) {
+                chatReceived(payload, now);
+            } else if (destination.startsWith(PRESENCE_PREFIX)) {
+                presenceReceived(objectMapper.readTree(payload), now);
+            }
+        } catch (IOException e) {
+            error("Unreadable message on " + destination + ": " + e.getMessage());
+        }
+    }
+
+    private void chatReceived(byte[] message, long now) {
+        long sent = sentNanos(message);
+        if (sent < 0) {
+            return;   // someone else's message
+        }
+        long due = origin + sent;
+        if (due >= measureFrom) {
+            chatDelivered.increment();
+            chatLatency.recordValue(now - due);
+        }
+    }
+
+    /**
+     * Read the due time straight from the message bytes; a JSON parse per delivery
+     * would make the clients, not the server, the bottleneck
+     * @return the number in messageText, or -1 if it holds something else
+     */
+    private static long sentNanos(byte[] message) {
+        int start = indexOf(message, MESSAGE_TEXT);
+        if (start < 0) {
+            return -1;
+        }
+        long value = 0;
+        int i = start + MESSAGE_TEXT.length;
+        for (; i < message.length && message[i] >= '0' && message[i] <= '9'; i++) {
+            value = value * 10 + (message[i] - '0');
+        }
+        boolean digitsOnly = i > start + MESSAGE_TEXT.length && i < message.length && message[i] == '"';
+        return digitsOnly ? value : -1;
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void presenceReceived(JsonNode update, long now) {
+        // Snapshots only restate who is present; joins are timed from the deltas
+        for (JsonNode name : update.path("joined")) {
+            Long due = renamedAt.get(name.asText());
+            if (due != null && due >= measureFrom) {
+                presenceDelivered.increment();
+                presenceLatency.recordValue(now - due);
+            }
+        }
+    }
+
+    void error(String message) {
+        errors.increment();
+        lastError = message;
+    }
+
+    void disconnected() {
+        disconnects.increment();
+    }
+
+    void print(PrintStream out, Duration measured) {
+        double seconds = measured.toNanos() / 1e9;
+        out.printf("  chat sent      %,d (%,.1f/s)%n", chatSent.sum(), chatSent.sum() / seconds);
+        printDeliveries(out, "chat", chatDelivered.sum(), chatExpected.sum(), seconds, chatLatency);
+        out.printf("  presence sent  %,d renames (%,.1f/s)%n", presenceSent.sum(), presenceSent.sum() / seconds);
+        printDeliveries(out, "presence", presenceDelivered.sum(), presenceExpected.sum(), seconds, presenceLatency);
+        out.printf("  errors         %,d received, %,d sessions lost%s%n", errors.sum(), disconnects.sum(),
+                lastError != null ? " (last: " + lastError + ")" : "");
+    }
+
+    private static void printDeliveries(PrintStream out, String name, long delivered, long expected,
+                                        double seconds, Histogram latency) {
+        out.printf("  %-14s %,d of %,d expected deliveries (%,.1f/s), %,d dropped%n",
+                name, delivered, expected, delivered / seconds, Math.max(0, expected - delivered));
+        if (latency.getTotalCount() > 0) {
+            out.printf("  %-14s p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", "",
+                    latency.getValueAtPercentile(50) / 1e6,
+                    latency.getValueAtPercentile(99) / 1e6,
+                    latency.getMaxValue() / 1e6);
+        }
+    }
+}
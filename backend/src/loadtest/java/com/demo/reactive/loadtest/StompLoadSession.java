@@ -0,0 +1,179 @@
+package com.demo.reactive.loadtest;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.websocket.WebsocketInbound;
+import reactor.netty.http.websocket.WebsocketOutbound;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * One simulated chat client: a STOMP session over a reactor-netty WebSocket, subscribed to
+ * its room's chat and presence topics. Frames are encoded and decoded with Spring's STOMP
+ * codec, so the server sees the same frames a browser client sends.
+ */
+final class StompLoadSession {
+
+    private static final Sinks.EmitFailureHandler RETRY_ON_CONTENTION =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+    // Per-session errors that do not close the connection, e.g. messages dropped by the rate limit
+    private static final String ERROR_QUEUE = "/user/queue/errors";
+
+    private final String roomId;
+    private final String initialName;
+    private final LoadStats stats;
+    private final StompEncoder encoder = new StompEncoder();
+    private final StompDecoder decoder = new StompDecoder();
+    private final Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+    private final Sinks.Empty<Void> ready = Sinks.empty();
+    private final Sinks.Empty<Void> terminated = Sinks.empty();
+    private Disposable connection;
+    private boolean joined;   // only touched on the connection's event loop
+    private volatile boolean closing;
+    private String userName;   // only touched by the sending thread once joined
+
+    StompLoadSession(String roomId, String userName, LoadStats stats) {
+        this.roomId = roomId;
+        this.initialName = userName;
+        this.userName = userName;
+        this.stats = stats;
+    }
+
+    String roomId() {
+        return roomId;
+    }
+
+    /**
+     * Open the WebSocket, CONNECT, subscribe and join the room
+     * @return completes once the session sees its own join on the presence topic, which
+     *         shows the join was handled and the subscriptions are in place
+     */
+    Mono<Void> connect(HttpClient client, String url) {
+        connection = client.websocket()
+                .uri(url)
+                .handle(this::run)
+                .subscribe(null, this::closed, () -> closed(new IllegalStateException("Connection closed")));
+        return ready.asMono();
+    }
+
+    private void closed(Throwable error) {
+        if (ready.tryEmitError(error).isFailure() && !closing) {
+            stats.disconnected();   // lost after joining
+        }
+        terminated.tryEmitEmpty();
+    }
+
+    private Mono<Void> run(WebsocketInbound inbound, WebsocketOutbound out) {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setAcceptVersion("1.2");
+        connect.setHost("localhost");
+        connect.setHeartbeat(0, 0);
+        send(connect, null);
+
+        Mono<Void> receive = inbound.aggregateFrames()
+                .receive()
+                .asByteArray()
+                .doOnNext(bytes -> {
+                    List<Message<byte[]>> frames = decoder.decode(ByteBuffer.wrap(bytes));
+                    for (Message<byte[]> frame : frames) {
+                        handleFrame(StompHeaderAccessor.wrap(frame), frame.getPayload());
+                    }
+                })
+                .then();
+        // Once the outbound frames end, close the WebSocket and wait for the server's close in reply
+        Mono<Void> send = out.sendString(outbound.asFlux()).then().then(out.sendClose());
+        return Mono.when(send, receive);
+    }
+
+    private void handleFrame(StompHeaderAccessor headers, byte[] payload) {
+        StompCommand command = headers.getCommand();
+        if (command == null) {
+            return;   // heartbeat
+        }
+        switch (command) {
+            case CONNECTED -> {
+                subscribe("chat", "/topic/chat/" + roomId);
+                subscribe("presence", "/topic/presence/" + roomId);
+                subscribe("errors", ERROR_QUEUE);
+                sendJoin(initialName);
+            }
+            case MESSAGE -> {
+                String destination = headers.getDestination();
+                if (ERROR_QUEUE.equals(destination)) {
+                    stats.error(new String(payload, StandardCharsets.UTF_8));
+                    return;
+                }
+                if (!joined && destination != null && destination.startsWith("/topic/presence/")
+                        && new String(payload, StandardCharsets.UTF_8).contains('"' + initialName + '"')) {
+                    joined = true;
+                    ready.tryEmitEmpty();
+                }
+                stats.received(destination, payload);
+            }
+            case ERROR -> stats.error(headers.getMessage());
+            default -> { }
+        }
+    }
+
+    /**
+     * Send a chat message to the room
+     */
+    void sendChat(String messageText) {
+        sendJson("/app/chat/" + roomId,
+                "{\"userName\":\"" + userName + "\",\"messageText\":\"" + messageText + "\"}");
+    }
+
+    /**
+     * Join the room again under a new name, which the room sees as one user leaving and another joining
+     */
+    void rename(String newName) {
+        userName = newName;
+        sendJoin(newName);
+    }
+
+    private void sendJoin(String name) {
+        sendJson("/app/chat/join/" + roomId, "{\"userName\":\"" + name + "\"}");
+    }
+
+    /**
+     * Close the WebSocket
+     * @return completes once the connection has ended
+     */
+    Mono<Void> close() {
+        closing = true;
+        outbound.tryEmitComplete();
+        return connection != null ? terminated.asMono() : Mono.empty();
+    }
+
+    private void subscribe(String id, String destination) {
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setSubscriptionId(id);
+        subscribe.setDestination(destination);
+        send(subscribe, null);
+    }
+
+    private void sendJson(String destination, String json) {
+        StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.SEND);
+        headers.setDestination(destination);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        send(headers, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void send(StompHeaderAccessor headers, byte[] body) {
+        byte[] payload = body != null ? body : new byte[0];
+        byte[] frame = encoder.encode(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+        outbound.emitNext(new String(frame, StandardCharsets.UTF_8), RETRY_ON_CONTENTION);
+    }
+}
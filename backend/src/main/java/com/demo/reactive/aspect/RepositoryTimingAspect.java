@@ -1,40 +1,149 @@
 package com.demo.reactive.aspect;
 
+import com.demo.reactive.service.MetricsService;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
+import reactor.core.observability.DefaultSignalListener;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
 @Aspect
 @Component
 public class RepositoryTimingAspect {
 
     private final MeterRegistry registry;
+    private final MetricsService metricsService;
+
+    // Meters resolved once per repository method rather than on every termination
+    private final Map<Method, QueryMeters> metersByMethod = new ConcurrentHashMap<>();
 
-    public RepositoryTimingAspect(MeterRegistry registry) {
+    public RepositoryTimingAspect(MeterRegistry registry, MetricsService metricsService) {
         this.registry = registry;
+        this.metricsService = metricsService;
     }
 
-    @Around("execution(* com.demo.reactive.repository.*.*(..))")
+    @Around("execution(* com.demo.reactive.repository.*.*(..)) && !within(com.demo.reactive.repository.*Impl)")
     public Object timeRepositoryMethod(ProceedingJoinPoint joinPoint) throws Throwable {
-        Timer.Sample sample = Timer.start(registry);
-        String operation = joinPoint.getSignature().getName();
-        String repository = joinPoint.getSignature().getDeclaringType().getSimpleName();
-        
         Object result = joinPoint.proceed();
-        
-        if (result instanceof Mono) {
-            return ((Mono<?>) result)
-                .doOnTerminate(() -> sample.stop(registry.timer("db.query", "repository", repository, "operation", operation)));
-        } else if (result instanceof Flux) {
-            return ((Flux<?>) result)
-                .doOnTerminate(() -> sample.stop(registry.timer("db.query", "repository", repository, "operation", operation)));
-        }
-        
+
+        // Timing starts when the query is subscribed, not when the repository method is called
+        if (result instanceof Mono<?> mono) {
+            QueryMeters meters = meters(joinPoint, false);
+            return mono.tap(() -> new QueryTiming<>(meters));
+        } else if (result instanceof Flux<?> flux) {
+            QueryMeters meters = meters(joinPoint, true);
+            return flux.tap(() -> new QueryTiming<>(meters));
+        }
+
         return result;
     }
+
+    private QueryMeters meters(ProceedingJoinPoint joinPoint, boolean multiRow) {
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        QueryMeters meters = metersByMethod.get(method);
+        if (meters == null) {
+            String repository = joinPoint.getSignature().getDeclaringType().getSimpleName();
+            meters = metersByMethod.computeIfAbsent(method,
+                    m -> new QueryMeters(registry, repository, m.getName(), multiRow));
+        }
+        return meters;
+    }
+
+    /**
+     * Pre-registered meters for one repository method
+     */
+    private static final class QueryMeters {
+        private final Timer success;
+        private final Timer error;
+        private final Timer cancelled;
+        private final Timer firstRow;         // Flux queries only
+        private final DistributionSummary rows; // Flux queries only
+
+        private QueryMeters(MeterRegistry registry, String repository, String operation, boolean multiRow) {
+            this.success = timer(registry, repository, operation, "success");
+            this.error = timer(registry, repository, operation, "error");
+            this.cancelled = timer(registry, repository, operation, "cancelled");
+            if (multiRow) {
+                this.firstRow = Timer.builder("db.query.first-row")
+                        .description("Time from subscription to the first row of a multi-row query")
+                        .tags("repository", repository, "operation", operation)
+                        .register(registry);
+                this.rows = DistributionSummary.builder("db.query.rows")
+                        .description("Rows emitted per multi-row query")
+                        .tags("repository", repository, "operation", operation)
+                        .register(registry);
+            } else {
+                this.firstRow = null;
+                this.rows = null;
+            }
+        }
+
+        private static Timer timer(MeterRegistry registry, String repository, String operation, String outcome) {
+            return Timer.builder("db.query")
+                    .tags("repository", repository, "operation", operation, "outcome", outcome)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Per-subscription timing state
+     */
+    private final class QueryTiming<T> extends DefaultSignalListener<T> {
+        private final QueryMeters meters;
+        private long start;
+        private long rowCount;
+
+        private QueryTiming(QueryMeters meters) {
+            this.meters = meters;
+        }
+
+        @Override
+        public void doOnSubscription() {
+            start = System.nanoTime();
+        }
+
+        @Override
+        public void doOnNext(T value) {
+            if (rowCount++ == 0 && meters.firstRow != null) {
+                meters.firstRow.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        @Override
+        public void doOnComplete() {
+            long elapsed = stop(meters.success);
+            metricsService.recordDbQuery(elapsed);
+        }
+
+        @Override
+        public void doOnError(Throwable error) {
+            long elapsed = stop(meters.error);
+            metricsService.recordDbQuery(elapsed);
+        }
+
+        @Override
+        public void doOnCancel() {
+            stop(meters.cancelled);
+        }
+
+        private long stop(Timer timer) {
+            long elapsed = System.nanoTime() - start;
+            timer.record(elapsed, TimeUnit.NANOSECONDS);
+            if (meters.rows != null) {
+                meters.rows.record(rowCount);
+            }
+            return elapsed;
+        }
+    }
 }
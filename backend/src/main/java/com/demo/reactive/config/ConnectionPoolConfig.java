@@ -0,0 +1,32 @@
+package com.demo.reactive.config;
+
+import com.demo.reactive.service.MetricsService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.r2dbc.pool.ConnectionPool;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Swaps the ConnectionPool that Boot creates from spring.r2dbc.pool for a
+ * {@link TimedConnectionPool}, so every repository and DatabaseClient acquire is timed.
+ */
+@Configuration
+public class ConnectionPoolConfig {
+
+    // Static, and resolving its dependencies lazily, so it does not pull beans in before post-processing is set up
+    @Bean
+    static BeanPostProcessor timedConnectionPoolPostProcessor(ObjectProvider<MeterRegistry> registry,
+                                                              ObjectProvider<MetricsService> metricsService) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof ConnectionPool pool) {
+                    return new TimedConnectionPool(pool, registry.getObject(), metricsService.getObject());
+                }
+                return bean;
+            }
+        };
+    }
+}
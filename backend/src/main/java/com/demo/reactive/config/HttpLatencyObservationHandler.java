@@ -0,0 +1,63 @@
+package com.demo.reactive.config;
+
+import com.demo.reactive.service.MetricsService;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.transport.RequestReplyReceiverContext;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Feeds every completed server request into the sliding-window HTTP engine in
+ * {@link MetricsService}. Works for both the servlet and reactive stacks since
+ * both report through the {@code http.server.requests} observation.
+ */
+@Component
+public class HttpLatencyObservationHandler implements ObservationHandler<RequestReplyReceiverContext<?, ?>> {
+
+    private static final String START_KEY = HttpLatencyObservationHandler.class.getName() + ".start";
+
+    private final MetricsService metricsService;
+
+    public HttpLatencyObservationHandler(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return context instanceof RequestReplyReceiverContext<?, ?>;
+    }
+
+    @Override
+    public void onStart(RequestReplyReceiverContext<?, ?> context) {
+        context.put(START_KEY, System.nanoTime());
+    }
+
+    @Override
+    public void onStop(RequestReplyReceiverContext<?, ?> context) {
+        Long start = context.get(START_KEY);
+        if (start == null || !"http.server.requests".equals(context.getName())) {
+            return;
+        }
+        // SSE and NDJSON streams live for minutes and would swamp the latency percentiles
+        if (isStreaming(context.getResponse())) {
+            return;
+        }
+        metricsService.recordHttpRequest(System.nanoTime() - start);
+    }
+
+    private static boolean isStreaming(Object response) {
+        String contentType = null;
+        if (response instanceof HttpServletResponse servletResponse) {
+            contentType = servletResponse.getContentType();
+        } else if (response instanceof ServerHttpResponse reactiveResponse) {
+            MediaType mediaType = reactiveResponse.getHeaders().getContentType();
+            contentType = mediaType != null ? mediaType.toString() : null;
+        }
+        return contentType != null
+                && (contentType.startsWith(MediaType.TEXT_EVENT_STREAM_VALUE)
+                    || contentType.startsWith(MediaType.APPLICATION_NDJSON_VALUE));
+    }
+}
@@ -0,0 +1,39 @@
+package com.demo.reactive.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Executor for streamed responses (SSE, NDJSON) on the servlet stack.
+ * The STOMP broker registers its own executors, which makes Boot skip its shared task
+ * executor, and Spring MVC would then fall back to starting a new thread for every
+ * element written to every streaming client.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class MvcAsyncConfig {
+
+    @Bean
+    public ThreadPoolTaskExecutor mvcAsyncExecutor(@Value("${server.streaming.threads:16}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("mvc-stream-");
+        return executor;
+    }
+
+    @Bean
+    public WebMvcConfigurer asyncSupportConfigurer(ThreadPoolTaskExecutor mvcAsyncExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(mvcAsyncExecutor);
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.demo.reactive.config;
+
+import com.demo.reactive.model.Money;
+import com.demo.reactive.model.StockTransaction;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.r2dbc.convert.R2dbcCustomConversions;
+import org.springframework.data.r2dbc.dialect.DialectResolver;
+import org.springframework.data.r2dbc.mapping.OutboundRow;
+import org.springframework.r2dbc.core.Parameter;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Entity converters for stock_transactions, whose DECIMAL(10,2) price column maps to a
+ * long of cents. A plain Long/BigDecimal converter would also apply to every other Long
+ * column, so the whole row is converted instead.
+ */
+@Configuration
+public class R2dbcConfig {
+
+    @Bean
+    public R2dbcCustomConversions r2dbcCustomConversions(ConnectionFactory connectionFactory) {
+        return R2dbcCustomConversions.of(DialectResolver.getDialect(connectionFactory), List.of(
+                new StockTransactionReader(),
+                new StockTransactionWriter()));
+    }
+
+    @ReadingConverter
+    static class StockTransactionReader implements Converter<Row, StockTransaction> {
+
+        @Override
+        public StockTransaction convert(Row row) {
+            BigDecimal price = row.get("price_per_share", BigDecimal.class);
+            return new StockTransaction(
+                    row.get("id", Long.class),
+                    row.get("user_id", String.class),
+                    row.get("symbol", String.class),
+                    row.get("quantity", Integer.class),
+                    price != null ? Money.fromDecimal(price) : 0,
+                    row.get("transaction_type", String.class),
+                    row.get("created_at", LocalDateTime.class));
+        }
+    }
+
+    @WritingConverter
+    static class StockTransactionWriter implements Converter<StockTransaction, OutboundRow> {
+
+        @Override
+        public OutboundRow convert(StockTransaction transaction) {
+            OutboundRow row = new OutboundRow();
+            // A null id is dropped on insert so the column's identity default applies
+            row.put("id", Parameter.fromOrEmpty(transaction.getId(), Long.class));
+            row.put("user_id", Parameter.fromOrEmpty(transaction.getUserId(), String.class));
+            row.put("symbol", Parameter.fromOrEmpty(transaction.getSymbol(), String.class));
+            row.put("quantity", Parameter.fromOrEmpty(transaction.getQuantity(), Integer.class));
+            row.put("price_per_share", Parameter.from(Money.toDecimal(transaction.getPricePerShare())));
+            row.put("transaction_type", Parameter.fromOrEmpty(transaction.getTransactionType(), String.class));
+            row.put("created_at", Parameter.fromOrEmpty(transaction.getCreatedAt(), LocalDateTime.class));
+            return row;
+        }
+    }
+}
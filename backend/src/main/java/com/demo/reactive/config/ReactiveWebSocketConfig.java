@@ -0,0 +1,65 @@
+package com.demo.reactive.config;
+
+import com.demo.reactive.controller.ChatWebSocketHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.netty.NettyServerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.cors.CorsConfiguration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native reactive chat transport, enabled with chat.transport=reactive
+ * (see the reactive-ws profile, which also switches the server to Netty).
+ */
+@Configuration
+@ConditionalOnProperty(name = "chat.transport", havingValue = "reactive")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveWebSocketConfig {
+
+    /**
+     * Tomcat is on the classpath for the STOMP transport and would otherwise win the
+     * reactive server auto-configuration, so ask for Reactor Netty explicitly
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory(
+            ObjectProvider<NettyServerCustomizer> serverCustomizers) {
+        NettyReactiveWebServerFactory factory = new NettyReactiveWebServerFactory();
+        factory.getServerCustomizers().addAll(serverCustomizers.orderedStream().toList());
+        return factory;
+    }
+
+    /**
+     * Same reason: without this the handshake would pick the Tomcat upgrade strategy
+     */
+    @Bean
+    public WebFluxConfigurer reactorNettyWebSocketService() {
+        return new WebFluxConfigurer() {
+            @Override
+            public WebSocketService getWebSocketService() {
+                return new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy());
+            }
+        };
+    }
+
+    @Bean
+    public HandlerMapping chatWebSocketMapping(ChatWebSocketHandler chatWebSocketHandler) {
+        SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping(Map.of("/ws/chat", chatWebSocketHandler), -1);
+
+        CorsConfiguration cors = new CorsConfiguration();
+        cors.setAllowedOrigins(List.of("http://localhost:5173", "http://localhost:5174", "http://localhost:3000"));
+        mapping.setCorsConfigurations(Map.of("/ws/chat", cors));
+        return mapping;
+    }
+}
@@ -0,0 +1,44 @@
+package com.demo.reactive.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Serve Smile through the application's mapper settings on either web stack. Spring
+ * registers Smile codecs by itself once the format is on the classpath, but builds their
+ * mappers from its own defaults, which write dates as timestamps.
+ */
+@Configuration
+public class SmileCodecConfig {
+
+    @Bean
+    public WebFluxConfigurer smileCodecsWebFlux(SmileEncoding smile) {
+        return new WebFluxConfigurer() {
+            @Override
+            public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+                configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smile.mapper()));
+                configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile.mapper()));
+            }
+        };
+    }
+
+    @Bean
+    public WebMvcConfigurer smileConverterWebMvc(SmileEncoding smile) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+                converters.removeIf(MappingJackson2SmileHttpMessageConverter.class::isInstance);
+                converters.add(new MappingJackson2SmileHttpMessageConverter(smile.mapper()));
+            }
+        };
+    }
+}
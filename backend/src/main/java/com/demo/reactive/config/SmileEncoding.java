@@ -0,0 +1,42 @@
+package com.demo.reactive.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+/**
+ * Smile, Jackson's binary JSON, as the compact alternative to JSON on the HTTP endpoints
+ * and the reactive WebSocket transport. Field names are written once per document and
+ * referenced after that, as are short repeated values such as room and user names.
+ * The mapper is a copy of the application's JSON mapper, so payloads keep the same shape
+ * (ISO dates, omitted nulls) in both formats; JSON stays the default wherever no format
+ * is asked for.
+ */
+@Component
+public class SmileEncoding {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-jackson-smile";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    // A sequence of values in one response, written as Spring's Smile codec streams them
+    public static final String STREAM_MEDIA_TYPE_VALUE = "application/stream+x-jackson-smile";
+    public static final MediaType STREAM_MEDIA_TYPE = MediaType.parseMediaType(STREAM_MEDIA_TYPE_VALUE);
+
+    private final ObjectMapper mapper;
+
+    public SmileEncoding(ObjectMapper objectMapper) {
+        this.mapper = objectMapper.copyWith(SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build());
+    }
+
+    /**
+     * @return mapper reading and writing Smile; not registered as a bean, so the
+     *         application's JSON mapper stays the only ObjectMapper
+     */
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+}
@@ -1,15 +1,51 @@
 package com.demo.reactive.config;
 
+import com.demo.reactive.model.ChatFrame;
+import com.demo.reactive.service.ChatPipelineMetrics;
+import com.demo.reactive.service.ChatRateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ImmutableMessageChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 
 @Configuration
+@ConditionalOnProperty(name = "chat.transport", havingValue = "stomp", matchIfMissing = true)
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
-    
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    private static final String CHAT_PREFIX = "/app/chat/";
+    private static final String JOIN_PREFIX = "/app/chat/join/";
+
+    // Where a session is told about dropped frames and refused messages; clients subscribe to /user/queue/errors
+    private static final String ERROR_QUEUE = "/queue/errors";
+
+    private final ChatRateLimiter rateLimiter;
+    // Created by the broker configuration this class takes part in, so looked up on first use
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
+
+    public WebSocketConfig(ChatRateLimiter rateLimiter, ObjectProvider<SimpMessagingTemplate> messagingTemplate) {
+        this.rateLimiter = rateLimiter;
+        this.messagingTemplate = messagingTemplate;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         // Enable a simple in-memory message broker for broadcasting messages
@@ -17,6 +53,9 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         
         // Set application destination prefix for messages from clients
         config.setApplicationDestinationPrefixes("/app");
+
+        // Keep per-session delivery in publish order so presence sequence numbers arrive in order
+        config.setPreservePublishOrder(true);
     }
     
     @Override
@@ -26,4 +65,62 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOrigins("http://localhost:5173", "http://localhost:5174", "http://localhost:3000")
                 .withSockJS();
     }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Drop chat messages over the rate limit before they are queued for the handlers.
+        // Then stamp SEND frames on arrival so the chat pipeline can time decoding. With the
+        // immutable-message interceptor last, headers stay writable until then, so the
+        // stamp is added in place instead of copying every message.
+        registration.interceptors(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                if (accessor == null || !StompCommand.SEND.equals(accessor.getCommand())) {
+                    return message;
+                }
+                String destination = accessor.getDestination();
+                if (destination == null || !destination.startsWith(CHAT_PREFIX) || destination.startsWith(JOIN_PREFIX)) {
+                    return message;
+                }
+                String roomId = destination.substring(CHAT_PREFIX.length());
+                String sessionId = accessor.getSessionId();
+                ChatRateLimiter.Decision decision = rateLimiter.tryAcquire(sessionId, roomId);
+                if (decision == ChatRateLimiter.Decision.ALLOWED) {
+                    return message;
+                }
+                log.debug("Dropping chat message to room {} from session {}: {}", roomId, sessionId, decision);
+                sendError(sessionId, rateLimiter.describe(decision, roomId));
+                return null;
+            }
+        }, new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+                if (accessor != null && accessor.isMutable() && StompCommand.SEND.equals(accessor.getCommand())) {
+                    accessor.setHeader(ChatPipelineMetrics.RECEIVED_AT_HEADER, System.nanoTime());
+                }
+                return message;
+            }
+        }, new ImmutableMessageChannelInterceptor());
+    }
+
+    private void sendError(String sessionId, String error) {
+        sendError(messagingTemplate.getObject(), sessionId, error);
+    }
+
+    /**
+     * Send an error to one session only. A STOMP ERROR frame would close the connection,
+     * so the error travels as a message on the session's own error queue.
+     */
+    public static void sendError(SimpMessagingTemplate messagingTemplate, String sessionId, String error) {
+        if (sessionId == null) {
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSendToUser(sessionId, ERROR_QUEUE, ChatFrame.error(error),
+                headers.getMessageHeaders());
+    }
 }
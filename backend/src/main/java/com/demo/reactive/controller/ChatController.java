@@ -1,21 +1,32 @@
 package com.demo.reactive.controller;
 
+import com.demo.reactive.config.SmileEncoding;
+import com.demo.reactive.config.WebSocketConfig;
+import com.demo.reactive.model.ChatCursor;
 import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.model.ChatMessagePage;
+import com.demo.reactive.model.ChatSearchPage;
 import com.demo.reactive.service.ChatMessageService;
+import com.demo.reactive.service.ChatPipelineMetrics;
 import com.demo.reactive.service.PresenceService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.annotation.SubscribeMapping;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,72 +35,146 @@ public class ChatController {
     
     private static final Logger log = LoggerFactory.getLogger(ChatController.class);
 
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MAX_SEARCH_PAGE_SIZE = 100;
+    private static final int MAX_SEARCH_OFFSET = 1_000;
+    private static final int MAX_QUERY_LENGTH = 200;
+
     private final ChatMessageService chatMessageService;
-    private final SimpMessagingTemplate messagingTemplate;
     private final PresenceService presenceService;
+    // Only there with the STOMP transport
+    private final ObjectProvider<SimpMessagingTemplate> messagingTemplate;
 
-    public ChatController(ChatMessageService chatMessageService, SimpMessagingTemplate messagingTemplate, PresenceService presenceService) {
+    public ChatController(ChatMessageService chatMessageService, PresenceService presenceService,
+                          ObjectProvider<SimpMessagingTemplate> messagingTemplate) {
         this.chatMessageService = chatMessageService;
-        this.messagingTemplate = messagingTemplate;
         this.presenceService = presenceService;
+        this.messagingTemplate = messagingTemplate;
     }
     
     /**
      * Handle incoming chat messages via WebSocket
      * @param roomId the room to send message to
      * @param message the chat message
+     * @param receivedAt when the frame arrived, stamped by the inbound channel
+     * @param headerAccessor for the session to report a refused message to
      */
     @MessageMapping("/chat/{roomId}")
-    public void handleChatMessage(@DestinationVariable String roomId, @Payload ChatMessage message) {
+    public void handleChatMessage(@DestinationVariable String roomId, @Payload ChatMessage message,
+                                  @Header(name = ChatPipelineMetrics.RECEIVED_AT_HEADER, required = false) Long receivedAt,
+                                  SimpMessageHeaderAccessor headerAccessor) {
         log.info("Received message for room: {} from user: {}", roomId, message.getUserName());
+        String sessionId = headerAccessor.getSessionId();
         
-        // Set room ID and timestamp
-        message.setRoomId(roomId);
-        message.setCreatedAt(LocalDateTime.now());
-        
-        // Save to database and broadcast on success
-        chatMessageService.saveMessage(message)
+        // Save to database and broadcast on success; tell the sender if the message was refused
+        chatMessageService.publishMessage(roomId, message, receivedAt != null ? receivedAt : System.nanoTime())
                 .subscribe(
-                        savedMessage -> {
-                            log.info("Broadcasting message ID: {} to /topic/chat/{}", 
-                                     savedMessage.getId(), roomId);
-                            messagingTemplate.convertAndSend(
-                                    "/topic/chat/" + roomId, 
-                                    savedMessage
-                            );
-                        },
-                        error -> log.error("Error saving/broadcasting message: {}", error.getMessage())
+                        null,
+                        error -> {
+                            log.error("Error saving/broadcasting message: {}", error.getMessage());
+                            messagingTemplate.ifAvailable(template ->
+                                    WebSocketConfig.sendError(template, sessionId, error.getMessage()));
+                        }
                 );
     }
     
     /**
-     * REST endpoint to get chat history for a room
+     * REST endpoint to get chat history for a room, as JSON or, when the client asks for it, Smile
      * @param roomId the room ID
-     * @param limit optional limit on number of messages (default 50)
+     * @param limit optional limit on number of messages (default 50, at most 500)
      * @return Flux of recent chat messages
      */
-    @GetMapping("/api/chat/{roomId}/history")
+    @GetMapping(value = "/api/chat/{roomId}/history",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SmileEncoding.MEDIA_TYPE_VALUE})
     @ResponseBody
     public Flux<ChatMessage> getChatHistory(
             @PathVariable String roomId,
             @RequestParam(defaultValue = "50") int limit) {
         log.info("Fetching chat history for room: {} with limit: {}", roomId, limit);
-        return chatMessageService.getRecentMessages(roomId, limit)
-                .sort((m1, m2) -> m1.getCreatedAt().compareTo(m2.getCreatedAt())); // Return chronological order
+        int historySize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return chatMessageService.getRecentMessages(roomId, historySize); // Already in chronological order
     }
     
     /**
-     * REST endpoint to get all messages for a room
+     * REST endpoint to page through the messages of a room, newest first
      * @param roomId the room ID
-     * @return Flux of all chat messages
+     * @param before cursor from a previous page; returns older messages
+     * @param after cursor from a previous page; returns newer messages
+     * @param limit maximum number of messages per page (default 50, capped at 500)
+     * @return Mono of the page and its neighbouring cursors
      */
-    @GetMapping("/api/chat/{roomId}/messages")
+    @GetMapping(value = "/api/chat/{roomId}/messages",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SmileEncoding.MEDIA_TYPE_VALUE})
     @ResponseBody
-    public Flux<ChatMessage> getAllMessages(@PathVariable String roomId) {
-        log.info("Fetching all messages for room: {}", roomId);
-        return chatMessageService.getAllMessagesByRoom(roomId);
+    public Mono<ChatMessagePage> getMessages(
+            @PathVariable String roomId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "50") int limit) {
+        log.info("Fetching messages for room: {} (before={}, after={}, limit={})", roomId, before, after, limit);
+        if (before != null && after != null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either before or after, not both");
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return chatMessageService.getMessagePage(roomId, parseCursor(before), parseCursor(after), pageSize);
     }
-    
+
+    /**
+     * REST endpoint to stream all messages for a room as NDJSON, newest first.
+     * Rows are read in keyset windows as the client consumes them.
+     * @param roomId the room ID
+     * @param before optional cursor to start streaming from
+     * @return Flux of chat messages
+     */
+    @GetMapping(value = "/api/chat/{roomId}/messages", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseBody
+    public Flux<ChatMessage> streamAllMessages(
+            @PathVariable String roomId,
+            @RequestParam(required = false) String before) {
+        log.info("Streaming all messages for room: {}", roomId);
+        return chatMessageService.getAllMessagesByRoom(roomId, parseCursor(before));
+    }
+
+    /**
+     * REST endpoint to search a room's messages, best match first
+     * @param roomId the room ID
+     * @param q the words to search for
+     * @param offset matches to skip (default 0, at most 1000)
+     * @param limit maximum number of matches per page (default 20, capped at 100)
+     * @return Mono of the page of matches
+     */
+    @GetMapping(value = "/api/chat/{roomId}/search",
+            produces = {MediaType.APPLICATION_JSON_VALUE, SmileEncoding.MEDIA_TYPE_VALUE})
+    @ResponseBody
+    public Mono<ChatSearchPage> searchMessages(
+            @PathVariable String roomId,
+            @RequestParam String q,
+            @RequestParam(defaultValue = "0") int offset,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.info("Searching room: {} for '{}' (offset={}, limit={})", roomId, q, offset, limit);
+        if (q.isBlank() || q.length() > MAX_QUERY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Query must be between 1 and " + MAX_QUERY_LENGTH + " characters");
+        }
+        if (offset < 0 || offset > MAX_SEARCH_OFFSET) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Offset must be between 0 and " + MAX_SEARCH_OFFSET);
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_SEARCH_PAGE_SIZE));
+        return chatMessageService.searchMessages(roomId, q, offset, pageSize);
+    }
+
+    private static ChatCursor parseCursor(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return ChatCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
     /**
      * Handle user joining a room
      * @param roomId the room ID
@@ -108,6 +193,17 @@ public class ChatController {
         presenceService.userJoined(sessionId, roomId, userName);
     }
     
+    /**
+     * Send a presence snapshot to a client subscribing to /app/chat/presence/{roomId}.
+     * Clients do this on join and whenever they miss a delta sequence number.
+     * @param roomId the room ID
+     * @return the snapshot, sent only to the subscribing session
+     */
+    @SubscribeMapping("/chat/presence/{roomId}")
+    public PresenceService.PresenceUpdate handlePresenceResync(@DestinationVariable String roomId) {
+        return presenceService.snapshot(roomId);
+    }
+
     /**
      * REST endpoint to get active users in a room
      * @param roomId the room ID
@@ -0,0 +1,224 @@
+package com.demo.reactive.controller;
+
+import com.demo.reactive.config.SmileEncoding;
+import com.demo.reactive.model.ChatFrame;
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.service.ChatMessageService;
+import com.demo.reactive.service.ChatRateLimiter;
+import com.demo.reactive.service.PresenceService;
+import com.demo.reactive.service.ReactiveChatBroadcaster;
+import com.demo.reactive.service.ReactiveChatBroadcaster.EncodedFrame;
+import com.demo.reactive.service.ReactiveChatBroadcaster.Encoding;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native WebFlux chat endpoint at /ws/chat, running on Netty's event loops.
+ * Speaks the JSON {@link ChatFrame} protocol with the same destinations as the STOMP endpoint:
+ * SUBSCRIBE to /topic/chat/{roomId} or /topic/presence/{roomId}, SEND to /app/chat/{roomId}
+ * or /app/chat/join/{roomId}. SUBSCRIBE to /app/chat/presence/{roomId} answers once with a
+ * presence snapshot, as the STOMP endpoint's subscribe mapping does.
+ * <p>
+ * Frames are JSON text messages unless the client asks for the "smile" subprotocol, in
+ * which case both directions use binary messages holding the same frames in Smile.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.transport", havingValue = "reactive")
+public class ChatWebSocketHandler implements WebSocketHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+
+    private static final String TOPIC_PREFIX = "/topic/";
+    private static final String JOIN_PREFIX = "/app/chat/join/";
+    private static final String CHAT_PREFIX = "/app/chat/";
+    private static final String PRESENCE_RESYNC_PREFIX = "/app/chat/presence/";
+
+    private static final Sinks.EmitFailureHandler RETRY_ON_CONTENTION =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    // Offered in the handshake; a client asking for neither gets JSON
+    private static final List<String> SUB_PROTOCOLS = Arrays.stream(Encoding.values())
+            .map(Encoding::subProtocol)
+            .toList();
+
+    private final ReactiveChatBroadcaster broadcaster;
+    private final ChatMessageService chatMessageService;
+    private final PresenceService presenceService;
+    private final ChatRateLimiter rateLimiter;
+    private final ObjectMapper objectMapper;
+    private final ObjectReader smileFrameReader;
+
+    public ChatWebSocketHandler(ReactiveChatBroadcaster broadcaster,
+                                ChatMessageService chatMessageService,
+                                PresenceService presenceService,
+                                ChatRateLimiter rateLimiter,
+                                ObjectMapper objectMapper,
+                                SmileEncoding smile) {
+        this.broadcaster = broadcaster;
+        this.chatMessageService = chatMessageService;
+        this.presenceService = presenceService;
+        this.rateLimiter = rateLimiter;
+        this.objectMapper = objectMapper;
+        this.smileFrameReader = smile.mapper().readerFor(ChatFrame.class);
+    }
+
+    @Override
+    public List<String> getSubProtocols() {
+        return SUB_PROTOCOLS;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession session) {
+        String sessionId = session.getId();
+        Encoding encoding = Encoding.forSubProtocol(session.getHandshakeInfo().getSubProtocol());
+        log.info("WebSocket connection established: {} ({})", sessionId, encoding);
+
+        // Frames addressed to this session only (errors, presence snapshots)
+        Sinks.Many<EncodedFrame> direct = Sinks.many().unicast().onBackpressureBuffer();
+        // Destinations this session subscribes to / unsubscribes from
+        Sinks.Many<String> subscriptions = Sinks.many().unicast().onBackpressureBuffer();
+        Sinks.Many<String> unsubscriptions = Sinks.many().multicast().directBestEffort();
+        Sinks.Empty<Void> closed = Sinks.empty();
+
+        Flux<EncodedFrame> topicFrames = subscriptions.asFlux()
+                .flatMap(destination -> broadcaster.subscribe(destination, encoding)
+                        .takeUntilOther(unsubscriptions.asFlux().filter(destination::equals)));
+
+        Mono<Void> output = session.send(Flux.merge(direct.asFlux(), topicFrames)
+                .takeUntilOther(closed.asMono())
+                .mapNotNull(frame -> toMessage(session, encoding, frame)));
+
+        Mono<Void> input = session.receive()
+                .doOnNext(message -> handleFrame(sessionId, message, direct, subscriptions, unsubscriptions))
+                .then()
+                .doFinally(signal -> {
+                    log.info("WebSocket disconnection: {}", sessionId);
+                    presenceService.userLeft(sessionId);
+                    rateLimiter.sessionClosed(sessionId);
+                    closed.tryEmitEmpty();
+                });
+
+        return Mono.when(input, output);
+    }
+
+    /**
+     * @return the frame in the session's encoding, or null if it could not be serialized
+     */
+    private static WebSocketMessage toMessage(WebSocketSession session, Encoding encoding, EncodedFrame frame) {
+        if (encoding == Encoding.SMILE) {
+            byte[] smile = frame.smile();
+            return smile != null ? session.binaryMessage(factory -> factory.wrap(smile)) : null;
+        }
+        String json = frame.json();
+        return json != null ? session.textMessage(json) : null;
+    }
+
+    private void handleFrame(String sessionId, WebSocketMessage message, Sinks.Many<EncodedFrame> direct,
+                             Sinks.Many<String> subscriptions, Sinks.Many<String> unsubscriptions) {
+        long receivedAt = System.nanoTime();
+        ChatFrame frame;
+        try {
+            // Binary frames are Smile whatever the session's encoding, text frames JSON
+            frame = message.getType() == WebSocketMessage.Type.BINARY
+                    ? smileFrameReader.readValue(message.getPayload().asInputStream())
+                    : objectMapper.readValue(message.getPayloadAsText(), ChatFrame.class);
+        } catch (JsonProcessingException e) {
+            sendError(direct, "Malformed frame: " + e.getOriginalMessage());
+            return;
+        } catch (IOException e) {
+            sendError(direct, "Malformed frame: " + e.getMessage());
+            return;
+        }
+        String destination = frame.destination();
+        if (frame.type() == null || destination == null) {
+            sendError(direct, "Frame needs a type and a destination");
+            return;
+        }
+
+        switch (frame.type()) {
+            case ChatFrame.SUBSCRIBE -> {
+                if (destination.startsWith(PRESENCE_RESYNC_PREFIX)) {
+                    String roomId = destination.substring(PRESENCE_RESYNC_PREFIX.length());
+                    sendDirect(direct, ChatFrame.message("/topic/presence/" + roomId, presenceService.snapshot(roomId)));
+                    return;
+                }
+                if (!destination.startsWith(TOPIC_PREFIX)) {
+                    sendError(direct, "Cannot subscribe to " + destination);
+                    return;
+                }
+                subscriptions.emitNext(destination, RETRY_ON_CONTENTION);
+            }
+            case ChatFrame.UNSUBSCRIBE -> unsubscriptions.tryEmitNext(destination);
+            case ChatFrame.SEND -> handleSend(sessionId, destination, frame.payload(), direct, receivedAt);
+            default -> sendError(direct, "Unknown frame type " + frame.type());
+        }
+    }
+
+    private void handleSend(String sessionId, String destination, Object payload, Sinks.Many<EncodedFrame> direct,
+                            long receivedAt) {
+        if (destination.startsWith(JOIN_PREFIX)) {
+            String roomId = destination.substring(JOIN_PREFIX.length());
+            Object userName = payload instanceof Map<?, ?> join ? join.get("userName") : null;
+            if (!(userName instanceof String)) {
+                sendError(direct, "Join payload needs a userName");
+                return;
+            }
+            log.info("User {} joining room {} with session {}", userName, roomId, sessionId);
+            presenceService.userJoined(sessionId, roomId, (String) userName);
+        } else if (destination.startsWith(CHAT_PREFIX)) {
+            String roomId = destination.substring(CHAT_PREFIX.length());
+            ChatRateLimiter.Decision decision = rateLimiter.tryAcquire(sessionId, roomId);
+            if (decision != ChatRateLimiter.Decision.ALLOWED) {
+                sendError(direct, rateLimiter.describe(decision, roomId));
+                return;
+            }
+            ChatMessage message;
+            try {
+                message = objectMapper.convertValue(payload, ChatMessage.class);
+            } catch (IllegalArgumentException | ClassCastException e) {
+                sendError(direct, "Malformed chat message payload");
+                return;
+            }
+            if (message == null) {
+                sendError(direct, "Missing chat message payload");
+                return;
+            }
+            log.info("Received message for room: {} from user: {}", roomId, message.getUserName());
+            chatMessageService.publishMessage(roomId, message, receivedAt)
+                    .subscribe(
+                            null,
+                            error -> {
+                                log.error("Error saving/broadcasting message: {}", error.getMessage());
+                                sendError(direct, error.getMessage());
+                            }
+                    );
+        } else {
+            sendError(direct, "Unknown destination " + destination);
+        }
+    }
+
+    private void sendError(Sinks.Many<EncodedFrame> direct, String message) {
+        sendDirect(direct, ChatFrame.error(message));
+    }
+
+    private void sendDirect(Sinks.Many<EncodedFrame> direct, ChatFrame frame) {
+        direct.emitNext(broadcaster.encode(frame), RETRY_ON_CONTENTION);
+    }
+}
@@ -1,8 +1,11 @@
 package com.demo.reactive.controller;
 
+import com.demo.reactive.config.SmileEncoding;
 import com.demo.reactive.model.MetricsSnapshot;
 import com.demo.reactive.service.MetricsService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -12,25 +15,38 @@ import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 
+/**
+ * Current metrics as JSON or Smile, and the SSE stream; see {@link SmileMetricsStreamController}
+ * for the stream in Smile
+ */
 @RestController
 @RequestMapping("/api/metrics")
 @CrossOrigin(origins = "http://localhost:5173")
 public class MetricsController {
 
     private final MetricsService metricsService;
+    private final Duration heartbeatInterval;
 
-    public MetricsController(MetricsService metricsService) {
+    public MetricsController(MetricsService metricsService,
+                             @Value("${metrics.stream.heartbeat:15s}") Duration heartbeatInterval) {
         this.metricsService = metricsService;
+        this.heartbeatInterval = heartbeatInterval;
     }
 
-    @GetMapping
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, SmileEncoding.MEDIA_TYPE_VALUE})
     public Mono<MetricsSnapshot> getCurrentMetrics() {
         return metricsService.getCurrentMetrics();
     }
 
     @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public Flux<MetricsSnapshot> streamMetrics() {
-        return Flux.interval(Duration.ofSeconds(2))
-                .flatMap(tick -> metricsService.getCurrentMetrics());
+    public Flux<ServerSentEvent<MetricsSnapshot>> streamMetrics() {
+        Flux<ServerSentEvent<MetricsSnapshot>> snapshots = metricsService.streamMetrics()
+                .map(snapshot -> ServerSentEvent.builder(snapshot).build());
+        // Comment-only events keep idle proxies from closing the connection
+        Flux<ServerSentEvent<MetricsSnapshot>> heartbeats = Flux.interval(heartbeatInterval)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<MetricsSnapshot>builder().comment("heartbeat").build());
+        // Prefetch of one so a slow client's backlog stays in the latest-only buffer upstream
+        return Flux.merge(1, snapshots, heartbeats);
     }
 }
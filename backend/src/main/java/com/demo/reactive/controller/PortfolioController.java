@@ -0,0 +1,96 @@
+package com.demo.reactive.controller;
+
+import com.demo.reactive.model.IngestResult;
+import com.demo.reactive.model.PortfolioValuation;
+import com.demo.reactive.model.StockTransaction;
+import com.demo.reactive.service.PortfolioService;
+import com.demo.reactive.service.StockTransactionIngestService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/api/portfolio")
+@CrossOrigin(origins = "http://localhost:5173")
+public class PortfolioController {
+
+    private final PortfolioService portfolioService;
+    private final StockTransactionIngestService ingestService;
+    private final Duration heartbeatInterval;
+
+    public PortfolioController(PortfolioService portfolioService,
+                               StockTransactionIngestService ingestService,
+                               @Value("${stocks.stream.heartbeat:15s}") Duration heartbeatInterval) {
+        this.portfolioService = portfolioService;
+        this.ingestService = ingestService;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * A user's transactions, newest first
+     */
+    @GetMapping("/transactions")
+    public Flux<StockTransaction> getTransactions(@RequestParam String userId) {
+        return portfolioService.getTransactions(userId);
+    }
+
+    /**
+     * Record a buy or sell; omit pricePerShare to trade at the current price
+     */
+    @PostMapping("/transactions")
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<StockTransaction> recordTransaction(@RequestBody StockTransaction transaction) {
+        return portfolioService.recordTransaction(transaction);
+    }
+
+    /**
+     * Bulk-load transactions from NDJSON, one transaction per line. The body is read only as
+     * fast as rows are written; one result per chunk is streamed back as each chunk commits.
+     * @param body the NDJSON request body
+     * @return Flux of per-chunk results with the line numbers of any rejected records
+     */
+    @PostMapping(value = "/transactions",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<IngestResult> ingestTransactions(InputStream body) {
+        return ingestService.ingest(body);
+    }
+
+    /**
+     * Current valuation of a user's portfolio
+     */
+    @GetMapping("/{userId}")
+    public Mono<PortfolioValuation> getPortfolio(@PathVariable String userId) {
+        return portfolioService.streamPortfolio(userId).next();
+    }
+
+    /**
+     * Stream a user's portfolio valuation as SSE, updated on trades and price moves
+     */
+    @GetMapping(value = "/{userId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<PortfolioValuation>> streamPortfolio(@PathVariable String userId) {
+        Flux<ServerSentEvent<PortfolioValuation>> valuations = portfolioService.streamPortfolio(userId)
+                .map(valuation -> ServerSentEvent.builder(valuation).build());
+        // Comment-only events keep idle proxies from closing the connection
+        Flux<ServerSentEvent<PortfolioValuation>> heartbeats = Flux.interval(heartbeatInterval)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<PortfolioValuation>builder().comment("heartbeat").build());
+        // Prefetch of one so a slow client's backlog stays in the latest-only buffer upstream
+        return Flux.merge(1, valuations, heartbeats);
+    }
+}
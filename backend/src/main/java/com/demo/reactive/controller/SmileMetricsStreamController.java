@@ -0,0 +1,105 @@
+package com.demo.reactive.controller;
+
+import com.demo.reactive.config.SmileEncoding;
+import com.demo.reactive.model.MetricsSnapshot;
+import com.demo.reactive.service.MetricsService;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * /api/metrics/stream for clients accepting application/stream+x-jackson-smile: the same
+ * snapshots as the SSE stream, as one Smile sequence with no event framing. Later
+ * snapshots refer back to the field names written by the first. Each web stack has its
+ * own handler, as Spring MVC streams a Flux only as SSE or NDJSON.
+ */
+public final class SmileMetricsStreamController {
+
+    private SmileMetricsStreamController() {
+    }
+
+    @RestController
+    @RequestMapping("/api/metrics")
+    @CrossOrigin(origins = "http://localhost:5173")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public static class Reactive {
+
+        private final MetricsService metricsService;
+
+        public Reactive(MetricsService metricsService) {
+            this.metricsService = metricsService;
+        }
+
+        /**
+         * WebFlux's Smile encoder writes a streaming media type through one generator, flushed per element
+         */
+        @GetMapping(value = "/stream", produces = SmileEncoding.STREAM_MEDIA_TYPE_VALUE)
+        public Flux<MetricsSnapshot> streamMetrics() {
+            return metricsService.streamMetrics();
+        }
+    }
+
+    @RestController
+    @RequestMapping("/api/metrics")
+    @CrossOrigin(origins = "http://localhost:5173")
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public static class Servlet {
+
+        // No timeout, as for the SSE stream
+        private static final long STREAMING_TIMEOUT = -1;
+
+        private final MetricsService metricsService;
+        private final ObjectWriter snapshotWriter;
+        private final Scheduler streamScheduler;
+
+        public Servlet(MetricsService metricsService, SmileEncoding smile, ThreadPoolTaskExecutor mvcAsyncExecutor) {
+            this.metricsService = metricsService;
+            this.snapshotWriter = smile.mapper().writerFor(MetricsSnapshot.class);
+            this.streamScheduler = Schedulers.fromExecutor(mvcAsyncExecutor);
+        }
+
+        /**
+         * Write each snapshot through one sequence writer per client, as WebFlux does, on the
+         * streaming executor so a slow client does not hold up the shared sampler
+         */
+        @GetMapping(value = "/stream", produces = SmileEncoding.STREAM_MEDIA_TYPE_VALUE)
+        public ResponseEntity<ResponseBodyEmitter> streamMetrics() throws IOException {
+            ResponseBodyEmitter emitter = new ResponseBodyEmitter(STREAMING_TIMEOUT);
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            SequenceWriter writer = snapshotWriter.writeValues(buffer);
+
+            Disposable subscription = metricsService.streamMetrics()
+                    .publishOn(streamScheduler, 1)
+                    .subscribe(snapshot -> {
+                        try {
+                            writer.write(snapshot);
+                            writer.flush();
+                            emitter.send(buffer.toByteArray(), MediaType.APPLICATION_OCTET_STREAM);
+                        } catch (IOException e) {
+                            emitter.completeWithError(e);
+                        } finally {
+                            buffer.reset();
+                        }
+                    }, emitter::completeWithError, emitter::complete);
+            emitter.onCompletion(subscription::dispose);
+            emitter.onError(error -> subscription.dispose());
+
+            return ResponseEntity.ok().contentType(SmileEncoding.STREAM_MEDIA_TYPE).body(emitter);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.demo.reactive.controller;
+
+import com.demo.reactive.model.Candle;
+import com.demo.reactive.model.StockPrice;
+import com.demo.reactive.service.CandleService;
+import com.demo.reactive.service.StockPriceService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/stocks")
+@CrossOrigin(origins = "http://localhost:5173")
+public class StockController {
+
+    private final StockPriceService stockPriceService;
+    private final CandleService candleService;
+    private final Duration heartbeatInterval;
+
+    public StockController(StockPriceService stockPriceService,
+                           CandleService candleService,
+                           @Value("${stocks.stream.heartbeat:15s}") Duration heartbeatInterval) {
+        this.stockPriceService = stockPriceService;
+        this.candleService = candleService;
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    /**
+     * Latest price of every tracked symbol
+     */
+    @GetMapping
+    public List<StockPrice> getCurrentPrices() {
+        return stockPriceService.latest().prices();
+    }
+
+    /**
+     * Stream prices every tick as SSE; each event is a JSON array of {@link StockPrice}
+     * @param symbols optional comma-separated symbols to include; all symbols when absent
+     * @return Flux of price events with periodic heartbeat comments
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamPrices(@RequestParam(required = false) List<String> symbols) {
+        return withHeartbeats(stockPriceService.streamPrices(symbols));
+    }
+
+    /**
+     * Recent OHLC candles of one symbol, oldest first; the last one is still open
+     * @param resolution 1s, 1m or 5m
+     * @param limit maximum number of candles
+     */
+    @GetMapping("/{symbol}/candles")
+    public List<Candle> getCandles(@PathVariable String symbol,
+                                   @RequestParam(defaultValue = "1m") String resolution,
+                                   @RequestParam(defaultValue = "100") int limit) {
+        return candleService.candles(symbol, CandleService.Resolution.of(resolution), limit);
+    }
+
+    /**
+     * Stream one symbol's candles as SSE, one event per tick; each event is a list of
+     * {@link Candle}s, oldest first: the open candle, preceded by the one it closed when an
+     * interval rolls over
+     * @param resolution 1s, 1m or 5m
+     */
+    @GetMapping(value = "/{symbol}/candles/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<String>> streamCandles(@PathVariable String symbol,
+                                                       @RequestParam(defaultValue = "1m") String resolution) {
+        return withHeartbeats(candleService.streamCandles(symbol, CandleService.Resolution.of(resolution)));
+    }
+
+    private Flux<ServerSentEvent<String>> withHeartbeats(Flux<String> events) {
+        // Event data is already JSON, so it is written as-is rather than encoded again
+        Flux<ServerSentEvent<String>> data = events.map(json -> ServerSentEvent.builder(json).build());
+        // Comment-only events keep idle proxies from closing the connection
+        Flux<ServerSentEvent<String>> heartbeats = Flux.interval(heartbeatInterval)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<String>builder().comment("heartbeat").build());
+        // Prefetch of one so a slow client's backlog stays in the latest-only buffer upstream
+        return Flux.merge(1, data, heartbeats);
+    }
+}
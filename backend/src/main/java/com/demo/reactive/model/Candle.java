@@ -0,0 +1,20 @@
+package com.demo.reactive.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Open/high/low/close of one symbol over one interval; prices are in cents, written as decimals
+ * @param start interval start, epoch millis
+ * @param closed false while the interval is still taking ticks
+ */
+public record Candle(
+    String symbol,
+    String resolution,
+    long start,
+    @JsonSerialize(using = Money.Serializer.class) long open,
+    @JsonSerialize(using = Money.Serializer.class) long high,
+    @JsonSerialize(using = Money.Serializer.class) long low,
+    @JsonSerialize(using = Money.Serializer.class) long close,
+    int ticks,
+    boolean closed
+) {}
@@ -0,0 +1,40 @@
+package com.demo.reactive.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position in a room's history, ordered by (createdAt, id).
+ * Clients see it only as an opaque URL-safe token.
+ */
+public record ChatCursor(LocalDateTime createdAt, long id) {
+
+    public static ChatCursor of(ChatMessage message) {
+        return new ChatCursor(message.getCreatedAt(), message.getId());
+    }
+
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token produced by {@link #encode()}
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ChatCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            return new ChatCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                                  Long.parseLong(raw.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+}
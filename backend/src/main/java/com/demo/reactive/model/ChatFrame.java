@@ -0,0 +1,30 @@
+package com.demo.reactive.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * JSON envelope used by the native reactive WebSocket transport.
+ * Mirrors the STOMP frames the chat client uses: SUBSCRIBE / UNSUBSCRIBE / SEND from the
+ * client with the same destinations (/topic/..., /app/...), MESSAGE / ERROR from the server.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ChatFrame(
+    String type,
+    String destination,
+    Object payload,
+    String message
+) {
+    public static final String SUBSCRIBE = "SUBSCRIBE";
+    public static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+    public static final String SEND = "SEND";
+    public static final String MESSAGE = "MESSAGE";
+    public static final String ERROR = "ERROR";
+
+    public static ChatFrame message(String destination, Object payload) {
+        return new ChatFrame(MESSAGE, destination, payload, null);
+    }
+
+    public static ChatFrame error(String message) {
+        return new ChatFrame(ERROR, null, null, message);
+    }
+}
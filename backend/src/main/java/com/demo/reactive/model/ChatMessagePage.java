@@ -0,0 +1,15 @@
+package com.demo.reactive.model;
+
+import java.util.List;
+
+/**
+ * One page of a room's history, newest message first.
+ * @param messages the messages in this page
+ * @param before cursor for the next older page, or null when there are no older messages
+ * @param after cursor for messages newer than this page, or null when the page is empty
+ */
+public record ChatMessagePage(
+    List<ChatMessage> messages,
+    String before,
+    String after
+) {}
@@ -0,0 +1,22 @@
+package com.demo.reactive.model;
+
+import java.util.List;
+
+/**
+ * One page of a room's messages matching a search, best match first.
+ * @param query the query as given
+ * @param hits the matching messages in this page
+ * @param total matching messages across all pages
+ * @param nextOffset offset of the next page, or null when this is the last
+ */
+public record ChatSearchPage(
+    String query,
+    List<Hit> hits,
+    int total,
+    Integer nextOffset
+) {
+    /**
+     * @param score relevance to the query; only comparable within one search
+     */
+    public record Hit(ChatMessage message, double score) {}
+}
@@ -0,0 +1,17 @@
+package com.demo.reactive.model;
+
+import java.util.List;
+
+/**
+ * Outcome of one chunk of a bulk ingest, streamed back as the chunk is written
+ */
+public record IngestResult(
+    long chunk,
+    long firstLine,
+    long lastLine,
+    int inserted,
+    int rejected,
+    List<Rejection> rejections
+) {
+    public record Rejection(long line, String reason) {}
+}
@@ -4,7 +4,8 @@ public record MetricsSnapshot(
     long timestamp,
     JvmMetrics jvm,
     HttpMetrics http,
-    DbMetrics db
+    DbMetrics db,
+    ChatMetrics chat
 ) {
     public record JvmMetrics(
         long heapUsed,
@@ -20,12 +21,80 @@ public record MetricsSnapshot(
         long totalRequests,
         double requestsPerSecond,
         double averageResponseTime,
-        long activeConnections
+        long activeConnections,
+        LatencyWindows latency
     ) {}
 
     public record DbMetrics(
         double averageQueryTime,
         long activeConnections,
-        long totalQueries
+        long totalQueries,
+        long failedQueries,
+        long cancelledQueries,
+        double averageTimeToFirstRow,
+        double queriesPerSecond,
+        LatencyWindows latency,
+        PoolMetrics pool,
+        AdmissionMetrics admission
+    ) {}
+
+    /**
+     * R2DBC connection pool occupancy and how long callers wait for a connection
+     */
+    public record PoolMetrics(
+        long acquired,
+        long idle,
+        long allocated,
+        long maxAllocated,
+        long pendingAcquires,
+        long totalAcquires,
+        long failedAcquires,
+        double averageAcquireTime,
+        LatencyWindows acquireLatency
+    ) {}
+
+    /**
+     * Chat write admission decisions, taken from the pool's pending acquires
+     */
+    public record AdmissionMetrics(
+        long admitted,
+        long delayed,
+        long rejected,
+        long waiting
+    ) {}
+
+    /**
+     * Where incoming chat messages spend their time, by pipeline stage
+     */
+    public record ChatMetrics(
+        StageMetrics decode,
+        StageMetrics persist,
+        StageMetrics broadcast,
+        StageMetrics total,
+        StageMetrics write
+    ) {}
+
+    public record StageMetrics(
+        long count,
+        long errors,
+        double averageTime,
+        LatencyWindows latency
+    ) {}
+
+    /**
+     * Rate and latency percentiles (milliseconds) over trailing windows
+     */
+    public record LatencyWindows(
+        LatencyWindow last10s,
+        LatencyWindow last1m,
+        LatencyWindow last5m
+    ) {}
+
+    public record LatencyWindow(
+        double ratePerSecond,
+        double p50,
+        double p95,
+        double p99,
+        long count
     ) {}
 }
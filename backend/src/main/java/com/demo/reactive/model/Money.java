@@ -0,0 +1,180 @@
+package com.demo.reactive.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point money: amounts are plain longs in cents. The Jackson codec writes them as
+ * decimal numbers with two places, exactly as a scale-2 BigDecimal would be written,
+ * and reads any JSON number or numeric string with at most two decimal places.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+
+    private Money() {
+    }
+
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    /**
+     * @throws ArithmeticException if the amount has more than two decimal places or overflows
+     */
+    public static long fromDecimal(BigDecimal amount) {
+        if (amount.scale() == SCALE) {
+            return amount.unscaledValue().longValueExact();
+        }
+        return amount.setScale(SCALE).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Format as a plain decimal with two places, e.g. -1205 as "-12.05"
+     */
+    public static String format(long cents) {
+        char[] buffer = new char[24];
+        return new String(buffer, 0, format(cents, buffer));
+    }
+
+    /**
+     * Parse a plain decimal such as "12", "-12.5" or "12.050"
+     * @throws NumberFormatException if it is not a number or has more than two significant decimal places
+     */
+    public static long parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        long units = 0;
+        int digits = 0;
+        for (; i < length && text.charAt(i) != '.'; i++, digits++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || digits >= 16) {
+                // Exponents, stray characters and anything near overflow take the slow path
+                return fromDecimal(text);
+            }
+            units = units * 10 + digit;
+        }
+        long fraction = 0;
+        int places = 0;
+        if (i < length) {
+            for (i++; i < length; i++, places++) {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return fromDecimal(text);
+                }
+                if (places >= SCALE) {
+                    if (digit != 0) {
+                        throw new NumberFormatException("More than " + SCALE + " decimal places: " + text);
+                    }
+                } else {
+                    fraction = fraction * 10 + digit;
+                }
+            }
+        }
+        if (digits == 0 && places == 0) {
+            throw new NumberFormatException("Not a number: " + text);
+        }
+        for (int p = Math.min(places, SCALE); p < SCALE; p++) {
+            fraction *= 10;
+        }
+        long cents = units * 100 + fraction;
+        return negative ? -cents : cents;
+    }
+
+    private static long fromDecimal(CharSequence text) {
+        try {
+            return fromDecimal(new BigDecimal(text.toString()));
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Not a whole number of cents: " + text);
+        }
+    }
+
+    private static int format(long cents, char[] buffer) {
+        long magnitude = Math.abs(cents);   // Long.MIN_VALUE is out of range for any column
+        int pos = buffer.length;
+        buffer[--pos] = (char) ('0' + magnitude % 10);
+        buffer[--pos] = (char) ('0' + magnitude / 10 % 10);
+        buffer[--pos] = '.';
+        long units = magnitude / 100;
+        do {
+            buffer[--pos] = (char) ('0' + units % 10);
+            units /= 10;
+        } while (units > 0);
+        if (cents < 0) {
+            buffer[--pos] = '-';
+        }
+        int length = buffer.length - pos;
+        System.arraycopy(buffer, pos, buffer, 0, length);
+        return length;
+    }
+
+    /**
+     * Writes a cents field as a JSON number with two decimal places
+     */
+    public static final class Serializer extends StdSerializer<Long> {
+
+        // The generator copies the digits out, so one scratch buffer per thread is enough
+        private static final ThreadLocal<char[]> BUFFER = ThreadLocal.withInitial(() -> new char[24]);
+
+        public Serializer() {
+            super(Long.class);
+        }
+
+        @Override
+        public void serialize(Long cents, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            if (generator.canWriteFormattedNumbers()) {
+                char[] buffer = BUFFER.get();
+                generator.writeNumber(buffer, 0, format(cents, buffer));
+            } else {
+                // Binary formats have a native decimal type
+                generator.writeNumber(toDecimal(cents));
+            }
+        }
+    }
+
+    /**
+     * Reads a JSON number or numeric string into a cents field; null reads as zero
+     */
+    public static final class Deserializer extends StdDeserializer<Long> {
+
+        public Deserializer() {
+            super(Long.class);
+        }
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                    || token == JsonToken.VALUE_STRING) {
+                String text = parser.getText().trim();
+                try {
+                    return parse(text);
+                } catch (NumberFormatException e) {
+                    throw InvalidFormatException.from(parser,
+                            parser.currentName() + " must be an amount with at most " + SCALE + " decimal places",
+                            text, Long.class);
+                }
+            }
+            return (Long) context.handleUnexpectedToken(Long.class, parser);
+        }
+
+        @Override
+        public Long getNullValue(DeserializationContext context) {
+            return 0L;
+        }
+    }
+}
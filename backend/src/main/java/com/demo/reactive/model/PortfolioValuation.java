@@ -0,0 +1,26 @@
+package com.demo.reactive.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.List;
+
+/**
+ * A user's holdings valued at the latest prices; amounts are in cents, written as decimals
+ */
+public record PortfolioValuation(
+    String userId,
+    long timestamp,
+    @JsonSerialize(using = Money.Serializer.class) long totalValue,
+    @JsonSerialize(using = Money.Serializer.class) long costBasis,
+    @JsonSerialize(using = Money.Serializer.class) long unrealizedPnl,
+    List<Position> positions   // sorted by absolute unrealized P&L, largest first
+) {
+    public record Position(
+        String symbol,
+        long quantity,
+        @JsonSerialize(using = Money.Serializer.class) long averageCost,
+        @JsonSerialize(using = Money.Serializer.class) long currentPrice,
+        @JsonSerialize(using = Money.Serializer.class) long marketValue,
+        @JsonSerialize(using = Money.Serializer.class) long unrealizedPnl
+    ) {}
+}
@@ -1,29 +1,34 @@
 package com.demo.reactive.model;
 
-import java.math.BigDecimal;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 import java.time.Instant;
 
 public class StockPrice {
     
     private String symbol;
     
-    private BigDecimal price;
+    // Cents, written as a decimal price
+    @JsonSerialize(using = Money.Serializer.class)
+    @JsonDeserialize(using = Money.Deserializer.class)
+    private long price;
     
-    private Double changePercent;
+    private double changePercent;
     
-    private Long timestamp;
+    private long timestamp;
 
     public StockPrice() {
     }
 
-    public StockPrice(String symbol, BigDecimal price, Double changePercent, Long timestamp) {
+    public StockPrice(String symbol, long price, double changePercent, long timestamp) {
         this.symbol = symbol;
         this.price = price;
         this.changePercent = changePercent;
         this.timestamp = timestamp;
     }
     
-    public StockPrice(String symbol, BigDecimal price, Double changePercent) {
+    public StockPrice(String symbol, long price, double changePercent) {
         this.symbol = symbol;
         this.price = price;
         this.changePercent = changePercent;
@@ -38,27 +43,27 @@ public class StockPrice {
         this.symbol = symbol;
     }
 
-    public BigDecimal getPrice() {
+    public long getPrice() {
         return price;
     }
 
-    public void setPrice(BigDecimal price) {
+    public void setPrice(long price) {
         this.price = price;
     }
 
-    public Double getChangePercent() {
+    public double getChangePercent() {
         return changePercent;
     }
 
-    public void setChangePercent(Double changePercent) {
+    public void setChangePercent(double changePercent) {
         this.changePercent = changePercent;
     }
 
-    public Long getTimestamp() {
+    public long getTimestamp() {
         return timestamp;
     }
 
-    public void setTimestamp(Long timestamp) {
+    public void setTimestamp(long timestamp) {
         this.timestamp = timestamp;
     }
 
@@ -66,7 +71,7 @@ public class StockPrice {
     public String toString() {
         return "StockPrice{" +
                 "symbol='" + symbol + '\'' +
-                ", price=" + price +
+                ", price=" + Money.format(price) +
                 ", changePercent=" + changePercent +
                 ", timestamp=" + timestamp +
                 '}';
@@ -1,9 +1,10 @@
 package com.demo.reactive.model;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Table("stock_transactions")
@@ -18,7 +19,10 @@ public class StockTransaction {
     
     private Integer quantity;
     
-    private BigDecimal pricePerShare;
+    // Cents, written as a decimal price; 0 when not given
+    @JsonSerialize(using = Money.Serializer.class)
+    @JsonDeserialize(using = Money.Deserializer.class)
+    private long pricePerShare;
     
     private String transactionType;
     
@@ -27,7 +31,7 @@ public class StockTransaction {
     public StockTransaction() {
     }
 
-    public StockTransaction(Long id, String userId, String symbol, Integer quantity, BigDecimal pricePerShare, String transactionType, LocalDateTime createdAt) {
+    public StockTransaction(Long id, String userId, String symbol, Integer quantity, long pricePerShare, String transactionType, LocalDateTime createdAt) {
         this.id = id;
         this.userId = userId;
         this.symbol = symbol;
@@ -38,7 +42,7 @@ public class StockTransaction {
     }
     
     public StockTransaction(String userId, String symbol, Integer quantity, 
-                           BigDecimal pricePerShare, String transactionType) {
+                           long pricePerShare, String transactionType) {
         this.userId = userId;
         this.symbol = symbol;
         this.quantity = quantity;
@@ -79,11 +83,11 @@ public class StockTransaction {
         this.quantity = quantity;
     }
 
-    public BigDecimal getPricePerShare() {
+    public long getPricePerShare() {
         return pricePerShare;
     }
 
-    public void setPricePerShare(BigDecimal pricePerShare) {
+    public void setPricePerShare(long pricePerShare) {
         this.pricePerShare = pricePerShare;
     }
 
@@ -110,7 +114,7 @@ public class StockTransaction {
                 ", userId='" + userId + '\'' +
                 ", symbol='" + symbol + '\'' +
                 ", quantity=" + quantity +
-                ", pricePerShare=" + pricePerShare +
+                ", pricePerShare=" + Money.format(pricePerShare) +
                 ", transactionType='" + transactionType + '\'' +
                 ", createdAt=" + createdAt +
                 '}';
@@ -1,16 +1,52 @@
 package com.demo.reactive.repository;
 
 import com.demo.reactive.model.ChatMessage;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
 import org.springframework.data.repository.reactive.ReactiveCrudRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
 
 @Repository
-public interface ChatMessageRepository extends ReactiveCrudRepository<ChatMessage, Long> {
+public interface ChatMessageRepository extends ReactiveCrudRepository<ChatMessage, Long>, ChatMessageRepositoryCustom {
     
-    @Query("SELECT * FROM chat_messages WHERE room_id = :roomId ORDER BY created_at DESC LIMIT :limit")
+    // Newest first in (created_at, id) order, the order the history cache and archive cursors use
+    @Query("SELECT * FROM chat_messages WHERE room_id = :roomId ORDER BY created_at DESC, id DESC LIMIT :limit")
     Flux<ChatMessage> findRecentMessagesByRoomId(String roomId, int limit);
-    
-    Flux<ChatMessage> findByRoomIdOrderByCreatedAtDesc(String roomId);
+
+    // Every message, oldest ID first, for rebuilding the search index
+    @Query("SELECT * FROM chat_messages ORDER BY id")
+    Flux<ChatMessage> findAllOrderById();
+
+    // Oldest rows across all rooms, over idx_created, for moving them to the archive
+    @Query("SELECT * FROM chat_messages WHERE created_at < :cutoff ORDER BY created_at, id LIMIT :limit")
+    Flux<ChatMessage> findOldestBefore(LocalDateTime cutoff, int limit);
+
+    // Which of these IDs already have rows, for replaying the journal
+    @Query("SELECT id FROM chat_messages WHERE id IN (:ids)")
+    Flux<Long> findExistingIds(Collection<Long> ids);
+
+    @Modifying
+    @Query("DELETE FROM chat_messages WHERE id IN (:ids)")
+    Mono<Integer> deleteByIdIn(Collection<Long> ids);
+
+    // Keyset pages over idx_room_created; created_at bounds the index range, id breaks ties
+
+    @Query("SELECT * FROM chat_messages WHERE room_id = :roomId "
+            + "ORDER BY created_at DESC, id DESC LIMIT :limit")
+    Flux<ChatMessage> findNewestPage(String roomId, int limit);
+
+    @Query("SELECT * FROM chat_messages WHERE room_id = :roomId "
+            + "AND created_at <= :createdAt AND (created_at < :createdAt OR id < :id) "
+            + "ORDER BY created_at DESC, id DESC LIMIT :limit")
+    Flux<ChatMessage> findPageBefore(String roomId, LocalDateTime createdAt, long id, int limit);
+
+    @Query("SELECT * FROM chat_messages WHERE room_id = :roomId "
+            + "AND created_at >= :createdAt AND (created_at > :createdAt OR id > :id) "
+            + "ORDER BY created_at ASC, id ASC LIMIT :limit")
+    Flux<ChatMessage> findPageAfter(String roomId, LocalDateTime createdAt, long id, int limit);
 }
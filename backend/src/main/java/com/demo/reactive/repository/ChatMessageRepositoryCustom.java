@@ -0,0 +1,28 @@
+package com.demo.reactive.repository;
+
+import com.demo.reactive.model.ChatMessage;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface ChatMessageRepositoryCustom {
+
+    /**
+     * Insert messages that already carry their IDs as a single multi-row statement
+     * @param messages the messages to insert
+     * @return Mono of the number of rows inserted
+     */
+    Mono<Long> insertAll(List<ChatMessage> messages);
+
+    /**
+     * Reserve the next block of message IDs
+     * @return Mono of the block number; the caller owns every ID in that block
+     */
+    Mono<Long> nextIdBlock();
+
+    /**
+     * Move the ID block sequence forward so the next block reserved is the given one
+     * @param blockNumber the block number the sequence continues from
+     */
+    Mono<Void> restartIdBlocks(long blockNumber);
+}
@@ -0,0 +1,71 @@
+package com.demo.reactive.repository;
+
+import com.demo.reactive.model.ChatMessage;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ChatMessageRepositoryCustomImpl implements ChatMessageRepositoryCustom {
+
+    private static final String INSERT_PREFIX =
+            "INSERT INTO chat_messages (id, room_id, user_name, message_text, created_at) VALUES ";
+
+    private final DatabaseClient databaseClient;
+
+    public ChatMessageRepositoryCustomImpl(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<Long> insertAll(List<ChatMessage> messages) {
+        if (messages.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + messages.size() * 48)
+                .append(INSERT_PREFIX);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(:id").append(i)
+                    .append(", :room").append(i)
+                    .append(", :user").append(i)
+                    .append(", :text").append(i)
+                    .append(", :created").append(i)
+                    .append(')');
+        }
+
+        // Bound in one call: each bind() copies every binding so far, which is quadratic at this size
+        Map<String, Object> bindings = new HashMap<>(messages.size() * 7);
+        for (int i = 0; i < messages.size(); i++) {
+            ChatMessage message = messages.get(i);
+            bindings.put("id" + i, message.getId());
+            bindings.put("room" + i, message.getRoomId());
+            bindings.put("user" + i, message.getUserName());
+            bindings.put("text" + i, message.getMessageText());
+            bindings.put("created" + i, message.getCreatedAt());
+        }
+        return databaseClient.sql(sql.toString())
+                .bindValues(bindings)
+                .fetch()
+                .rowsUpdated();
+    }
+
+    @Override
+    public Mono<Long> nextIdBlock() {
+        return databaseClient.sql("SELECT NEXT VALUE FOR chat_messages_id_block_seq")
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    @Override
+    public Mono<Void> restartIdBlocks(long blockNumber) {
+        // DDL takes no bind markers; the value is a long, so inlining it is safe
+        return databaseClient.sql("ALTER SEQUENCE chat_messages_id_block_seq RESTART WITH " + blockNumber)
+                .then();
+    }
+}
@@ -6,7 +6,10 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 
 @Repository
-public interface StockTransactionRepository extends ReactiveCrudRepository<StockTransaction, Long> {
+public interface StockTransactionRepository extends ReactiveCrudRepository<StockTransaction, Long>, StockTransactionRepositoryCustom {
     
     Flux<StockTransaction> findByUserIdOrderByCreatedAtDesc(String userId);
+
+    // Replay order for rebuilding holdings; average cost depends on the order of trades
+    Flux<StockTransaction> findByUserIdOrderByCreatedAtAscIdAsc(String userId);
 }
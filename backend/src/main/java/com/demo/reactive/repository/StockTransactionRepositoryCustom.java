@@ -0,0 +1,16 @@
+package com.demo.reactive.repository;
+
+import com.demo.reactive.model.StockTransaction;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface StockTransactionRepositoryCustom {
+
+    /**
+     * Insert transactions as a single multi-row statement; IDs are assigned by the database
+     * @param transactions the transactions to insert
+     * @return Mono of the number of rows inserted
+     */
+    Mono<Long> insertAll(List<StockTransaction> transactions);
+}
@@ -0,0 +1,60 @@
+package com.demo.reactive.repository;
+
+import com.demo.reactive.model.Money;
+import com.demo.reactive.model.StockTransaction;
+import org.springframework.r2dbc.core.DatabaseClient;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StockTransactionRepositoryCustomImpl implements StockTransactionRepositoryCustom {
+
+    private static final String INSERT_PREFIX = "INSERT INTO stock_transactions "
+            + "(user_id, symbol, quantity, price_per_share, transaction_type, created_at) VALUES ";
+
+    private final DatabaseClient databaseClient;
+
+    public StockTransactionRepositoryCustomImpl(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    @Override
+    public Mono<Long> insertAll(List<StockTransaction> transactions) {
+        if (transactions.isEmpty()) {
+            return Mono.just(0L);
+        }
+
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX.length() + transactions.size() * 56)
+                .append(INSERT_PREFIX);
+        for (int i = 0; i < transactions.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(:user").append(i)
+                    .append(", :symbol").append(i)
+                    .append(", :quantity").append(i)
+                    .append(", :price").append(i)
+                    .append(", :type").append(i)
+                    .append(", :created").append(i)
+                    .append(')');
+        }
+
+        // Bound in one call: each bind() copies every binding so far, which is quadratic at this size
+        Map<String, Object> bindings = new HashMap<>(transactions.size() * 8);
+        for (int i = 0; i < transactions.size(); i++) {
+            StockTransaction transaction = transactions.get(i);
+            bindings.put("user" + i, transaction.getUserId());
+            bindings.put("symbol" + i, transaction.getSymbol());
+            bindings.put("quantity" + i, transaction.getQuantity());
+            bindings.put("price" + i, Money.toDecimal(transaction.getPricePerShare()));
+            bindings.put("type" + i, transaction.getTransactionType());
+            bindings.put("created" + i, transaction.getCreatedAt());
+        }
+        return databaseClient.sql(sql.toString())
+                .bindValues(bindings)
+                .fetch()
+                .rowsUpdated();
+    }
+}
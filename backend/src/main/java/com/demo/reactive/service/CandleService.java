@@ -0,0 +1,235 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.Candle;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * OHLC candles built from the shared price feed. Each symbol keeps a fixed-size ring of
+ * candles per resolution in primitive arrays, written only by the ticker thread. A candle
+ * closes when the first tick of the next interval arrives; intervals without ticks are
+ * skipped rather than filled.
+ */
+@Service
+public class CandleService {
+
+    /**
+     * Supported candle intervals
+     */
+    public enum Resolution {
+        SECOND("1s", 1_000),
+        MINUTE("1m", 60_000),
+        FIVE_MINUTES("5m", 300_000);
+
+        private final String label;
+        private final long millis;
+
+        Resolution(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        /**
+         * @param label "1s", "1m" or "5m"
+         * @throws ResponseStatusException 400 for any other value
+         */
+        public static Resolution of(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equals(label)) {
+                    return resolution;
+                }
+            }
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "resolution must be 1s, 1m or 5m");
+        }
+    }
+
+    private final StockPriceService stockPriceService;
+    private final ObjectMapper objectMapper;
+    private final int history;
+
+    // Indexed by symbol as in StockPriceService, then by resolution ordinal
+    private final Series[][] series;
+
+    private final Timer aggregateTimer;
+    private Disposable tickSubscription;
+
+    public CandleService(StockPriceService stockPriceService,
+                         ObjectMapper objectMapper,
+                         MeterRegistry registry,
+                         @Value("${stocks.candles.history:500}") int history) {
+        this.stockPriceService = stockPriceService;
+        this.objectMapper = objectMapper;
+        this.history = history;
+
+        List<String> symbols = stockPriceService.symbols();
+        Resolution[] resolutions = Resolution.values();
+        this.series = new Series[symbols.size()][resolutions.length];
+        for (int i = 0; i < symbols.size(); i++) {
+            for (Resolution resolution : resolutions) {
+                series[i][resolution.ordinal()] = new Series(symbols.get(i), resolution, history);
+            }
+        }
+
+        this.aggregateTimer = Timer.builder("stocks.candles.aggregate")
+                .description("Time to fold one price tick into every candle series")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void subscribeToPrices() {
+        tickSubscription = stockPriceService.ticks()
+                .subscribe(tick -> aggregateTimer.record(() -> onTick(tick)));
+    }
+
+    @PreDestroy
+    void unsubscribeFromPrices() {
+        tickSubscription.dispose();
+        for (Series[] bySymbol : series) {
+            for (Series candles : bySymbol) {
+                candles.events.tryEmitComplete();
+            }
+        }
+    }
+
+    /**
+     * Recent candles of one symbol, oldest first; the last one is still open
+     * @param limit maximum number of candles, at most the configured history
+     */
+    public List<Candle> candles(String symbol, Resolution resolution, int limit) {
+        if (limit <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be positive");
+        }
+        return series(symbol, resolution).recent(Math.min(limit, history));
+    }
+
+    /**
+     * Stream one symbol's candles as pre-encoded JSON arrays, oldest first, starting with
+     * the current candle. An event is sent on every tick: the open candle, preceded by the
+     * candle it closed when the tick starts a new interval. A closed candle travels in the
+     * same event as its successor, so a subscriber that falls behind and skips to the
+     * latest event still sees the close.
+     */
+    public Flux<String> streamCandles(String symbol, Resolution resolution) {
+        Series candles = series(symbol, resolution);
+        return candles.events.asFlux().onBackpressureLatest();
+    }
+
+    private Series series(String symbol, Resolution resolution) {
+        int index = stockPriceService.indexOf(symbol);
+        if (index < 0) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown symbol: " + symbol);
+        }
+        return series[index][resolution.ordinal()];
+    }
+
+    private void onTick(StockPriceService.PriceTick tick) {
+        long[] prices = tick.priceCents();
+        for (int i = 0; i < prices.length; i++) {
+            for (Series candles : series[i]) {
+                candles.add(tick.timestamp(), prices[i]);
+            }
+        }
+    }
+
+    private String encode(List<Candle> candles) {
+        try {
+            return objectMapper.writeValueAsString(candles);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode candles for " + candles.get(0).symbol(), e);
+        }
+    }
+
+    /**
+     * Ring of the most recent candles of one symbol at one resolution. Only the ticker
+     * thread writes; the lock keeps snapshot readers from seeing a half-written candle.
+     */
+    private final class Series {
+        private final String symbol;
+        private final Resolution resolution;
+        private final long[] start;
+        private final long[] open;
+        private final long[] high;
+        private final long[] low;
+        private final long[] close;
+        private final int[] ticks;
+        private int last = -1;   // slot of the open candle
+        private int size;
+
+        // Replays the latest event so a new subscriber starts with the open candle
+        private final Sinks.Many<String> events = Sinks.many().replay().latest();
+
+        private Series(String symbol, Resolution resolution, int capacity) {
+            this.symbol = symbol;
+            this.resolution = resolution;
+            this.start = new long[capacity];
+            this.open = new long[capacity];
+            this.high = new long[capacity];
+            this.low = new long[capacity];
+            this.close = new long[capacity];
+            this.ticks = new int[capacity];
+        }
+
+        private void add(long timestamp, long price) {
+            long interval = timestamp - Math.floorMod(timestamp, resolution.millis);
+            Candle closed = null;
+            Candle current;
+            synchronized (this) {
+                // A clock step backwards stays in the open candle rather than reopening an old one
+                if (last >= 0 && interval <= start[last]) {
+                    // Sent even when the price is unchanged, so the streamed tick count stays current
+                    ticks[last]++;
+                    high[last] = Math.max(high[last], price);
+                    low[last] = Math.min(low[last], price);
+                    close[last] = price;
+                } else {
+                    if (last >= 0) {
+                        closed = candle(last, true);
+                    }
+                    last = (last + 1) % start.length;
+                    size = Math.min(size + 1, start.length);
+                    start[last] = interval;
+                    open[last] = price;
+                    high[last] = price;
+                    low[last] = price;
+                    close[last] = price;
+                    ticks[last] = 1;
+                }
+                current = candle(last, false);
+            }
+            events.tryEmitNext(encode(closed != null ? List.of(closed, current) : List.of(current)));
+        }
+
+        private synchronized List<Candle> recent(int limit) {
+            int count = Math.min(limit, size);
+            List<Candle> candles = new ArrayList<>(count);
+            for (int i = count - 1; i >= 0; i--) {
+                int slot = Math.floorMod(last - i, start.length);
+                candles.add(candle(slot, i > 0));
+            }
+            return candles;
+        }
+
+        private Candle candle(int slot, boolean closed) {
+            return new Candle(symbol, resolution.label, start[slot],
+                    open[slot], high[slot], low[slot], close[slot], ticks[slot], closed);
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatCursor;
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for chat history. A periodic job moves messages older than max-age out of
+ * chat_messages into {@link ChatArchiveSegment} files, one or more per segment-span of
+ * createdAt, and deletes the rows once their segment is in place, taking them out of the
+ * search index with them. History reads that run past the oldest row of the table carry
+ * on into the segments with the same cursor.
+ * <p>
+ * Segments are kept across restarts and reopened at startup. Every archived message is
+ * older than every row still in the table, up to messages written late, which may land in
+ * a second segment for a span already archived; reads merge overlapping segments.
+ */
+@Component
+public class ChatArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatArchive.class);
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final DateTimeFormatter SEGMENT_TIME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss");
+    // Rows per DELETE once a segment is written
+    private static final int DELETE_CHUNK = 1000;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatSearchIndex searchIndex;
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final long segmentSpanSeconds;
+    private final Duration checkInterval;
+    private final Path directory;
+    private final int maxMessagesPerSegment;
+
+    private final List<ChatArchiveSegment> segments = new CopyOnWriteArrayList<>();
+
+    private final Counter archivedCounter;
+    private final Timer runTimer;
+
+    private Disposable archiveTask;
+
+    public ChatArchive(ChatMessageRepository chatMessageRepository,
+                       ChatSearchIndex searchIndex,
+                       MeterRegistry registry,
+                       @Value("${chat.archive.enabled:true}") boolean enabled,
+                       @Value("${chat.archive.max-age:24h}") Duration maxAge,
+                       @Value("${chat.archive.segment-span:1h}") Duration segmentSpan,
+                       @Value("${chat.archive.check-interval:5m}") Duration checkInterval,
+                       @Value("${chat.archive.directory:${java.io.tmpdir}/reactive-demo/chat-archive}") String directory,
+                       @Value("${chat.archive.max-messages-per-segment:50000}") int maxMessagesPerSegment) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.searchIndex = searchIndex;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.segmentSpanSeconds = Math.max(1, segmentSpan.toSeconds());
+        this.checkInterval = checkInterval;
+        this.directory = Path.of(directory);
+        this.maxMessagesPerSegment = maxMessagesPerSegment;
+
+        this.archivedCounter = Counter.builder("chat.archive.messages")
+                .description("Chat messages moved from chat_messages into archive segments")
+                .register(registry);
+        this.runTimer = Timer.builder("chat.archive.run")
+                .description("Time for one pass of the chat archive job")
+                .register(registry);
+        Gauge.builder("chat.archive.segments", segments, List::size)
+                .description("Archive segment files open for reading")
+                .register(registry);
+        Gauge.builder("chat.archive.bytes", segments,
+                        list -> list.stream().mapToLong(ChatArchiveSegment::sizeBytes).sum())
+                .description("Size of the archive segment files on disk")
+                .register(registry);
+    }
+
+    /**
+     * Reopen the segments left by earlier runs
+     */
+    @PostConstruct
+    void openSegments() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.sorted().toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SEGMENT_SUFFIX + ".tmp")) {
+                    // Left by a job interrupted before its rename; its rows were never deleted
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        segments.add(ChatArchiveSegment.open(file));
+                    } catch (IOException e) {
+                        log.warn("Skipping unreadable chat archive segment {}: {}", file, e.getMessage());
+                    }
+                }
+            }
+        }
+        if (!segments.isEmpty()) {
+            log.info("Opened {} chat archive segments holding {} messages from {}", segments.size(),
+                    segments.stream().mapToInt(ChatArchiveSegment::messageCount).sum(), directory);
+        }
+    }
+
+    /**
+     * Schedule the archive job once the schema is in place and the application is serving
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startArchiving() {
+        if (enabled) {
+            archiveTask = Flux.interval(checkInterval, checkInterval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> archiveOnce()
+                            .onErrorResume(error -> {
+                                log.error("Chat archive job failed: {}", error.getMessage());
+                                return Mono.empty();
+                            }), 1)
+                    .subscribe();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (archiveTask != null) {
+            archiveTask.dispose();
+        }
+    }
+
+    /**
+     * Highest message ID in any segment, so IDs handed out after a restart of the
+     * in-memory database do not collide with archived ones
+     */
+    public long maxArchivedId() {
+        long max = 0;
+        for (ChatArchiveSegment segment : segments) {
+            max = Math.max(max, segment.maxId());
+        }
+        return max;
+    }
+
+    /**
+     * Move every message older than max-age, rounded down to a whole segment-span, into segments
+     * @return Mono of the number of messages archived
+     */
+    public Mono<Integer> archiveOnce() {
+        LocalDateTime cutoff = spanStart(LocalDateTime.now().minus(maxAge));
+        long start = System.nanoTime();
+        return archiveNextSegment(cutoff)
+                .expand(archived -> archived > 0 ? archiveNextSegment(cutoff) : Mono.empty())
+                .reduce(0, Integer::sum)
+                .doOnNext(archived -> {
+                    runTimer.record(Duration.ofNanos(System.nanoTime() - start));
+                    if (archived > 0) {
+                        log.info("Archived {} chat messages older than {}", archived, cutoff);
+                    }
+                });
+    }
+
+    /**
+     * Archive the oldest span still in the table, up to max-messages-per-segment of it
+     * @return Mono of the number of messages archived, 0 once nothing is older than the cutoff
+     */
+    private Mono<Integer> archiveNextSegment(LocalDateTime cutoff) {
+        return chatMessageRepository.findOldestBefore(cutoff, maxMessagesPerSegment)
+                .collectList()
+                .flatMap(rows -> {
+                    if (rows.isEmpty()) {
+                        return Mono.just(0);
+                    }
+                    LocalDateTime spanStart = spanStart(rows.get(0).getCreatedAt());
+                    LocalDateTime spanEnd = spanStart.plusSeconds(segmentSpanSeconds);
+                    // Rows are in createdAt order, so the span ends at the first row past it
+                    int end = 0;
+                    while (end < rows.size() && rows.get(end).getCreatedAt().isBefore(spanEnd)) {
+                        end++;
+                    }
+                    List<ChatMessage> span = rows.subList(0, end);
+                    Path path = directory.resolve("chat-" + SEGMENT_TIME.format(spanStart) + "-"
+                            + span.get(0).getId() + SEGMENT_SUFFIX);
+                    return Mono.fromCallable(() -> ChatArchiveSegment.write(path, span))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .flatMap(segment -> {
+                                // Readable before the rows go, so no message is ever in neither tier
+                                segments.add(segment);
+                                return Flux.fromIterable(span)
+                                        .map(ChatMessage::getId)
+                                        .buffer(DELETE_CHUNK)
+                                        .concatMap(chatMessageRepository::deleteByIdIn)
+                                        .then(Mono.fromSupplier(() -> {
+                                            unindex(span);
+                                            archivedCounter.increment(span.size());
+                                            log.debug("Archived {} chat messages to {} ({} bytes)",
+                                                    span.size(), path.getFileName(), segment.sizeBytes());
+                                            return span.size();
+                                        }));
+                            });
+                });
+    }
+
+    /**
+     * Take archived messages out of the search index, whose hits are read from the table
+     */
+    private void unindex(List<ChatMessage> span) {
+        Map<String, Set<Long>> byRoom = new HashMap<>();
+        for (ChatMessage message : span) {
+            byRoom.computeIfAbsent(message.getRoomId(), room -> new HashSet<>()).add(message.getId());
+        }
+        byRoom.forEach(searchIndex::remove);
+    }
+
+    private LocalDateTime spanStart(LocalDateTime time) {
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(seconds, segmentSpanSeconds) * segmentSpanSeconds,
+                0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Complete a newest-first read of the table from the archive when the table ran out
+     * @param roomId the room ID
+     * @param hot rows read from the table, newest first
+     * @param before the cursor the table read started from, or null
+     * @param limit rows wanted in all
+     * @return Mono of the table rows followed by as many archived messages as fit in limit
+     */
+    public Mono<List<ChatMessage>> fillNewestFirst(String roomId, List<ChatMessage> hot, ChatCursor before, int limit) {
+        if (hot.size() >= limit || segments.isEmpty()) {
+            return Mono.just(hot);
+        }
+        ChatCursor from = hot.isEmpty() ? before : ChatCursor.of(hot.get(hot.size() - 1));
+        return before(roomId, from)
+                .take(limit - hot.size())
+                .collectList()
+                .map(cold -> {
+                    if (cold.isEmpty()) {
+                        return hot;
+                    }
+                    List<ChatMessage> all = new ArrayList<>(hot.size() + cold.size());
+                    all.addAll(hot);
+                    all.addAll(cold);
+                    return all;
+                });
+    }
+
+    /**
+     * A room's archived messages older than a cursor, newest first, read lazily
+     * @param before exclusive upper bound, or null for the whole archive
+     */
+    public Flux<ChatMessage> before(String roomId, ChatCursor before) {
+        return read(ChatArchiveSegment.KEY_ORDER.reversed(),
+                segment -> segment.last(roomId), segment -> segment.first(roomId), before,
+                segment -> segment.before(roomId, before));
+    }
+
+    /**
+     * A room's archived messages newer than a cursor, oldest first, read lazily
+     * @param after exclusive lower bound, or null for the whole archive
+     */
+    public Flux<ChatMessage> after(String roomId, ChatCursor after) {
+        return read(ChatArchiveSegment.KEY_ORDER,
+                segment -> segment.first(roomId), segment -> segment.last(roomId), after,
+                segment -> segment.after(roomId, after));
+    }
+
+    /**
+     * Read the segments holding a room in key order: one after another where their key
+     * ranges for the room are apart, merged where they overlap. A job stopped between
+     * writing a segment and deleting its rows archives those rows twice; the duplicates
+     * meet in the merge and are skipped.
+     * @param order the order to read in
+     * @param start a segment's first key for the room in that order, null if it has none
+     * @param end a segment's last key for the room in that order
+     * @param from exclusive bound to read from, or null
+     * @param blocks a segment's messages past the bound, a block at a time
+     */
+    private Flux<ChatMessage> read(Comparator<ChatCursor> order,
+                                   Function<ChatArchiveSegment, ChatCursor> start,
+                                   Function<ChatArchiveSegment, ChatCursor> end,
+                                   ChatCursor from,
+                                   Function<ChatArchiveSegment, Iterable<List<ChatMessage>>> blocks) {
+        List<ChatArchiveSegment> reached = new ArrayList<>();
+        for (ChatArchiveSegment segment : segments) {
+            if (start.apply(segment) != null && (from == null || order.compare(end.apply(segment), from) > 0)) {
+                reached.add(segment);
+            }
+        }
+        if (reached.isEmpty()) {
+            return Flux.empty();
+        }
+        reached.sort(Comparator.comparing(start, order));
+
+        Comparator<ChatMessage> messageOrder = Comparator.comparing(ChatCursor::of, order);
+        List<Flux<ChatMessage>> groups = new ArrayList<>();
+        List<Flux<ChatMessage>> group = new ArrayList<>();
+        ChatCursor groupEnd = null;
+        for (ChatArchiveSegment segment : reached) {
+            if (groupEnd != null && order.compare(start.apply(segment), groupEnd) > 0) {
+                groups.add(merge(group, messageOrder));
+                group = new ArrayList<>();
+                groupEnd = null;
+            }
+            group.add(Flux.defer(() -> Flux.fromIterable(blocks.apply(segment))).concatMapIterable(block -> block, 1));
+            ChatCursor segmentEnd = end.apply(segment);
+            if (groupEnd == null || order.compare(segmentEnd, groupEnd) > 0) {
+                groupEnd = segmentEnd;
+            }
+        }
+        groups.add(merge(group, messageOrder));
+        return Flux.concat(groups)
+                .distinctUntilChanged(ChatMessage::getId)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Flux<ChatMessage> merge(List<Flux<ChatMessage>> group, Comparator<ChatMessage> order) {
+        return group.size() == 1 ? group.get(0) : Flux.mergeComparing(order, group.toArray(new Flux[0]));
+    }
+}
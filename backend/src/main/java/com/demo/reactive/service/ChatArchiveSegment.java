@@ -0,0 +1,364 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatCursor;
+import com.demo.reactive.model.ChatMessage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * One immutable, compressed file of archived chat messages, read through a memory mapping.
+ * <p>
+ * Messages are grouped by room and ordered by (createdAt, id) within it, then cut into
+ * blocks of up to {@value #BLOCK_MESSAGES} messages, each deflated on its own. The footer
+ * is a sparse index: for every room, the first and last key, offset and size of each
+ * block. Only the footer is held on the heap; a read inflates just the blocks it reaches.
+ * <pre>
+ * header   MAGIC, VERSION
+ * blocks   deflate(id, createdAt, userName, messageText ...)
+ * footer   rooms, then per room its blocks' keys, offsets and sizes
+ * trailer  footer offset, MAGIC
+ * </pre>
+ */
+final class ChatArchiveSegment {
+
+    static final int BLOCK_MESSAGES = 128;
+
+    private static final int MAGIC = 0x43484152; // "CHAR"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int TRAILER_BYTES = 12;
+
+    static final Comparator<ChatCursor> KEY_ORDER =
+            Comparator.comparing(ChatCursor::createdAt).thenComparingLong(ChatCursor::id);
+
+    private static final Comparator<ChatMessage> MESSAGE_ORDER =
+            Comparator.comparing(ChatMessage::getRoomId)
+                    .thenComparing(ChatMessage::getCreatedAt)
+                    .thenComparing(ChatMessage::getId);
+
+    private final Path path;
+    private final MappedByteBuffer data;
+    private final Map<String, List<Block>> rooms;
+    private final int messageCount;
+    private final long maxId;
+
+    private ChatArchiveSegment(Path path, MappedByteBuffer data, Map<String, List<Block>> rooms) {
+        this.path = path;
+        this.data = data;
+        this.rooms = rooms;
+        int count = 0;
+        long max = 0;
+        for (List<Block> blocks : rooms.values()) {
+            for (Block block : blocks) {
+                count += block.count();
+                max = Math.max(max, block.maxId());
+            }
+        }
+        this.messageCount = count;
+        this.maxId = max;
+    }
+
+    /**
+     * Write messages to a new segment. The file is built under a temporary name, synced,
+     * and only then renamed into place, so a segment that exists is always complete.
+     * @param path the segment file to create
+     * @param messages the messages, in any order
+     * @return the segment, opened for reading
+     */
+    static ChatArchiveSegment write(Path path, List<ChatMessage> messages) throws IOException {
+        List<ChatMessage> sorted = new ArrayList<>(messages);
+        sorted.sort(MESSAGE_ORDER);
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream stream = Channels.newOutputStream(channel);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long offset = HEADER_BYTES;
+
+            Map<String, List<Block>> rooms = new HashMap<>();
+            Deflater deflater = new Deflater();
+            try {
+                int start = 0;
+                while (start < sorted.size()) {
+                    String roomId = sorted.get(start).getRoomId();
+                    int end = start;
+                    while (end < sorted.size() && end - start < BLOCK_MESSAGES
+                            && sorted.get(end).getRoomId().equals(roomId)) {
+                        end++;
+                    }
+                    List<ChatMessage> blockMessages = sorted.subList(start, end);
+                    byte[] raw = encode(blockMessages);
+                    byte[] compressed = deflate(deflater, raw);
+                    out.write(compressed);
+                    rooms.computeIfAbsent(roomId, id -> new ArrayList<>()).add(new Block(
+                            ChatCursor.of(blockMessages.get(0)),
+                            ChatCursor.of(blockMessages.get(blockMessages.size() - 1)),
+                            maxId(blockMessages), offset, compressed.length, raw.length, blockMessages.size()));
+                    offset += compressed.length;
+                    start = end;
+                }
+            } finally {
+                deflater.end();
+            }
+
+            out.writeInt(rooms.size());
+            for (Map.Entry<String, List<Block>> room : rooms.entrySet()) {
+                out.writeUTF(room.getKey());
+                out.writeInt(room.getValue().size());
+                for (Block block : room.getValue()) {
+                    writeKey(out, block.first());
+                    writeKey(out, block.last());
+                    out.writeLong(block.maxId());
+                    out.writeLong(block.offset());
+                    out.writeInt(block.length());
+                    out.writeInt(block.rawLength());
+                    out.writeInt(block.count());
+                }
+            }
+            out.writeLong(offset);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    /**
+     * Map an existing segment and load its footer
+     * @throws IOException if the file cannot be read or is not a complete segment
+     */
+    static ChatArchiveSegment open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int size = data.capacity();
+        if (size < HEADER_BYTES + TRAILER_BYTES || data.getInt(0) != MAGIC || data.getInt(size - 4) != MAGIC) {
+            throw new IOException("Not a chat archive segment: " + path);
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException("Unsupported chat archive segment version " + data.getInt(4) + ": " + path);
+        }
+        long footerOffset = data.getLong(size - TRAILER_BYTES);
+        if (footerOffset < HEADER_BYTES || footerOffset > size - TRAILER_BYTES) {
+            throw new IOException("Corrupt chat archive segment footer: " + path);
+        }
+        byte[] footer = new byte[(int) (size - TRAILER_BYTES - footerOffset)];
+        data.get((int) footerOffset, footer);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer));
+        int roomCount = in.readInt();
+        Map<String, List<Block>> rooms = new HashMap<>(roomCount * 2);
+        for (int r = 0; r < roomCount; r++) {
+            String roomId = in.readUTF();
+            int blockCount = in.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int b = 0; b < blockCount; b++) {
+                blocks.add(new Block(readKey(in), readKey(in), in.readLong(), in.readLong(),
+                        in.readInt(), in.readInt(), in.readInt()));
+            }
+            rooms.put(roomId, List.copyOf(blocks));
+        }
+        return new ChatArchiveSegment(path, data, rooms);
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long sizeBytes() {
+        return data.capacity();
+    }
+
+    int messageCount() {
+        return messageCount;
+    }
+
+    long maxId() {
+        return maxId;
+    }
+
+    /**
+     * @return the oldest key archived for the room here, or null if the segment has none
+     */
+    ChatCursor first(String roomId) {
+        List<Block> blocks = rooms.get(roomId);
+        return blocks != null ? blocks.get(0).first() : null;
+    }
+
+    /**
+     * @return the newest key archived for the room here, or null if the segment has none
+     */
+    ChatCursor last(String roomId) {
+        List<Block> blocks = rooms.get(roomId);
+        return blocks != null ? blocks.get(blocks.size() - 1).last() : null;
+    }
+
+    /**
+     * The room's messages older than a cursor, newest first, inflating a block at a time
+     * @param before exclusive upper bound, or null for all of them
+     */
+    Iterable<List<ChatMessage>> before(String roomId, ChatCursor before) {
+        List<Block> blocks = rooms.getOrDefault(roomId, List.of());
+        int end = blocks.size();
+        while (before != null && end > 0 && KEY_ORDER.compare(blocks.get(end - 1).first(), before) >= 0) {
+            end--;
+        }
+        List<Block> reached = new ArrayList<>(blocks.subList(0, end));
+        Collections.reverse(reached);
+        return () -> reached.stream().map(block -> {
+            List<ChatMessage> messages = decode(roomId, block);
+            if (before != null) {
+                messages.removeIf(message -> KEY_ORDER.compare(ChatCursor.of(message), before) >= 0);
+            }
+            Collections.reverse(messages);
+            return messages;
+        }).iterator();
+    }
+
+    /**
+     * The room's messages newer than a cursor, oldest first, inflating a block at a time
+     * @param after exclusive lower bound, or null for all of them
+     */
+    Iterable<List<ChatMessage>> after(String roomId, ChatCursor after) {
+        List<Block> blocks = rooms.getOrDefault(roomId, List.of());
+        int start = 0;
+        while (after != null && start < blocks.size() && KEY_ORDER.compare(blocks.get(start).last(), after) <= 0) {
+            start++;
+        }
+        List<Block> reached = blocks.subList(start, blocks.size());
+        return () -> reached.stream().map(block -> {
+            List<ChatMessage> messages = decode(roomId, block);
+            if (after != null) {
+                messages.removeIf(message -> KEY_ORDER.compare(ChatCursor.of(message), after) <= 0);
+            }
+            return messages;
+        }).iterator();
+    }
+
+    private List<ChatMessage> decode(String roomId, Block block) {
+        byte[] raw = new byte[block.rawLength()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.slice((int) block.offset(), block.length()));
+            int inflated = inflater.inflate(raw);
+            if (inflated != raw.length || !inflater.finished()) {
+                throw new IllegalStateException("Truncated block at offset " + block.offset() + " in " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt block at offset " + block.offset() + " in " + path, e);
+        } finally {
+            inflater.end();
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(raw);
+        List<ChatMessage> messages = new ArrayList<>(block.count());
+        for (int i = 0; i < block.count(); i++) {
+            long id = in.getLong();
+            LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+            String userName = readString(in);
+            String text = readString(in);
+            messages.add(new ChatMessage(id, roomId, userName, text, createdAt));
+        }
+        return messages;
+    }
+
+    private static byte[] encode(List<ChatMessage> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(messages.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (ChatMessage message : messages) {
+            out.writeLong(message.getId());
+            out.writeLong(message.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(message.getCreatedAt().getNano());
+            writeString(out, message.getUserName());
+            writeString(out, message.getMessageText());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    private static long maxId(List<ChatMessage> messages) {
+        long max = 0;
+        for (ChatMessage message : messages) {
+            max = Math.max(max, message.getId());
+        }
+        return max;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeKey(DataOutputStream out, ChatCursor key) throws IOException {
+        out.writeLong(key.createdAt().toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(key.createdAt().getNano());
+        out.writeLong(key.id());
+    }
+
+    private static ChatCursor readKey(DataInputStream in) throws IOException {
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        return new ChatCursor(createdAt, in.readLong());
+    }
+
+    /**
+     * Sparse index entry for one compressed block of a room's messages
+     * @param first key of the block's oldest message
+     * @param last key of the block's newest message
+     * @param maxId highest message ID in the block
+     * @param offset where the compressed block starts in the file
+     * @param length compressed size
+     * @param rawLength size once inflated
+     * @param count messages in the block
+     */
+    private record Block(ChatCursor first, ChatCursor last, long maxId, long offset,
+                         int length, int rawLength, int count) {}
+}
@@ -0,0 +1,17 @@
+package com.demo.reactive.service;
+
+/**
+ * Fan-out of chat and presence events to the clients subscribed to a destination
+ * such as {@code /topic/chat/{roomId}} or {@code /topic/presence/{roomId}}.
+ * Implemented by the STOMP broker and by the native reactive WebSocket transport;
+ * {@code chat.transport} selects which one is active.
+ */
+public interface ChatBroadcaster {
+
+    /**
+     * Send a payload to every subscriber of the destination
+     * @param destination the topic, e.g. /topic/chat/general
+     * @param payload the object to serialize as the message body
+     */
+    void broadcast(String destination, Object payload);
+}
@@ -0,0 +1,578 @@
+package com.demo.reactive.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyInbound;
+import reactor.netty.NettyOutbound;
+import reactor.netty.tcp.TcpClient;
+import reactor.netty.tcp.TcpServer;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Direct connections between backend instances, so rooms are not split when more than
+ * one runs behind the load balancer. Every node listens on {@code chat.cluster.port} and
+ * keeps one outgoing TCP connection to each other member; a node writes only on its own
+ * outgoing connections and reads only on the ones it accepted, so each direction of a
+ * pair has exactly one channel and frames arrive in the order they were sent.
+ * <p>
+ * Frames are newline-delimited JSON. A node tells each peer which rooms it has local
+ * subscribers for and which users it has in which room; a chat message is serialized
+ * once and forwarded only to peers subscribed to its room, which hand it to their local
+ * transport. Presence is not forwarded as broadcasts: each node merges its peers' users
+ * into its own and sends its clients deltas of the merged view. When a connection drops,
+ * the receiving side forgets everything that peer told it, and the sender repeats its
+ * full state once it reconnects.
+ */
+@Component
+public class ChatCluster {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatCluster.class);
+
+    private static final String CHAT_TOPIC_PREFIX = "/topic/chat/";
+
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<ChatBroadcaster> chatBroadcaster;
+    private final boolean enabled;
+    private final String nodeId;
+    private final String host;
+    private final int port;
+    private final List<String> members;
+    private final Duration reconnectInterval;
+    private final int peerBuffer;
+    private final int maxFrameLength;
+
+    // Outgoing side: one per other member, keyed by node ID
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    // Incoming side: what each connected member has told this node, keyed by node ID
+    private final Map<String, Remote> remotes = new ConcurrentHashMap<>();
+
+    // Local subscriptions per room; compute() on a room orders its subscribe/unsubscribe frames
+    private final Map<String, Integer> localRooms = new ConcurrentHashMap<>();
+    // Remote users per room, counting the connections that listed each
+    private final Map<String, Map<String, Integer>> remoteUsers = new ConcurrentHashMap<>();
+
+    private volatile PresenceMembers presence;
+
+    private final Counter forwardedCounter;
+    private final Counter receivedCounter;
+    private final Counter droppedCounter;
+
+    private DisposableServer server;
+    private final Disposable.Composite connections = Disposables.composite();
+
+    public ChatCluster(ObjectMapper objectMapper,
+                       ObjectProvider<ChatBroadcaster> chatBroadcaster,
+                       MeterRegistry registry,
+                       @Value("${chat.cluster.enabled:false}") boolean enabled,
+                       @Value("${chat.cluster.host:localhost}") String host,
+                       @Value("${chat.cluster.port:9090}") int port,
+                       @Value("${chat.cluster.node-id:}") String nodeId,
+                       @Value("${chat.cluster.members:}") List<String> members,
+                       @Value("${chat.cluster.reconnect-interval:1s}") Duration reconnectInterval,
+                       @Value("${chat.cluster.peer-buffer:10000}") int peerBuffer,
+                       @Value("${chat.cluster.max-frame-size:1MB}") DataSize maxFrameSize) {
+        this.objectMapper = objectMapper;
+        this.chatBroadcaster = chatBroadcaster;
+        this.enabled = enabled;
+        this.host = host;
+        this.port = port;
+        this.nodeId = nodeId.isBlank() ? host + ":" + port : nodeId;
+        this.members = members.stream().map(String::trim).filter(member -> !member.isEmpty()).toList();
+        this.reconnectInterval = reconnectInterval;
+        this.peerBuffer = peerBuffer;
+        this.maxFrameLength = (int) Math.min(Integer.MAX_VALUE, maxFrameSize.toBytes());
+
+        this.forwardedCounter = Counter.builder("chat.cluster.frames")
+                .description("Chat messages exchanged with other nodes")
+                .tag("direction", "sent")
+                .register(registry);
+        this.receivedCounter = Counter.builder("chat.cluster.frames")
+                .description("Chat messages exchanged with other nodes")
+                .tag("direction", "received")
+                .register(registry);
+        this.droppedCounter = Counter.builder("chat.cluster.dropped")
+                .description("Frames dropped because a peer was not connected or its buffer was full")
+                .register(registry);
+        Gauge.builder("chat.cluster.peers.connected", peers,
+                        map -> map.values().stream().filter(Peer::connected).count())
+                .description("Other nodes this node has an outgoing connection to")
+                .register(registry);
+    }
+
+    /**
+     * Listen for the other members and start connecting to them
+     */
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        server = TcpServer.create()
+                .host(host)
+                .port(port)
+                .doOnConnection(connection -> connection.addHandlerLast(new LineBasedFrameDecoder(maxFrameLength)))
+                .handle(this::accept)
+                .bindNow();
+
+        for (String member : members) {
+            if (member.equals(nodeId)) {
+                continue;
+            }
+            int colon = member.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Cluster member " + member + " is not host:port");
+            }
+            Peer peer = new Peer(member);
+            peers.put(member, peer);
+            connections.add(connect(peer, member.substring(0, colon), Integer.parseInt(member.substring(colon + 1)))
+                    .subscribe());
+        }
+        log.info("Chat cluster node {} listening on {}:{}, peers {}", nodeId, host, server.port(), peers.keySet());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (!enabled) {
+            return;
+        }
+        connections.dispose();
+        server.disposeNow();
+    }
+
+    /**
+     * @return whether this node takes part in a cluster
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Let the presence service feed this node's users to peers and hear about theirs.
+     * Registered once, by {@link PresenceService}.
+     */
+    public void attach(PresenceMembers presence) {
+        this.presence = presence;
+    }
+
+    /**
+     * Forward a chat message to the peers with subscribers in its room
+     * @param roomId the room the message was broadcast to locally
+     * @param payload the message, serialized once for every peer
+     */
+    public void publish(String roomId, Object payload) {
+        if (!enabled) {
+            return;
+        }
+        String line = null;
+        for (Peer peer : peers.values()) {
+            Remote remote = remotes.get(peer.nodeId);
+            if (remote == null || !remote.rooms.contains(roomId)) {
+                continue;
+            }
+            if (line == null) {
+                line = encode(ClusterFrame.message(roomId, payload));
+                if (line == null) {
+                    return;
+                }
+            }
+            if (peer.send(line)) {
+                forwardedCounter.increment();
+            }
+        }
+    }
+
+    /**
+     * Note that a local client subscribed to a destination; only chat topics are tracked
+     */
+    public void subscribed(String destination) {
+        if (!enabled || !destination.startsWith(CHAT_TOPIC_PREFIX)) {
+            return;
+        }
+        String roomId = destination.substring(CHAT_TOPIC_PREFIX.length());
+        localRooms.compute(roomId, (id, count) -> {
+            if (count == null) {
+                sendAll(encode(ClusterFrame.room(ClusterFrame.SUBSCRIBE, roomId)));
+                return 1;
+            }
+            return count + 1;
+        });
+    }
+
+    /**
+     * Note that a local subscription to a destination ended
+     */
+    public void unsubscribed(String destination) {
+        if (!enabled || !destination.startsWith(CHAT_TOPIC_PREFIX)) {
+            return;
+        }
+        String roomId = destination.substring(CHAT_TOPIC_PREFIX.length());
+        localRooms.computeIfPresent(roomId, (id, count) -> {
+            if (count > 1) {
+                return count - 1;
+            }
+            sendAll(encode(ClusterFrame.room(ClusterFrame.UNSUBSCRIBE, roomId)));
+            return null;
+        });
+    }
+
+    /**
+     * Tell peers whether a user has any session left in a room on this node. Called by the
+     * presence service while it holds the room, so changes to one room go out in order.
+     */
+    public void localPresence(String roomId, String userName, boolean present) {
+        if (!enabled) {
+            return;
+        }
+        sendAll(encode(ClusterFrame.user(present ? ClusterFrame.JOIN : ClusterFrame.LEAVE, roomId, userName)));
+    }
+
+    /**
+     * Users other nodes have in a room
+     * @return read-only live view of the distinct user names
+     */
+    public Set<String> remoteUsers(String roomId) {
+        Map<String, Integer> users = remoteUsers.get(roomId);
+        return users != null ? Collections.unmodifiableSet(users.keySet()) : Set.of();
+    }
+
+    /**
+     * Keep connecting to a peer, and once connected stream its frames until the connection drops
+     */
+    private Mono<Void> connect(Peer peer, String peerHost, int peerPort) {
+        return TcpClient.create()
+                .host(peerHost)
+                .port(peerPort)
+                .connect()
+                .flatMap(connection -> {
+                    Sinks.Many<String> outbound = peer.open();
+                    log.info("Chat cluster connected to {}", peer.nodeId);
+                    Mono<Void> sent = connection.outbound()
+                            .sendString(outbound.asFlux().map(line -> line + "\n"), StandardCharsets.UTF_8)
+                            .then();
+                    return sent.or(connection.onDispose())
+                            .doFinally(signal -> {
+                                peer.close(outbound);
+                                connection.dispose();
+                                log.info("Chat cluster lost connection to {}", peer.nodeId);
+                            });
+                })
+                .retryWhen(Retry.fixedDelay(Long.MAX_VALUE, reconnectInterval)
+                        .doBeforeRetry(retry -> log.debug("Cannot reach cluster peer {}: {}",
+                                peer.nodeId, retry.failure().getMessage())))
+                .repeatWhen(completed -> completed.delayElements(reconnectInterval));
+    }
+
+    /**
+     * Read one peer's frames; the first must say which node it is
+     */
+    private Mono<Void> accept(NettyInbound inbound, NettyOutbound outbound) {
+        Remote remote = new Remote();
+        return inbound.receive()
+                .asString(StandardCharsets.UTF_8)
+                .doOnNext(line -> receive(remote, line))
+                .doFinally(signal -> forget(remote))
+                .then();
+    }
+
+    private void receive(Remote remote, String line) {
+        ClusterFrame frame;
+        try {
+            frame = objectMapper.readValue(line, ClusterFrame.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Ignoring malformed cluster frame: {}", e.getOriginalMessage());
+            return;
+        }
+        if (remote.nodeId == null) {
+            if (!ClusterFrame.HELLO.equals(frame.type()) || frame.node() == null) {
+                throw new IllegalStateException("Cluster connection did not start with hello");
+            }
+            remote.nodeId = frame.node();
+            remotes.put(remote.nodeId, remote);
+            if (!peers.containsKey(remote.nodeId)) {
+                log.warn("Node {} connected but is not in chat.cluster.members; it will not receive messages",
+                        remote.nodeId);
+            }
+            return;
+        }
+        if (frame.type() == null || frame.room() == null) {
+            log.debug("Ignoring cluster frame without a type or room from {}", remote.nodeId);
+            return;
+        }
+        switch (frame.type()) {
+            case ClusterFrame.MESSAGE -> {
+                receivedCounter.increment();
+                chatBroadcaster.getObject().broadcast(CHAT_TOPIC_PREFIX + frame.room(), frame.payload());
+            }
+            case ClusterFrame.SUBSCRIBE -> remote.rooms.add(frame.room());
+            case ClusterFrame.UNSUBSCRIBE -> remote.rooms.remove(frame.room());
+            case ClusterFrame.JOIN -> remoteJoined(remote, frame.room(),
+                    frame.user() != null ? Set.of(frame.user()) : Set.of());
+            case ClusterFrame.LEAVE -> remoteLeft(remote, frame.room(),
+                    frame.user() != null ? Set.of(frame.user()) : Set.of());
+            case ClusterFrame.PRESENCE -> {
+                Set<String> previous = remote.users.getOrDefault(frame.room(), Set.of());
+                Set<String> current = frame.users() != null ? frame.users() : Set.of();
+                Set<String> left = new HashSet<>(previous);
+                left.removeAll(current);
+                remoteLeft(remote, frame.room(), left);
+                remoteJoined(remote, frame.room(), current);
+            }
+            default -> log.debug("Ignoring cluster frame of type {}", frame.type());
+        }
+    }
+
+    /**
+     * A peer's connection closed: drop its interest and its users
+     */
+    private void forget(Remote remote) {
+        if (remote.nodeId == null) {
+            return;
+        }
+        remotes.remove(remote.nodeId, remote);
+        remote.rooms.clear();
+        for (Map.Entry<String, Set<String>> room : new ArrayList<>(remote.users.entrySet())) {
+            remoteLeft(remote, room.getKey(), Set.copyOf(room.getValue()));
+        }
+        log.info("Chat cluster node {} disconnected", remote.nodeId);
+    }
+
+    private void remoteJoined(Remote remote, String roomId, Set<String> userNames) {
+        Set<String> known = remote.users.computeIfAbsent(roomId, id -> new HashSet<>());
+        List<String> changed = new ArrayList<>();
+        for (String userName : userNames) {
+            if (!known.add(userName)) {
+                continue;
+            }
+            remoteUsers.compute(roomId, (id, users) -> {
+                Map<String, Integer> counts = users != null ? users : new ConcurrentHashMap<>();
+                if (counts.merge(userName, 1, Integer::sum) == 1) {
+                    changed.add(userName);
+                }
+                return counts;
+            });
+        }
+        notifyPresence(roomId, changed);
+    }
+
+    private void remoteLeft(Remote remote, String roomId, Set<String> userNames) {
+        Set<String> known = remote.users.get(roomId);
+        if (known == null) {
+            return;
+        }
+        List<String> changed = new ArrayList<>();
+        for (String userName : userNames) {
+            if (!known.remove(userName)) {
+                continue;
+            }
+            remoteUsers.computeIfPresent(roomId, (id, counts) -> {
+                if (counts.computeIfPresent(userName, (name, count) -> count > 1 ? count - 1 : null) == null) {
+                    changed.add(userName);
+                }
+                return counts.isEmpty() ? null : counts;
+            });
+        }
+        if (known.isEmpty()) {
+            remote.users.remove(roomId);
+        }
+        notifyPresence(roomId, changed);
+    }
+
+    private void notifyPresence(String roomId, List<String> changed) {
+        PresenceMembers members = presence;
+        if (members != null) {
+            changed.forEach(userName -> members.remoteChanged(roomId, userName));
+        }
+    }
+
+    private void sendAll(String line) {
+        if (line == null) {
+            return;
+        }
+        for (Peer peer : peers.values()) {
+            peer.send(line);
+        }
+    }
+
+    private String encode(ClusterFrame frame) {
+        try {
+            return objectMapper.writeValueAsString(frame);
+        } catch (JsonProcessingException e) {
+            log.error("Could not serialize cluster frame {}: {}", frame.type(), e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The presence service as seen from the cluster
+     */
+    public interface PresenceMembers {
+
+        /**
+         * Pass each room's local users to the consumer, holding the room as
+         * {@link #localPresence} callers do, so no change slips between the two
+         */
+        void forEachRoom(BiConsumer<String, Set<String>> consumer);
+
+        /**
+         * Whether a user is in a room on some other node changed
+         */
+        void remoteChanged(String roomId, String userName);
+    }
+
+    /**
+     * Outgoing connection to one other member. Frames sent while it is down are dropped;
+     * the member learns the current state when the connection is next opened.
+     */
+    private final class Peer {
+        private final String nodeId;
+        private volatile Sinks.Many<String> outbound;
+
+        private Peer(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        private boolean connected() {
+            return outbound != null;
+        }
+
+        /**
+         * Start a new connection: say who this node is, then repeat every subscription and user
+         */
+        private Sinks.Many<String> open() {
+            Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer(Queues.<String>get(peerBuffer).get());
+            emit(sink, encode(ClusterFrame.hello(ChatCluster.this.nodeId)));
+            // Installed before the state is read, so a change made meanwhile is sent after it, not lost
+            outbound = sink;
+            for (String roomId : localRooms.keySet()) {
+                localRooms.computeIfPresent(roomId, (id, count) -> {
+                    emit(sink, encode(ClusterFrame.room(ClusterFrame.SUBSCRIBE, roomId)));
+                    return count;
+                });
+            }
+            PresenceMembers members = presence;
+            if (members != null) {
+                members.forEachRoom((roomId, users) ->
+                        emit(sink, encode(ClusterFrame.users(roomId, Set.copyOf(users)))));
+            }
+            return sink;
+        }
+
+        private void close(Sinks.Many<String> sink) {
+            synchronized (this) {
+                if (outbound == sink) {
+                    outbound = null;
+                }
+            }
+            sink.tryEmitComplete();
+        }
+
+        /**
+         * @return false if the frame was dropped
+         */
+        private boolean send(String line) {
+            Sinks.Many<String> sink = outbound;
+            if (sink == null) {
+                droppedCounter.increment();
+                return false;
+            }
+            return emit(sink, line);
+        }
+
+        // Serialized so frames from different threads reach the connection whole and in order
+        private synchronized boolean emit(Sinks.Many<String> sink, String line) {
+            if (line == null) {
+                return false;
+            }
+            Sinks.EmitResult result = sink.tryEmitNext(line);
+            if (result.isFailure()) {
+                droppedCounter.increment();
+                if (result == Sinks.EmitResult.FAIL_OVERFLOW) {
+                    log.warn("Chat cluster buffer for {} is full; dropping frames", nodeId);
+                }
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * What one connected member has said about itself. Mutated only on its connection's thread.
+     */
+    private static final class Remote {
+        private String nodeId;
+        private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+        private final Map<String, Set<String>> users = new HashMap<>();
+    }
+
+    /**
+     * One line on a cluster connection
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ClusterFrame(
+            String type,
+            String node,
+            String room,
+            String user,
+            Set<String> users,
+            Object payload
+    ) {
+        public static final String HELLO = "hello";
+        public static final String SUBSCRIBE = "subscribe";
+        public static final String UNSUBSCRIBE = "unsubscribe";
+        public static final String JOIN = "join";
+        public static final String LEAVE = "leave";
+        public static final String PRESENCE = "presence";
+        public static final String MESSAGE = "message";
+
+        static ClusterFrame hello(String node) {
+            return new ClusterFrame(HELLO, node, null, null, null, null);
+        }
+
+        static ClusterFrame room(String type, String room) {
+            return new ClusterFrame(type, null, room, null, null, null);
+        }
+
+        static ClusterFrame user(String type, String room, String user) {
+            return new ClusterFrame(type, null, room, user, null, null);
+        }
+
+        static ClusterFrame users(String room, Set<String> users) {
+            return new ClusterFrame(PRESENCE, null, room, null, users, null);
+        }
+
+        static ClusterFrame message(String room, Object payload) {
+            return new ClusterFrame(MESSAGE, null, room, null, null, payload);
+        }
+    }
+}
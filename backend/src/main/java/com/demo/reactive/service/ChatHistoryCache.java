@@ -0,0 +1,250 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-room ring buffer of the most recent chat messages, kept in chronological order.
+ * Rooms are filled on write and warmed lazily from the repository, and the archive when
+ * the table holds too few, on first read;
+ * least recently used rooms are evicted once the room count or byte budget is exceeded.
+ */
+@Component
+public class ChatHistoryCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatHistoryCache.class);
+
+    // Rough per-message overhead: object headers, LocalDateTime, Long and String wrappers
+    private static final int MESSAGE_OVERHEAD_BYTES = 160;
+
+    private static final Comparator<ChatMessage> CHRONOLOGICAL =
+            Comparator.comparing(ChatMessage::getCreatedAt).thenComparing(ChatMessage::getId);
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatArchive archive;
+    private final int messagesPerRoom;
+    private final int maxRooms;
+    private final long maxBytes;
+
+    private final Map<String, RoomHistory> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public ChatHistoryCache(ChatMessageRepository chatMessageRepository,
+                            ChatArchive archive,
+                            MeterRegistry registry,
+                            @Value("${chat.history.cache.messages-per-room:200}") int messagesPerRoom,
+                            @Value("${chat.history.cache.max-rooms:1000}") int maxRooms,
+                            @Value("${chat.history.cache.max-size:64MB}") DataSize maxSize) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.archive = archive;
+        this.messagesPerRoom = messagesPerRoom;
+        this.maxRooms = maxRooms;
+        this.maxBytes = maxSize.toBytes();
+
+        this.hits = Counter.builder("chat.history.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("chat.history.cache.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("chat.history.cache.evictions").register(registry);
+        Gauge.builder("chat.history.cache.rooms", rooms, Map::size).register(registry);
+        Gauge.builder("chat.history.cache.bytes", totalBytes, AtomicLong::get).register(registry);
+    }
+
+    /**
+     * Number of messages each room keeps; larger history requests bypass the cache
+     */
+    public int capacity() {
+        return messagesPerRoom;
+    }
+
+    /**
+     * Record a newly saved message
+     * @param message the message with its assigned ID
+     */
+    public void append(ChatMessage message) {
+        RoomHistory room = rooms.computeIfAbsent(message.getRoomId(), RoomHistory::new);
+        long delta = room.append(message);
+        if (rooms.get(room.roomId) == room) {
+            totalBytes.addAndGet(delta);
+            enforceBounds(room);
+        }
+    }
+
+    /**
+     * Get the most recent messages for a room in chronological order
+     * @param roomId the room ID
+     * @param limit maximum number of messages, at most {@link #capacity()}
+     * @return Mono of the messages, oldest first
+     */
+    public Mono<List<ChatMessage>> recent(String roomId, int limit) {
+        RoomHistory room = rooms.computeIfAbsent(roomId, RoomHistory::new);
+        room.touch();
+        if (room.isWarm()) {
+            hits.increment();
+            return Mono.just(room.snapshot(limit));
+        }
+        misses.increment();
+        return room.warmup().map(warm -> warm.snapshot(limit));
+    }
+
+    private void enforceBounds(RoomHistory keep) {
+        while (rooms.size() > maxRooms || totalBytes.get() > maxBytes) {
+            RoomHistory victim = null;
+            for (RoomHistory candidate : rooms.values()) {
+                if (candidate != keep && (victim == null || candidate.lastAccess < victim.lastAccess)) {
+                    victim = candidate;
+                }
+            }
+            if (victim == null || !rooms.remove(victim.roomId, victim)) {
+                return;
+            }
+            totalBytes.addAndGet(-victim.bytes());
+            evictions.increment();
+            log.debug("Evicted chat history for room {}", victim.roomId);
+        }
+    }
+
+    private static int estimateBytes(ChatMessage message) {
+        return MESSAGE_OVERHEAD_BYTES + 2 * (length(message.getRoomId())
+                + length(message.getUserName()) + length(message.getMessageText()));
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    private final class RoomHistory {
+        private final String roomId;
+        private final ChatMessage[] ring = new ChatMessage[messagesPerRoom];
+        private int head;   // index of the oldest message
+        private int size;
+        private long bytes;
+        private boolean warm;
+        private Mono<RoomHistory> warmup;
+        private volatile long lastAccess = System.nanoTime();
+
+        private RoomHistory(String roomId) {
+            this.roomId = roomId;
+        }
+
+        private void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        private synchronized boolean isWarm() {
+            return warm;
+        }
+
+        private synchronized long bytes() {
+            return bytes;
+        }
+
+        /**
+         * Append at the tail, overwriting the oldest entry when full
+         * @return change in retained bytes
+         */
+        private synchronized long append(ChatMessage message) {
+            long before = bytes;
+            int tail = (head + size) % ring.length;
+            if (size == ring.length) {
+                bytes -= estimateBytes(ring[head]);
+                head = (head + 1) % ring.length;
+            } else {
+                size++;
+            }
+            ring[tail] = message;
+            bytes += estimateBytes(message);
+            touch();
+            return bytes - before;
+        }
+
+        private synchronized List<ChatMessage> snapshot(int limit) {
+            int count = Math.min(limit, size);
+            List<ChatMessage> result = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) {
+                result.add(ring[(head + i) % ring.length]);
+            }
+            return result;
+        }
+
+        /**
+         * Load the room from the repository once; concurrent callers share the same query
+         */
+        private synchronized Mono<RoomHistory> warmup() {
+            if (warmup == null) {
+                warmup = chatMessageRepository.findRecentMessagesByRoomId(roomId, ring.length)
+                        .collectList()
+                        .flatMap(hot -> archive.fillNewestFirst(roomId, hot, null, ring.length))
+                        .map(this::merge)
+                        .doOnError(error -> resetWarmup())
+                        .cache();
+            }
+            return warmup;
+        }
+
+        private synchronized void resetWarmup() {
+            warmup = null;
+        }
+
+        /**
+         * Merge repository rows (newest first) with messages appended while the query ran
+         */
+        private RoomHistory merge(List<ChatMessage> newestFirst) {
+            long delta;
+            int count;
+            synchronized (this) {
+                List<ChatMessage> appended = snapshot(size);
+                Set<Long> loadedIds = new HashSet<>(newestFirst.size() * 2);
+                newestFirst.forEach(message -> loadedIds.add(message.getId()));
+
+                long before = bytes;
+                head = 0;
+                size = 0;
+                bytes = 0;
+
+                // Both inputs are already ordered, so a single merge pass keeps the ring chronological
+                int loaded = newestFirst.size() - 1;
+                int pending = 0;
+                while (loaded >= 0 || pending < appended.size()) {
+                    if (pending < appended.size() && loadedIds.contains(appended.get(pending).getId())) {
+                        pending++;
+                    } else if (pending >= appended.size() || (loaded >= 0
+                            && CHRONOLOGICAL.compare(newestFirst.get(loaded), appended.get(pending)) <= 0)) {
+                        append(newestFirst.get(loaded--));
+                    } else {
+                        append(appended.get(pending++));
+                    }
+                }
+                warm = true;
+                delta = bytes - before;
+                count = size;
+            }
+            if (rooms.get(roomId) == this) {
+                totalBytes.addAndGet(delta);
+                enforceBounds(this);
+            }
+            log.debug("Warmed chat history for room {} with {} messages", roomId, count);
+            return this;
+        }
+    }
+}
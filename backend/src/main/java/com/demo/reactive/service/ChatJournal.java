@@ -0,0 +1,468 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatMessage;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal in front of the chat_messages table. Each accepted message is
+ * appended to a memory-mapped journal file under the next sequence number, and the
+ * append completes once a group commit has synced it, so the message may be broadcast
+ * before its row exists. Rows are still written by the write-behind pipeline; as batches
+ * land, the checkpoint (every sequence up to it is in the table) moves forward and
+ * journal files wholly behind it are deleted. Entries past the checkpoint at startup were
+ * accepted but never written, and are handed back through {@link #recovered()} to replay.
+ * <p>
+ * A single commit thread syncs everything appended since its last sync in one go, so
+ * under load many appends share each sync.
+ */
+@Component
+public class ChatJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatJournal.class);
+
+    private static final String FILE_PREFIX = "journal-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final Duration CHECKPOINT_INTERVAL = Duration.ofSeconds(1);
+
+    // Payload length, CRC32C of sequence and payload, sequence; a zero length ends a file
+    private static final int RECORD_HEADER_BYTES = 16;
+
+    private final boolean enabled;
+    private final Path directory;
+    private final int fileSize;
+    private final boolean sync;
+
+    // Guards the active file, nextSequence and the dirty files
+    private final Object appendLock = new Object();
+    private final List<JournalFile> files = new ArrayList<>();
+    private final List<JournalFile> dirtyFiles = new ArrayList<>();
+    private JournalFile active;
+    private long nextSequence = 1;
+
+    // Sequences appended (or recovered) whose rows are not written yet
+    private final ConcurrentSkipListSet<Long> unwritten = new ConcurrentSkipListSet<>();
+    private long checkpoint;
+
+    // Appends waiting for the commit thread, in sequence order
+    private final BlockingQueue<Waiter> waiters = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread committer;
+    private Disposable checkpointTask;
+
+    private List<Entry> recovered = List.of();
+    private long maxRecoveredId;
+
+    private final Timer commitTimer;
+    private final DistributionSummary commitSizeSummary;
+
+    public ChatJournal(MeterRegistry registry,
+                       @Value("${chat.persistence.journal.enabled:true}") boolean enabled,
+                       @Value("${chat.persistence.journal.directory:${java.io.tmpdir}/reactive-demo/chat-journal}") String directory,
+                       @Value("${chat.persistence.journal.file-size:64MB}") DataSize fileSize,
+                       @Value("${chat.persistence.journal.sync:true}") boolean sync) {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.fileSize = (int) Math.min(Integer.MAX_VALUE, fileSize.toBytes());
+        this.sync = sync;
+
+        this.commitTimer = Timer.builder("chat.journal.commit")
+                .description("Time to sync one group commit of the chat journal")
+                .register(registry);
+        this.commitSizeSummary = DistributionSummary.builder("chat.journal.commit.size")
+                .description("Appends completed by one group commit")
+                .register(registry);
+        Gauge.builder("chat.journal.unwritten", unwritten, ConcurrentSkipListSet::size)
+                .description("Journal entries whose rows are not written yet")
+                .register(registry);
+    }
+
+    /**
+     * Read back the journal left by the last run, then open a fresh file for appends
+     */
+    @PostConstruct
+    void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Path checkpointPath = directory.resolve(CHECKPOINT_FILE);
+        checkpoint = Files.exists(checkpointPath) ? Long.parseLong(Files.readString(checkpointPath).trim()) : 0;
+        nextSequence = checkpoint + 1;
+
+        List<Entry> pending = new ArrayList<>();
+        List<Path> paths;
+        try (Stream<Path> list = Files.list(directory)) {
+            paths = list.filter(path -> path.getFileName().toString().startsWith(FILE_PREFIX)).sorted().toList();
+        }
+        for (Path path : paths) {
+            JournalFile file = JournalFile.map(path, (int) Math.min(Integer.MAX_VALUE, Files.size(path)));
+            file.scan(entry -> {
+                maxRecoveredId = Math.max(maxRecoveredId, entry.message().getId());
+                nextSequence = Math.max(nextSequence, entry.sequence() + 1);
+                if (entry.sequence() > checkpoint) {
+                    pending.add(entry);
+                    unwritten.add(entry.sequence());
+                }
+            });
+            if (file.lastSequence == 0) {
+                // Created but never appended to
+                Files.delete(path);
+            } else {
+                files.add(file);
+            }
+        }
+        recovered = List.copyOf(pending);
+        if (!paths.isEmpty()) {
+            log.info("Chat journal at {}: checkpoint {}, {} entries to replay", directory, checkpoint, recovered.size());
+        }
+
+        active = newFile();
+        running = true;
+        committer = new Thread(this::commitLoop, "chat-journal-commit");
+        committer.setDaemon(true);
+        committer.start();
+        checkpointTask = Flux.interval(CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .subscribe(tick -> saveCheckpoint());
+    }
+
+    /**
+     * Commit what is still waiting, then record the final checkpoint
+     */
+    @PreDestroy
+    void close() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        checkpointTask.dispose();
+        running = false;
+        committer.join(5_000);
+        saveCheckpoint();
+    }
+
+    /**
+     * @return whether appends go to the journal; when not, {@link #append} completes at once
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append a message that already has its ID
+     * @return Mono of the message's journal sequence, completing once the entry is synced;
+     *         0 if the journal is disabled
+     */
+    public Mono<Long> append(ChatMessage message) {
+        if (!enabled) {
+            return Mono.just(0L);
+        }
+        return Mono.<Long>create(sink -> {
+            byte[] payload = encode(message);
+            synchronized (appendLock) {
+                long sequence = write(payload);
+                unwritten.add(sequence);
+                waiters.add(new Waiter(sequence, sink));
+            }
+        }).publishOn(Schedulers.parallel());
+    }
+
+    /**
+     * Record that the rows for these entries are in the table, or never will be
+     * @param sequences journal sequences from {@link #append}
+     */
+    public void written(List<Long> sequences) {
+        if (enabled) {
+            unwritten.removeAll(sequences);
+        }
+    }
+
+    /**
+     * Entries appended before the last shutdown or crash whose rows may not have been
+     * written; each is unwritten until passed to {@link #written}
+     */
+    public List<Entry> recovered() {
+        return recovered;
+    }
+
+    /**
+     * Highest message ID in the journal found at startup, so IDs handed out after a
+     * restart of the in-memory database do not collide with replayed ones
+     */
+    public long maxRecoveredId() {
+        return maxRecoveredId;
+    }
+
+    /**
+     * @return the entry's sequence
+     */
+    private long write(byte[] payload) {
+        int recordSize = RECORD_HEADER_BYTES + payload.length;
+        // Keep room for the zero length that ends the file
+        if (recordSize + 4 > fileSize) {
+            throw new IllegalArgumentException("Chat message of " + payload.length + " bytes does not fit a journal file");
+        }
+        if (active.position + recordSize + 4 > active.size) {
+            active = newFile();
+        }
+        long sequence = nextSequence++;
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        crc.update(payload);
+
+        MappedByteBuffer buffer = active.buffer;
+        int position = active.position;
+        buffer.putInt(position, payload.length);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putLong(position + 8, sequence);
+        buffer.put(position + RECORD_HEADER_BYTES, payload);
+        if (active.dirtyFrom < 0) {
+            active.dirtyFrom = position;
+            dirtyFiles.add(active);
+        }
+        active.position = position + recordSize;
+        active.lastSequence = sequence;
+        return sequence;
+    }
+
+    private JournalFile newFile() {
+        Path path = directory.resolve(String.format("%s%020d%s", FILE_PREFIX, nextSequence, FILE_SUFFIX));
+        try {
+            JournalFile file = JournalFile.create(path, fileSize);
+            files.add(file);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create chat journal file " + path, e);
+        }
+    }
+
+    /**
+     * Take whatever has been appended, sync it once, and complete every append it covered
+     */
+    private void commitLoop() {
+        while (running || !waiters.isEmpty()) {
+            Waiter next;
+            try {
+                next = waiters.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (next == null) {
+                continue;
+            }
+            long committed;
+            List<Region> regions = new ArrayList<>();
+            synchronized (appendLock) {
+                committed = nextSequence - 1;
+                for (JournalFile file : dirtyFiles) {
+                    regions.add(new Region(file, file.dirtyFrom, file.position));
+                    file.dirtyFrom = -1;
+                }
+                dirtyFiles.clear();
+            }
+
+            long start = System.nanoTime();
+            RuntimeException failure = null;
+            if (sync) {
+                try {
+                    for (Region region : regions) {
+                        region.file().buffer.force(region.from(), region.to() - region.from());
+                    }
+                } catch (UncheckedIOException e) {
+                    failure = e;
+                    log.error("Chat journal sync failed: {}", e.getMessage());
+                }
+            }
+            commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            int count = 0;
+            while (next != null) {
+                if (failure == null) {
+                    next.sink().success(next.sequence());
+                } else {
+                    // The append is refused, so its entry must neither hold back the checkpoint nor be replayed
+                    unwritten.remove(next.sequence());
+                    next.sink().error(new IllegalStateException("Chat journal sync failed", failure));
+                }
+                count++;
+                Waiter head = waiters.peek();
+                next = head != null && head.sequence() <= committed ? waiters.poll() : null;
+            }
+            commitSizeSummary.record(count);
+        }
+    }
+
+    /**
+     * Persist the checkpoint and delete journal files wholly behind it
+     */
+    private void saveCheckpoint() {
+        long current;
+        List<JournalFile> obsolete = new ArrayList<>();
+        synchronized (appendLock) {
+            Long oldest = unwritten.isEmpty() ? null : unwritten.first();
+            current = oldest != null ? oldest - 1 : nextSequence - 1;
+            if (current <= checkpoint) {
+                return;
+            }
+            checkpoint = current;
+            files.removeIf(file -> {
+                if (file != active && file.lastSequence <= current) {
+                    obsolete.add(file);
+                    return true;
+                }
+                return false;
+            });
+        }
+        try {
+            Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+            Files.writeString(temporary, Long.toString(current));
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.ATOMIC_MOVE);
+            for (JournalFile file : obsolete) {
+                Files.deleteIfExists(file.path);
+                log.debug("Deleted chat journal file {}", file.path.getFileName());
+            }
+        } catch (IOException e) {
+            log.error("Cannot save chat journal checkpoint: {}", e.getMessage());
+        }
+    }
+
+    private static byte[] encode(ChatMessage message) {
+        byte[] room = bytes(message.getRoomId());
+        byte[] user = bytes(message.getUserName());
+        byte[] text = bytes(message.getMessageText());
+        ByteBuffer out = ByteBuffer.allocate(Long.BYTES * 2 + Integer.BYTES * 4 + room.length + user.length + text.length);
+        out.putLong(message.getId());
+        out.putLong(message.getCreatedAt().toEpochSecond(ZoneOffset.UTC));
+        out.putInt(message.getCreatedAt().getNano());
+        out.putInt(room.length).put(room);
+        out.putInt(user.length).put(user);
+        out.putInt(text.length).put(text);
+        return out.array();
+    }
+
+    private static ChatMessage decode(ByteBuffer in) {
+        long id = in.getLong();
+        LocalDateTime createdAt = LocalDateTime.ofEpochSecond(in.getLong(), in.getInt(), ZoneOffset.UTC);
+        return new ChatMessage(id, string(in), string(in), string(in), createdAt);
+    }
+
+    private static byte[] bytes(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+    }
+
+    private static String string(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A journalled message and its sequence
+     */
+    public record Entry(long sequence, ChatMessage message) {}
+
+    private record Waiter(long sequence, MonoSink<Long> sink) {}
+
+    private record Region(JournalFile file, int from, int to) {}
+
+    private static final class JournalFile {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private int position;
+        // Start of the bytes appended since the last sync, or -1
+        private int dirtyFrom = -1;
+        private long lastSequence;
+
+        private JournalFile(Path path, MappedByteBuffer buffer, int size) {
+            this.path = path;
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        /**
+         * Create a file of the given size, zero-filled, so the first unused length reads as the end
+         */
+        static JournalFile create(Path path, int size) throws IOException {
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                file.setLength(size);
+            }
+            return map(path, size);
+        }
+
+        static JournalFile map(Path path, int size) throws IOException {
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+                return new JournalFile(path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size), size);
+            }
+        }
+
+        /**
+         * Read entries up to the end marker, or up to the first torn or corrupt record
+         */
+        void scan(Consumer<Entry> consumer) {
+            int at = 0;
+            while (at + RECORD_HEADER_BYTES <= size) {
+                int length = buffer.getInt(at);
+                if (length <= 0 || at + RECORD_HEADER_BYTES + length > size) {
+                    break;
+                }
+                long sequence = buffer.getLong(at + 8);
+                ByteBuffer payload = buffer.slice(at + RECORD_HEADER_BYTES, length);
+                CRC32C crc = new CRC32C();
+                crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != buffer.getInt(at + 4)) {
+                    log.warn("Chat journal {} ends in a torn record at offset {}", path.getFileName(), at);
+                    break;
+                }
+                consumer.accept(new Entry(sequence, decode(payload)));
+                lastSequence = sequence;
+                at += RECORD_HEADER_BYTES + length;
+            }
+            position = at;
+        }
+    }
+}
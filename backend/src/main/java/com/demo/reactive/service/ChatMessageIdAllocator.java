@@ -0,0 +1,106 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.repository.ChatMessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out chat message IDs from blocks reserved through a database sequence,
+ * so a message can be broadcast with its final ID before its row is written.
+ * Blocks overlapping IDs already in the chat archive or journal are skipped, as the sequence
+ * starts again from 1 with each new in-memory database while those files persist.
+ */
+@Component
+public class ChatMessageIdAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatMessageIdAllocator.class);
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatArchive archive;
+    private final ChatJournal journal;
+    private final long blockSize;
+
+    // Current block; replaced wholesale when exhausted
+    private volatile Block current = new Block(0, 0);
+
+    // Shared refill so concurrent callers on an exhausted block wait on one query
+    private Mono<Block> refill;
+
+    public ChatMessageIdAllocator(ChatMessageRepository chatMessageRepository,
+                                  ChatArchive archive,
+                                  ChatJournal journal,
+                                  @Value("${chat.persistence.id-block-size:1000}") long blockSize) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.archive = archive;
+        this.journal = journal;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Allocate the next message ID
+     * @return Mono of a unique ID, resolved without a DB round-trip unless the block is used up
+     */
+    public Mono<Long> nextId() {
+        Block block = current;
+        long id = block.next.getAndIncrement();
+        if (id < block.end) {
+            return Mono.just(id);
+        }
+        return refill(block).then(Mono.defer(this::nextId));
+    }
+
+    private synchronized Mono<Block> refill(Block exhausted) {
+        if (current != exhausted) {
+            return Mono.just(current);
+        }
+        if (refill == null) {
+            refill = chatMessageRepository.nextIdBlock()
+                    .flatMap(this::pastUsedIds)
+                    .map(blockNumber -> new Block(blockNumber * blockSize, (blockNumber + 1) * blockSize))
+                    .doOnNext(this::install)
+                    .doOnError(error -> clearRefill())
+                    .cache();
+        }
+        return refill;
+    }
+
+    /**
+     * Move the sequence on if the reserved block could reuse an archived or journalled ID
+     */
+    private Mono<Long> pastUsedIds(long blockNumber) {
+        long maxUsedId = Math.max(archive.maxArchivedId(), journal.maxRecoveredId());
+        if (blockNumber * blockSize > maxUsedId) {
+            return Mono.just(blockNumber);
+        }
+        long skipTo = maxUsedId / blockSize + 1;
+        log.info("Skipping chat message ID blocks {} to {} already used by archived or journalled messages",
+                blockNumber, skipTo - 1);
+        return chatMessageRepository.restartIdBlocks(skipTo)
+                .then(chatMessageRepository.nextIdBlock());
+    }
+
+    private synchronized void install(Block block) {
+        log.debug("Reserved chat message IDs [{}, {})", block.next.get(), block.end);
+        current = block;
+        refill = null;
+    }
+
+    private synchronized void clearRefill() {
+        refill = null;
+    }
+
+    private static final class Block {
+        private final AtomicLong next;
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
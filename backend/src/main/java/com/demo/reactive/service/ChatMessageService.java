@@ -1,56 +1,544 @@
 package com.demo.reactive.service;
 
+import com.demo.reactive.model.ChatCursor;
 import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.model.ChatMessagePage;
+import com.demo.reactive.model.ChatSearchPage;
 import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.spi.R2dbcDataIntegrityViolationException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class ChatMessageService {
-    
+
     private static final Logger log = LoggerFactory.getLogger(ChatMessageService.class);
 
+    // Journal entries checked against the table per query when replaying
+    private static final int REPLAY_CHUNK = 1000;
+
+    // Column lengths of chat_messages, checked before a message is admitted
+    static final int MAX_ROOM_ID_LENGTH = 100;
+    static final int MAX_USER_NAME_LENGTH = 100;
+
     private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageIdAllocator idAllocator;
+    private final ChatHistoryCache historyCache;
+    private final ChatSearchIndex searchIndex;
+    private final ChatArchive archive;
+    private final ChatJournal journal;
+    private final ChatBroadcaster chatBroadcaster;
+    private final ChatCluster cluster;
+    private final ChatPipelineMetrics pipelineMetrics;
+    private final ChatWriteAdmission admission;
+
+    // Write-behind settings
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final int bufferCapacity;
+    private final int flushConcurrency;
 
-    public ChatMessageService(ChatMessageRepository chatMessageRepository) {
+    // Rows fetched per keyset query when streaming a whole room
+    private final int streamWindow;
+
+    // Messages accepted but not yet flushed (queued or in an in-flight batch)
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
+    private final Counter rejectedCounter;
+    private final Counter failedCounter;
+
+    private volatile FluxSink<PendingWrite> writeSink;
+    private Disposable writePipeline;
+
+    public ChatMessageService(ChatMessageRepository chatMessageRepository,
+                              ChatMessageIdAllocator idAllocator,
+                              ChatHistoryCache historyCache,
+                              ChatSearchIndex searchIndex,
+                              ChatArchive archive,
+                              ChatJournal journal,
+                              ChatBroadcaster chatBroadcaster,
+                              ChatCluster cluster,
+                              ChatPipelineMetrics pipelineMetrics,
+                              ChatWriteAdmission admission,
+                              MeterRegistry registry,
+                              @Value("${chat.persistence.batch-size:100}") int batchSize,
+                              @Value("${chat.persistence.flush-interval:50ms}") Duration flushInterval,
+                              @Value("${chat.persistence.buffer-capacity:10000}") int bufferCapacity,
+                              @Value("${chat.persistence.flush-concurrency:4}") int flushConcurrency,
+                              @Value("${chat.history.stream-window:200}") int streamWindow) {
         this.chatMessageRepository = chatMessageRepository;
+        this.idAllocator = idAllocator;
+        this.historyCache = historyCache;
+        this.searchIndex = searchIndex;
+        this.archive = archive;
+        this.journal = journal;
+        this.chatBroadcaster = chatBroadcaster;
+        this.cluster = cluster;
+        this.pipelineMetrics = pipelineMetrics;
+        this.admission = admission;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.bufferCapacity = bufferCapacity;
+        this.flushConcurrency = flushConcurrency;
+        this.streamWindow = streamWindow;
+
+        this.batchSizeSummary = DistributionSummary.builder("chat.persistence.batch.size")
+                .description("Messages written per multi-row insert")
+                .register(registry);
+        this.flushTimer = Timer.builder("chat.persistence.flush")
+                .description("Time to write one batch of chat messages")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("chat.persistence.rejected")
+                .description("Messages shed because the write buffer was full")
+                .register(registry);
+        this.failedCounter = Counter.builder("chat.persistence.failed")
+                .description("Messages lost because their insert was refused or exhausted its retries")
+                .register(registry);
+        Gauge.builder("chat.persistence.pending", pendingWrites, AtomicInteger::get)
+                .description("Messages accepted but not yet written")
+                .register(registry);
     }
-    
+
+    @PostConstruct
+    void startWritePipeline() {
+        writePipeline = Flux.<PendingWrite>create(sink -> this.writeSink = sink)
+                .bufferTimeout(batchSize, flushInterval, true)
+                .flatMap(this::flushBatch, flushConcurrency)
+                .subscribe(null, error -> log.error("Chat write pipeline stopped: {}", error.getMessage()));
+    }
+
+    @PreDestroy
+    void stopWritePipeline() {
+        FluxSink<PendingWrite> sink = writeSink;
+        if (sink != null) {
+            // Completing the sink flushes the partial batch still held by bufferTimeout
+            sink.complete();
+        }
+        long deadline = System.currentTimeMillis() + 5_000;
+        try {
+            while (pendingWrites.get() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pendingWrites.get() > 0) {
+            log.warn("Shutting down with {} chat messages not yet written", pendingWrites.get());
+        }
+        writePipeline.dispose();
+    }
+
     /**
-     * Save a chat message to the database
+     * Save a message received from a client and broadcast it to the room's subscribers,
+     * on this node and on any other node of the cluster, timing each stage of the way
+     * @param roomId the room the message was sent to
+     * @param message the message as received
+     * @param receivedAt {@link System#nanoTime()} when the frame carrying the message arrived
+     * @return Mono of the broadcast message with its assigned ID
+     */
+    public Mono<ChatMessage> publishMessage(String roomId, ChatMessage message, long receivedAt) {
+        long handled = System.nanoTime();
+        pipelineMetrics.record(ChatPipelineMetrics.Stage.DECODE, handled - receivedAt, true);
+
+        // Set room ID and timestamp
+        message.setRoomId(roomId);
+        message.setCreatedAt(LocalDateTime.now());
+
+        return saveMessage(message)
+                .doOnError(error -> {
+                    long failed = System.nanoTime();
+                    pipelineMetrics.record(ChatPipelineMetrics.Stage.PERSIST, failed - handled, false);
+                    pipelineMetrics.record(ChatPipelineMetrics.Stage.TOTAL, failed - receivedAt, false);
+                })
+                .doOnNext(saved -> {
+                    long persisted = System.nanoTime();
+                    pipelineMetrics.record(ChatPipelineMetrics.Stage.PERSIST, persisted - handled, true);
+                    log.info("Broadcasting message ID: {} to /topic/chat/{}", saved.getId(), roomId);
+                    boolean broadcast = false;
+                    try {
+                        chatBroadcaster.broadcast("/topic/chat/" + roomId, saved);
+                        cluster.publish(roomId, saved);
+                        broadcast = true;
+                    } finally {
+                        long done = System.nanoTime();
+                        pipelineMetrics.record(ChatPipelineMetrics.Stage.BROADCAST, done - persisted, broadcast);
+                        pipelineMetrics.record(ChatPipelineMetrics.Stage.TOTAL, done - receivedAt, broadcast);
+                    }
+                });
+    }
+
+    /**
+     * Hand the journal's entries from before the last shutdown or crash back to the write
+     * pipeline. Entries whose rows made it into the table before the checkpoint caught up
+     * are skipped.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void replayJournal() {
+        List<ChatJournal.Entry> entries = journal.recovered();
+        if (entries.isEmpty()) {
+            return;
+        }
+        Flux.fromIterable(entries)
+                .buffer(REPLAY_CHUNK)
+                .concatMap(chunk -> chatMessageRepository.findExistingIds(
+                                chunk.stream().map(entry -> entry.message().getId()).toList())
+                        .collectList()
+                        .map(existing -> {
+                            Set<Long> written = new HashSet<>(existing);
+                            List<Long> skipped = new ArrayList<>();
+                            for (ChatJournal.Entry entry : chunk) {
+                                ChatMessage message = entry.message();
+                                if (written.contains(message.getId())) {
+                                    skipped.add(entry.sequence());
+                                    continue;
+                                }
+                                historyCache.append(message);
+                                searchIndex.add(message);
+                                pendingWrites.incrementAndGet();
+                                writeSink.next(new PendingWrite(message, entry.sequence(), System.nanoTime()));
+                            }
+                            journal.written(skipped);
+                            return chunk.size() - skipped.size();
+                        }))
+                .reduce(0, Integer::sum)
+                .subscribe(replayed -> log.info("Replayed {} chat messages from the journal", replayed),
+                        error -> log.error("Chat journal replay failed: {}", error.getMessage()));
+    }
+
+    /**
+     * Save a chat message to the database.
+     * Once admitted, the message gets its ID immediately, is appended to the journal and
+     * queued for a batched insert; the Mono completes once the journal entry is synced,
+     * not once the row is written.
      * @param message the message to save
-     * @return Mono of the saved message with generated ID
+     * @return Mono of the message with its assigned ID, or an error if the message is
+     *         invalid, admission rejects it, the write buffer is full or the journal
+     *         cannot be synced
      */
     public Mono<ChatMessage> saveMessage(ChatMessage message) {
-        log.debug("Saving chat message for room: {} from user: {}", 
+        String invalid = validate(message);
+        if (invalid != null) {
+            return Mono.error(new IllegalArgumentException(invalid));
+        }
+        log.debug("Saving chat message for room: {} from user: {}",
                   message.getRoomId(), message.getUserName());
-        return chatMessageRepository.save(message)
-                .doOnSuccess(saved -> log.info("Message saved with ID: {}", saved.getId()))
+
+        return admission.admit().then(Mono.defer(() -> {
+            if (pendingWrites.incrementAndGet() > bufferCapacity) {
+                pendingWrites.decrementAndGet();
+                rejectedCounter.increment();
+                return Mono.error(new IllegalStateException(
+                        "Chat write buffer is full (" + bufferCapacity + " pending messages)"));
+            }
+
+            return idAllocator.nextId()
+                    .flatMap(id -> {
+                        message.setId(id);
+                        return journal.append(message);
+                    })
+                    .map(sequence -> {
+                        historyCache.append(message);
+                        searchIndex.add(message);
+                        writeSink.next(new PendingWrite(message, sequence, System.nanoTime()));
+                        return message;
+                    })
+                    .doOnError(error -> pendingWrites.decrementAndGet());
+        }))
+                .doOnSuccess(saved -> log.debug("Message queued with ID: {}", saved.getId()))
                 .doOnError(error -> log.error("Error saving message: {}", error.getMessage()));
     }
-    
+
+    /**
+     * Check a message against the table's constraints, so a row the database would refuse
+     * is turned away here rather than taking its batch down with it
+     * @return why the message cannot be saved, or null if it can
+     */
+    static String validate(ChatMessage message) {
+        if (message == null) {
+            return "Message is required";
+        }
+        if (isBlank(message.getRoomId()) || message.getRoomId().length() > MAX_ROOM_ID_LENGTH) {
+            return "Room ID must be 1 to " + MAX_ROOM_ID_LENGTH + " characters";
+        }
+        if (isBlank(message.getUserName()) || message.getUserName().length() > MAX_USER_NAME_LENGTH) {
+            return "User name must be 1 to " + MAX_USER_NAME_LENGTH + " characters";
+        }
+        if (isBlank(message.getMessageText())) {
+            return "Message text is required";
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    /**
+     * Write one batch as a single multi-row insert. If the database refuses a row, the
+     * batch is written again one row at a time so only the offending rows are lost.
+     */
+    private Mono<Long> flushBatch(List<PendingWrite> batch) {
+        Timer.Sample sample = Timer.start();
+        return insert(batch)
+                .doOnSuccess(rows -> {
+                    sample.stop(flushTimer);
+                    batchSizeSummary.record(batch.size());
+                    recordWrites(batch, true);
+                    log.debug("Flushed {} chat messages", batch.size());
+                })
+                .onErrorResume(ChatMessageService::isRejectedRow, error -> {
+                    log.warn("Batch of {} chat messages refused ({}), writing it row by row",
+                             batch.size(), error.getMessage());
+                    return insertEach(batch);
+                })
+                .onErrorResume(error -> {
+                    recordWrites(batch, false);
+                    failedCounter.increment(batch.size());
+                    log.error("Dropping batch of {} chat messages after retries: {}",
+                              batch.size(), error.getMessage());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    // A dropped row is not replayed either; the journal covers crashes, not rejected rows
+                    journal.written(sequences(batch));
+                    pendingWrites.addAndGet(-batch.size());
+                });
+    }
+
+    /**
+     * Fallback for a refused batch: one insert per row, dropping only the rows that fail
+     */
+    private Mono<Long> insertEach(List<PendingWrite> batch) {
+        return Flux.fromIterable(batch)
+                .concatMap(write -> insert(List.of(write))
+                        .doOnSuccess(rows -> recordWrites(List.of(write), true))
+                        .onErrorResume(error -> {
+                            recordWrites(List.of(write), false);
+                            failedCounter.increment();
+                            log.error("Dropping chat message {} for room {}: {}",
+                                      write.message().getId(), write.message().getRoomId(), error.getMessage());
+                            return Mono.empty();
+                        }))
+                .reduce(0L, Long::sum);
+    }
+
     /**
-     * Get recent messages for a room
+     * Insert the messages, retrying errors that may pass; deferred so a failure while the
+     * statement is built reaches the error handling instead of the pipeline
+     */
+    private Mono<Long> insert(List<PendingWrite> writes) {
+        return Mono.defer(() -> {
+                    List<ChatMessage> messages = new ArrayList<>(writes.size());
+                    for (PendingWrite write : writes) {
+                        messages.add(write.message());
+                    }
+                    return chatMessageRepository.insertAll(messages);
+                })
+                .retryWhen(Retry.backoff(3, Duration.ofMillis(100))
+                        .filter(error -> !isRejectedRow(error)));
+    }
+
+    /**
+     * Whether the error comes from the rows themselves, so retrying them as they are is pointless
+     */
+    private static boolean isRejectedRow(Throwable error) {
+        return error instanceof DataIntegrityViolationException
+                || error instanceof R2dbcDataIntegrityViolationException
+                || error instanceof IllegalArgumentException;
+    }
+
+    private static List<Long> sequences(List<PendingWrite> batch) {
+        List<Long> sequences = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            sequences.add(write.sequence());
+        }
+        return sequences;
+    }
+
+    private void recordWrites(List<PendingWrite> batch, boolean written) {
+        long now = System.nanoTime();
+        for (PendingWrite write : batch) {
+            pipelineMetrics.record(ChatPipelineMetrics.Stage.WRITE, now - write.queuedAt(), written);
+        }
+    }
+
+    /**
+     * Get recent messages for a room in chronological order.
+     * Served from the per-room history cache when the limit fits in it, and topped up
+     * from the archive when the table holds fewer than the limit.
      * @param roomId the room ID
      * @param limit maximum number of messages to retrieve
-     * @return Flux of recent chat messages
+     * @return Flux of recent chat messages, oldest first
      */
     public Flux<ChatMessage> getRecentMessages(String roomId, int limit) {
         log.debug("Fetching {} recent messages for room: {}", limit, roomId);
+        if (limit <= historyCache.capacity()) {
+            return historyCache.recent(roomId, limit)
+                    .flatMapIterable(messages -> messages);
+        }
         return chatMessageRepository.findRecentMessagesByRoomId(roomId, limit)
+                .collectList()
+                .flatMap(hot -> archive.fillNewestFirst(roomId, hot, null, limit))
+                .flatMapIterable(newestFirst -> {
+                    Collections.reverse(newestFirst);
+                    return newestFirst;
+                })
                 .doOnComplete(() -> log.debug("Completed fetching messages for room: {}", roomId));
     }
-    
+
     /**
-     * Get all messages for a room ordered by creation time (descending)
+     * Get one keyset page of a room's history, newest first. Pages reaching past the
+     * oldest row of the table continue into the archive.
      * @param roomId the room ID
-     * @return Flux of all chat messages for the room
+     * @param before only messages older than this cursor, or null
+     * @param after only messages newer than this cursor, or null
+     * @param limit maximum number of messages in the page
+     * @return Mono of the page with cursors for the neighbouring pages
      */
-    public Flux<ChatMessage> getAllMessagesByRoom(String roomId) {
-        log.debug("Fetching all messages for room: {}", roomId);
-        return chatMessageRepository.findByRoomIdOrderByCreatedAtDesc(roomId);
+    public Mono<ChatMessagePage> getMessagePage(String roomId, ChatCursor before, ChatCursor after, int limit) {
+        log.debug("Fetching page of {} messages for room: {} (before={}, after={})", limit, roomId, before, after);
+        if (after != null) {
+            // Ascending from the cursor through the archive and then the table, flipped to keep pages newest first
+            return archive.after(roomId, after)
+                    .take(limit)
+                    .collectList()
+                    .flatMap(cold -> {
+                        if (cold.size() == limit) {
+                            return Mono.just(cold);
+                        }
+                        ChatCursor from = cold.isEmpty() ? after : ChatCursor.of(cold.get(cold.size() - 1));
+                        return chatMessageRepository.findPageAfter(roomId, from.createdAt(), from.id(), limit - cold.size())
+                                .collectList()
+                                .map(hot -> {
+                                    List<ChatMessage> oldestFirst = new ArrayList<>(cold);
+                                    oldestFirst.addAll(hot);
+                                    return oldestFirst;
+                                });
+                    })
+                    .map(oldestFirst -> {
+                        Collections.reverse(oldestFirst);
+                        return toPage(oldestFirst, !oldestFirst.isEmpty());
+                    });
+        }
+        // One extra row tells us whether an older page exists
+        return fetchNewestFirst(roomId, before, limit + 1)
+                .collectList()
+                .flatMap(hot -> archive.fillNewestFirst(roomId, hot, before, limit + 1))
+                .map(newestFirst -> {
+                    boolean hasOlder = newestFirst.size() > limit;
+                    return toPage(hasOlder ? newestFirst.subList(0, limit) : newestFirst, hasOlder);
+                });
     }
+
+    /**
+     * Stream a room's messages newest first, reading the table one keyset window at a time
+     * so only about one window of rows is held in memory regardless of room size, then
+     * through the archive a block at a time
+     * @param roomId the room ID
+     * @param before only messages older than this cursor, or null for the whole room
+     * @return Flux of chat messages for the room, fetched as the subscriber requests them
+     */
+    public Flux<ChatMessage> getAllMessagesByRoom(String roomId, ChatCursor before) {
+        log.debug("Streaming messages for room: {} before {}", roomId, before);
+        return Flux.defer(() -> {
+            // Where the table ran out, for the archive to carry on from
+            AtomicReference<ChatCursor> oldest = new AtomicReference<>(before);
+            return fetchNewestFirst(roomId, before, streamWindow)
+                    .collectList()
+                    .expand(window -> window.size() < streamWindow
+                            ? Mono.empty()
+                            : fetchNewestFirst(roomId, ChatCursor.of(window.get(window.size() - 1)), streamWindow)
+                                    .collectList())
+                    .flatMapIterable(window -> window, 1)
+                    .doOnNext(message -> oldest.set(ChatCursor.of(message)))
+                    .concatWith(Flux.defer(() -> archive.before(roomId, oldest.get())));
+        });
+    }
+
+    /**
+     * Search a room's messages through the in-memory index, best match first
+     * @param roomId the room ID
+     * @param query free text; messages containing any of its words match
+     * @param offset matches to skip
+     * @param limit maximum number of matches in the page
+     * @return Mono of the page of matches. A match whose row is not written yet, or
+     *         whose batch was dropped, is left out of the page but still counted in the total.
+     */
+    public Mono<ChatSearchPage> searchMessages(String roomId, String query, int offset, int limit) {
+        log.debug("Searching room: {} for '{}' (offset={}, limit={})", roomId, query, offset, limit);
+        return searchIndex.search(roomId, query, offset, limit)
+                .flatMap(page -> {
+                    Integer nextOffset = offset + page.hits().size() < page.total() ? offset + limit : null;
+                    if (page.hits().isEmpty()) {
+                        return Mono.just(new ChatSearchPage(query, List.of(), page.total(), nextOffset));
+                    }
+                    List<Long> ids = new ArrayList<>(page.hits().size());
+                    page.hits().forEach(hit -> ids.add(hit.id()));
+                    return chatMessageRepository.findAllById(ids)
+                            .collectMap(ChatMessage::getId)
+                            .map(byId -> new ChatSearchPage(query, inRankOrder(page, byId), page.total(), nextOffset));
+                });
+    }
+
+    private static List<ChatSearchPage.Hit> inRankOrder(ChatSearchIndex.Page page, Map<Long, ChatMessage> byId) {
+        List<ChatSearchPage.Hit> hits = new ArrayList<>(page.hits().size());
+        for (ChatSearchIndex.Hit hit : page.hits()) {
+            ChatMessage message = byId.get(hit.id());
+            if (message != null) {
+                hits.add(new ChatSearchPage.Hit(message, hit.score()));
+            }
+        }
+        return hits;
+    }
+
+    private Flux<ChatMessage> fetchNewestFirst(String roomId, ChatCursor before, int limit) {
+        return before == null
+                ? chatMessageRepository.findNewestPage(roomId, limit)
+                : chatMessageRepository.findPageBefore(roomId, before.createdAt(), before.id(), limit);
+    }
+
+    private static ChatMessagePage toPage(List<ChatMessage> newestFirst, boolean hasOlder) {
+        if (newestFirst.isEmpty()) {
+            return new ChatMessagePage(newestFirst, null, null);
+        }
+        String before = hasOlder ? ChatCursor.of(newestFirst.get(newestFirst.size() - 1)).encode() : null;
+        String after = ChatCursor.of(newestFirst.get(0)).encode();
+        return new ChatMessagePage(newestFirst, before, after);
+    }
+
+    /**
+     * A message waiting for its batched insert, with its journal sequence and the
+     * {@link System#nanoTime()} it was queued at
+     */
+    private record PendingWrite(ChatMessage message, long sequence, long queuedAt) {}
 }
@@ -0,0 +1,75 @@
+package com.demo.reactive.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-stage latency of incoming chat messages, recorded as {@code chat.pipeline} timers
+ * tagged by stage and outcome and fed into the sliding windows behind /api/metrics/stream.
+ * Timers are registered up front so recording a stage is a single lock-free update.
+ */
+@Component
+public class ChatPipelineMetrics {
+
+    /**
+     * Header carrying the {@link System#nanoTime()} at which an inbound chat frame arrived
+     */
+    public static final String RECEIVED_AT_HEADER = "chatReceivedAt";
+
+    public enum Stage {
+        /** Frame arrival to handler entry: inbound queueing and JSON decoding */
+        DECODE("decode"),
+        /** Handler entry to the message being accepted: admission, ID allocation and queueing for the batched insert */
+        PERSIST("persist"),
+        /** Handing the saved message to the transport for fan-out */
+        BROADCAST("broadcast"),
+        /** Frame arrival to broadcast, the whole delivery path */
+        TOTAL("total"),
+        /** Accepted to row committed; runs after the broadcast, off the delivery path */
+        WRITE("write");
+
+        private final String tag;
+
+        Stage(String tag) {
+            this.tag = tag;
+        }
+
+        public String tag() {
+            return tag;
+        }
+    }
+
+    private final MetricsService metricsService;
+    private final Timer[] success;
+    private final Timer[] error;
+
+    public ChatPipelineMetrics(MeterRegistry registry, MetricsService metricsService) {
+        this.metricsService = metricsService;
+        Stage[] stages = Stage.values();
+        this.success = new Timer[stages.length];
+        this.error = new Timer[stages.length];
+        for (Stage stage : stages) {
+            success[stage.ordinal()] = timer(registry, stage, "success");
+            error[stage.ordinal()] = timer(registry, stage, "error");
+        }
+    }
+
+    private static Timer timer(MeterRegistry registry, Stage stage, String outcome) {
+        return Timer.builder("chat.pipeline")
+                .description("Time spent in one stage of handling an incoming chat message")
+                .tags("stage", stage.tag(), "outcome", outcome)
+                .register(registry);
+    }
+
+    /**
+     * @param elapsedNanos time spent in the stage
+     * @param succeeded whether the stage completed normally
+     */
+    public void record(Stage stage, long elapsedNanos, boolean succeeded) {
+        (succeeded ? success : error)[stage.ordinal()].record(elapsedNanos, TimeUnit.NANOSECONDS);
+        metricsService.recordChatStage(stage, elapsedNanos);
+    }
+}
@@ -0,0 +1,218 @@
+package com.demo.reactive.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets limiting incoming chat messages per session and per room, so one client
+ * cannot flood a room with inserts and broadcasts. Session buckets are keyed by the same
+ * session ID as {@link PresenceService} and dropped when the session disconnects; room
+ * buckets are swept, with their meters, once a room has seen no messages for a minute.
+ * <p>
+ * Each bucket is a single AtomicLong holding the time at which it will be full again
+ * (the GCRA form of a token bucket), so taking a token is one compare-and-set.
+ */
+@Service
+public class ChatRateLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatRateLimiter.class);
+
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(1);
+
+    public enum Decision {
+        ALLOWED,
+        SESSION_LIMITED,
+        ROOM_LIMITED
+    }
+
+    private final MeterRegistry registry;
+    private final BucketShape sessionShape;
+    private final BucketShape roomShape;
+
+    private final Map<String, TokenBucket> sessions = new ConcurrentHashMap<>();
+    private final Map<String, RoomBucket> rooms = new ConcurrentHashMap<>();
+
+    private Disposable sweepTask;
+
+    public ChatRateLimiter(MeterRegistry registry,
+                           @Value("${chat.rate-limit.session-rate:10}") double sessionRate,
+                           @Value("${chat.rate-limit.session-burst:20}") int sessionBurst,
+                           @Value("${chat.rate-limit.room-rate:200}") double roomRate,
+                           @Value("${chat.rate-limit.room-burst:400}") int roomBurst) {
+        this.registry = registry;
+        this.sessionShape = BucketShape.of(sessionRate, sessionBurst);
+        this.roomShape = BucketShape.of(roomRate, roomBurst);
+    }
+
+    @PostConstruct
+    void startSweeps() {
+        sweepTask = Flux.interval(SWEEP_INTERVAL, SWEEP_INTERVAL)
+                .onBackpressureDrop()
+                .subscribe(tick -> sweepRooms());
+    }
+
+    @PreDestroy
+    void stopSweeps() {
+        sweepTask.dispose();
+    }
+
+    /**
+     * Take a token for one chat message from the session's bucket and then the room's
+     * @return ALLOWED, or which limit the message ran into
+     */
+    public Decision tryAcquire(String sessionId, String roomId) {
+        long now = System.nanoTime();
+        if (sessionShape != null && sessionId != null && !sessionBucket(sessionId).tryAcquire(now, sessionShape)) {
+            // Counted against rooms already known only, so a throttled client cannot mint buckets and meters
+            RoomBucket room = rooms.get(roomId);
+            if (room != null) {
+                room.sessionRejected.increment();
+            }
+            return Decision.SESSION_LIMITED;
+        }
+        if (roomShape != null) {
+            RoomBucket room = roomBucket(roomId, now);
+            if (!room.bucket.tryAcquire(now, roomShape)) {
+                room.roomRejected.increment();
+                return Decision.ROOM_LIMITED;
+            }
+        }
+        return Decision.ALLOWED;
+    }
+
+    /**
+     * @return a message for the sender explaining the limit it ran into
+     */
+    public String describe(Decision decision, String roomId) {
+        return switch (decision) {
+            case SESSION_LIMITED -> "Rate limit exceeded: at most " + sessionShape.describe() + " per session";
+            case ROOM_LIMITED -> "Rate limit exceeded: room " + roomId + " accepts at most " + roomShape.describe();
+            case ALLOWED -> null;
+        };
+    }
+
+    /**
+     * Forget a session's bucket
+     */
+    public void sessionClosed(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    @EventListener
+    public void handleWebSocketDisconnectListener(SessionDisconnectEvent event) {
+        sessionClosed(StompHeaderAccessor.wrap(event.getMessage()).getSessionId());
+    }
+
+    private TokenBucket sessionBucket(String sessionId) {
+        TokenBucket bucket = sessions.get(sessionId);
+        return bucket != null ? bucket : sessions.computeIfAbsent(sessionId, id -> new TokenBucket());
+    }
+
+    private RoomBucket roomBucket(String roomId, long now) {
+        RoomBucket room = rooms.get(roomId);
+        if (room == null) {
+            room = rooms.computeIfAbsent(roomId, id -> new RoomBucket(registry, id));
+        }
+        room.lastUsed = now;
+        return room;
+    }
+
+    /**
+     * Drop rooms idle for a whole sweep interval, by which time their buckets have refilled.
+     * A message racing with the removal may take its token from the dropped bucket, which
+     * lets one extra message through.
+     */
+    private void sweepRooms() {
+        long now = System.nanoTime();
+        int before = rooms.size();
+        rooms.values().removeIf(room -> {
+            if (now - room.lastUsed < SWEEP_INTERVAL.toNanos() || !room.bucket.isFull(now)) {
+                return false;
+            }
+            registry.remove(room.sessionRejected);
+            registry.remove(room.roomRejected);
+            return true;
+        });
+        log.debug("Swept {} idle rate-limit rooms, {} left", before - rooms.size(), rooms.size());
+    }
+
+    /**
+     * Refill rate and burst size shared by all buckets of one kind
+     * @param interval nanoseconds per token
+     * @param tolerance how far ahead of now the bucket's full-again time may run, (burst - 1) tokens
+     */
+    private record BucketShape(double rate, int burst, long interval, long tolerance) {
+
+        /**
+         * @return the shape, or null if the rate is not positive, which disables the limit
+         */
+        static BucketShape of(double ratePerSecond, int burst) {
+            if (ratePerSecond <= 0) {
+                return null;
+            }
+            long interval = Math.max(1, (long) (1e9 / ratePerSecond));
+            return new BucketShape(ratePerSecond, burst, interval, Math.max(0, burst - 1) * interval);
+        }
+
+        String describe() {
+            return String.format("%.0f messages per second (bursts of %d)", rate, burst);
+        }
+    }
+
+    private static final class TokenBucket {
+        // System.nanoTime() at which the bucket is full again; compared by subtraction, as nanoTime may wrap
+        private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+        boolean tryAcquire(long now, BucketShape shape) {
+            while (true) {
+                long current = fullAt.get();
+                long start = current - now > 0 ? current : now;
+                if (start - now > shape.tolerance()) {
+                    return false;
+                }
+                if (fullAt.compareAndSet(current, start + shape.interval())) {
+                    return true;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            return fullAt.get() - now <= 0;
+        }
+    }
+
+    private static final class RoomBucket {
+        private final TokenBucket bucket = new TokenBucket();
+        private final Counter sessionRejected;
+        private final Counter roomRejected;
+        private volatile long lastUsed = System.nanoTime();
+
+        private RoomBucket(MeterRegistry registry, String roomId) {
+            this.sessionRejected = rejectedCounter(registry, roomId, "session");
+            this.roomRejected = rejectedCounter(registry, roomId, "room");
+        }
+
+        private static Counter rejectedCounter(MeterRegistry registry, String roomId, String limit) {
+            return Counter.builder("chat.rate-limit.rejected")
+                    .description("Chat messages dropped by the per-session or per-room rate limit")
+                    .tags("room", roomId, "limit", limit)
+                    .register(registry);
+        }
+    }
+}
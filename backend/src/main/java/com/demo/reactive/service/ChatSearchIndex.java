@@ -0,0 +1,409 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * In-memory inverted index over each room's message text, so searching a room does not
+ * scan chat_messages. Every term maps to a posting list of the message IDs containing it,
+ * delta- and varint-encoded with the term's count in each message. Messages are added as
+ * they are saved, removed once archived, and the index is rebuilt from the table once the
+ * application is ready.
+ * <p>
+ * Each room is held to a byte budget: past it, the oldest quarter of the room's messages
+ * is dropped from the index, so search covers the most recent history.
+ */
+@Component
+public class ChatSearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatSearchIndex.class);
+
+    private static final int MIN_TERM_LENGTH = 2;
+    private static final int MAX_TERM_LENGTH = 32;
+    // Per-term cost besides its postings: map entry, String, PostingList and array headers
+    private static final int TERM_OVERHEAD_BYTES = 120;
+    // BM25 term-frequency saturation; without length normalisation, as chat messages are all short
+    private static final double K1 = 1.2;
+
+    private static final Comparator<Hit> BY_RANK =
+            Comparator.comparingDouble(Hit::score).thenComparingLong(Hit::id);
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final long maxBytesPerRoom;
+
+    private final Map<String, RoomIndex> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    // Messages saved while the rebuild runs, by ID; applied once it finishes
+    private final Map<Long, ChatMessage> savedDuringRebuild = new LinkedHashMap<>();
+    private volatile boolean rebuilding = true;
+    private final Sinks.Empty<Void> ready = Sinks.empty();
+
+    public ChatSearchIndex(ChatMessageRepository chatMessageRepository,
+                           MeterRegistry registry,
+                           @Value("${chat.search.max-size-per-room:2MB}") DataSize maxSizePerRoom) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.maxBytesPerRoom = maxSizePerRoom.toBytes();
+
+        Gauge.builder("chat.search.rooms", rooms, Map::size).register(registry);
+        Gauge.builder("chat.search.bytes", totalBytes, AtomicLong::get).register(registry);
+    }
+
+    /**
+     * Index every stored message in ID order. A message is added to the index before its
+     * row is written, so any row saved during the rebuild is already waiting in
+     * savedDuringRebuild; taking it out there means each message is indexed exactly once.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.nanoTime();
+        AtomicLong count = new AtomicLong();
+        chatMessageRepository.findAllOrderById()
+                .doOnNext(message -> {
+                    synchronized (savedDuringRebuild) {
+                        savedDuringRebuild.remove(message.getId());
+                    }
+                    index(message);
+                    count.incrementAndGet();
+                })
+                .doOnError(error -> log.error("Search index rebuild failed after {} messages: {}",
+                        count.get(), error.getMessage()))
+                .onErrorComplete()
+                .doOnComplete(() -> {
+                    synchronized (savedDuringRebuild) {
+                        savedDuringRebuild.values().forEach(this::index);
+                        savedDuringRebuild.clear();
+                        rebuilding = false;
+                    }
+                    ready.tryEmitEmpty();
+                    log.info("Rebuilt chat search index from {} messages in {} ms", count.get(),
+                            (System.nanoTime() - start) / 1_000_000);
+                })
+                .subscribe();
+    }
+
+    /**
+     * Add a newly saved message
+     * @param message the message with its assigned ID
+     */
+    public void add(ChatMessage message) {
+        if (rebuilding) {
+            synchronized (savedDuringRebuild) {
+                if (rebuilding) {
+                    savedDuringRebuild.put(message.getId(), message);
+                    return;
+                }
+            }
+        }
+        index(message);
+    }
+
+    private void index(ChatMessage message) {
+        if (message.getId() == null || message.getMessageText() == null) {
+            return;
+        }
+        Map<String, Integer> terms = terms(message.getMessageText());
+        if (terms.isEmpty()) {
+            return;
+        }
+        RoomIndex room = rooms.computeIfAbsent(message.getRoomId(), RoomIndex::new);
+        totalBytes.addAndGet(room.add(message.getId(), terms));
+    }
+
+    /**
+     * Remove messages that have left the table, so searches do not count hits whose rows
+     * are gone
+     * @param roomId the room the messages belong to
+     * @param ids the message IDs
+     */
+    public void remove(String roomId, Set<Long> ids) {
+        if (rebuilding) {
+            synchronized (savedDuringRebuild) {
+                savedDuringRebuild.keySet().removeAll(ids);
+            }
+        }
+        RoomIndex room = rooms.get(roomId);
+        if (room != null) {
+            totalBytes.addAndGet(room.remove(ids));
+        }
+    }
+
+    /**
+     * Rank a room's messages against a query; a message matching any term is a hit
+     * @param roomId the room ID
+     * @param query free text, split into terms as message text is
+     * @param offset hits to skip
+     * @param limit maximum hits to return
+     * @return Mono of the page of hits, best first, once the startup rebuild has finished
+     */
+    public Mono<Page> search(String roomId, String query, int offset, int limit) {
+        return ready.asMono().then(Mono.fromSupplier(() -> {
+            RoomIndex room = rooms.get(roomId);
+            if (room == null) {
+                return new Page(List.of(), 0);
+            }
+            return room.search(terms(query).keySet(), offset, limit);
+        }));
+    }
+
+    /**
+     * Split text into lower-case terms of letters and digits
+     * @return term counts in order of first appearance
+     */
+    static Map<String, Integer> terms(String text) {
+        Map<String, Integer> terms = new LinkedHashMap<>();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+            }
+            int termLength = i - start;
+            if (termLength >= MIN_TERM_LENGTH && termLength <= MAX_TERM_LENGTH) {
+                terms.merge(text.substring(start, i).toLowerCase(), 1, Integer::sum);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * A message ID and its relevance to the query
+     */
+    public record Hit(long id, double score) {}
+
+    /**
+     * @param hits this page of hits, best first
+     * @param total hits across all pages
+     */
+    public record Page(List<Hit> hits, int total) {}
+
+    /**
+     * One room's terms and the IDs of the messages it indexes, guarded by its own lock
+     */
+    private final class RoomIndex {
+        private final String roomId;
+        private final Map<String, PostingList> postings = new HashMap<>();
+        // Indexed message IDs in the order they were added, which is close to ID order
+        private long[] ids = new long[64];
+        private int size;
+        // Messages below this ID have been dropped to stay within the budget
+        private long floor = Long.MIN_VALUE;
+        private long bytes;
+
+        private RoomIndex(String roomId) {
+            this.roomId = roomId;
+        }
+
+        /**
+         * @return change in retained bytes
+         */
+        private synchronized long add(long id, Map<String, Integer> terms) {
+            if (id < floor) {
+                return 0;
+            }
+            long before = bytes;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                bytes += size * Long.BYTES;
+            }
+            ids[size++] = id;
+            for (Map.Entry<String, Integer> term : terms.entrySet()) {
+                PostingList list = postings.get(term.getKey());
+                if (list == null) {
+                    list = new PostingList();
+                    postings.put(term.getKey(), list);
+                    bytes += TERM_OVERHEAD_BYTES + 2L * term.getKey().length() + list.capacity();
+                }
+                int capacity = list.capacity();
+                list.add(id, term.getValue());
+                bytes += list.capacity() - capacity;
+            }
+            if (bytes > maxBytesPerRoom) {
+                dropOldest();
+            }
+            return bytes - before;
+        }
+
+        /**
+         * @return change in retained bytes
+         */
+        private synchronized long remove(Set<Long> removed) {
+            long before = bytes;
+            retain(id -> !removed.contains(id));
+            return bytes - before;
+        }
+
+        /**
+         * Drop the oldest quarter of the indexed messages
+         */
+        private void dropOldest() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            long dropBelow = sorted[size / 4];
+            floor = dropBelow;
+            retain(id -> id >= dropBelow);
+            log.debug("Search index for room {} over budget; dropped messages below ID {}, {} left",
+                    roomId, floor, size);
+        }
+
+        /**
+         * Keep only the messages passing the filter, rewriting every posting list
+         */
+        private void retain(LongPredicate keep) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (keep.test(ids[i])) {
+                    ids[kept++] = ids[i];
+                }
+            }
+            size = kept;
+            ids = Arrays.copyOf(ids, Math.max(64, Integer.highestOneBit(Math.max(1, size)) * 2));
+
+            bytes = (long) ids.length * Long.BYTES;
+            postings.entrySet().removeIf(entry -> {
+                PostingList list = entry.getValue().retain(keep);
+                if (list == null) {
+                    return true;
+                }
+                entry.setValue(list);
+                bytes += TERM_OVERHEAD_BYTES + 2L * entry.getKey().length() + list.capacity();
+                return false;
+            });
+        }
+
+        private synchronized Page search(Iterable<String> terms, int offset, int limit) {
+            // BM25 scores, summed over the query terms a message contains
+            Map<Long, Double> scores = new HashMap<>();
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) {
+                    continue;
+                }
+                double idf = Math.log(1 + (size - list.count() + 0.5) / (list.count() + 0.5));
+                list.forEach((id, frequency) ->
+                        scores.merge(id, idf * frequency * (K1 + 1) / (frequency + K1), Double::sum));
+            }
+
+            // Keep only the best offset + limit, ties going to the newer message
+            int wanted = offset + limit;
+            PriorityQueue<Hit> best = new PriorityQueue<>(Math.max(1, Math.min(wanted, scores.size())), BY_RANK);
+            scores.forEach((id, score) -> {
+                Hit hit = new Hit(id, score);
+                if (best.size() < wanted) {
+                    best.add(hit);
+                } else if (BY_RANK.compare(hit, best.peek()) > 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            });
+            List<Hit> ranked = new ArrayList<>(best);
+            ranked.sort(BY_RANK.reversed());
+            List<Hit> page = offset < ranked.size() ? ranked.subList(offset, ranked.size()) : List.of();
+            return new Page(List.copyOf(page), scores.size());
+        }
+    }
+
+    /**
+     * Message IDs containing one term, each stored as a zigzag varint delta from the
+     * previous ID (IDs arrive nearly, but not strictly, in order) followed by a byte
+     * holding the term's count in the message
+     */
+    static final class PostingList {
+        private byte[] data = new byte[8];
+        private int length;
+        private int count;
+        private long lastId;
+
+        int count() {
+            return count;
+        }
+
+        int capacity() {
+            return data.length;
+        }
+
+        void add(long id, int frequency) {
+            // Room for a 10-byte varint and the count
+            if (data.length - length < 11) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 11));
+            }
+            long delta = id - lastId;
+            long zigzag = (delta << 1) ^ (delta >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                data[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            data[length++] = (byte) zigzag;
+            data[length++] = (byte) Math.min(frequency, 255);
+            lastId = id;
+            count++;
+        }
+
+        void forEach(PostingConsumer consumer) {
+            long id = 0;
+            int i = 0;
+            while (i < length) {
+                long zigzag = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[i++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                id += (zigzag >>> 1) ^ -(zigzag & 1);
+                consumer.accept(id, data[i++] & 0xFF);
+            }
+        }
+
+        /**
+         * @return a copy holding only the IDs passing the filter, or null if none are left
+         */
+        PostingList retain(LongPredicate keep) {
+            PostingList kept = new PostingList();
+            forEach((id, frequency) -> {
+                if (keep.test(id)) {
+                    kept.add(id, frequency);
+                }
+            });
+            if (kept.count == 0) {
+                return null;
+            }
+            kept.data = Arrays.copyOf(kept.data, kept.length);
+            return kept;
+        }
+    }
+
+    @FunctionalInterface
+    interface PostingConsumer {
+        void accept(long id, int frequency);
+    }
+}
@@ -0,0 +1,144 @@
+package com.demo.reactive.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.PoolMetrics;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Wrapped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of the chat write path, driven by how many callers are
+ * waiting for a connection from the R2DBC pool. Below the delay threshold a write is
+ * queued straight away; between the thresholds it is held back, rechecking every few
+ * milliseconds, for up to max-delay; at the reject threshold, when max-delay runs out or
+ * when too many writes are already held back, it is rejected. Shedding chat writes early
+ * leaves the saturated pool to history reads and ID allocation.
+ */
+@Component
+public class ChatWriteAdmission {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatWriteAdmission.class);
+
+    private static final Duration RECHECK_INTERVAL = Duration.ofMillis(5);
+
+    // Live view of the pool; null when spring.r2dbc.pool is disabled, which admits everything
+    private final PoolMetrics poolMetrics;
+    private final int delayThreshold;
+    private final int rejectThreshold;
+    private final Duration maxDelay;
+    private final int maxDelayed;
+
+    // Writes currently held back waiting for the pool to drain
+    private final AtomicInteger delayedWrites = new AtomicInteger();
+
+    private final Counter admittedCounter;
+    private final Counter delayedCounter;
+    private final Counter rejectedCounter;
+    private final Timer delayTimer;
+
+    public ChatWriteAdmission(ConnectionFactory connectionFactory,
+                              MeterRegistry registry,
+                              @Value("${chat.persistence.admission.delay-threshold:10}") int delayThreshold,
+                              @Value("${chat.persistence.admission.reject-threshold:40}") int rejectThreshold,
+                              @Value("${chat.persistence.admission.max-delay:200ms}") Duration maxDelay,
+                              @Value("${chat.persistence.admission.max-delayed:1000}") int maxDelayed) {
+        ConnectionPool pool = findPool(connectionFactory);
+        this.poolMetrics = pool != null ? pool.getMetrics().orElse(null) : null;
+        if (poolMetrics == null) {
+            log.warn("No R2DBC connection pool metrics available; chat writes are admitted unconditionally");
+        }
+        this.delayThreshold = delayThreshold;
+        this.rejectThreshold = rejectThreshold;
+        this.maxDelay = maxDelay;
+        this.maxDelayed = maxDelayed;
+
+        this.admittedCounter = decisionCounter(registry, "admitted");
+        this.delayedCounter = decisionCounter(registry, "delayed");
+        this.rejectedCounter = decisionCounter(registry, "rejected");
+        this.delayTimer = Timer.builder("chat.admission.delay")
+                .description("Time a chat write was held back waiting for the connection pool")
+                .register(registry);
+        Gauge.builder("chat.admission.waiting", delayedWrites, AtomicInteger::get)
+                .description("Chat writes currently held back waiting for the connection pool")
+                .register(registry);
+    }
+
+    private static Counter decisionCounter(MeterRegistry registry, String decision) {
+        return Counter.builder("chat.admission")
+                .description("Chat writes by admission decision")
+                .tag("decision", decision)
+                .register(registry);
+    }
+
+    private static ConnectionPool findPool(Object connectionFactory) {
+        if (connectionFactory instanceof ConnectionPool pool) {
+            return pool;
+        }
+        if (connectionFactory instanceof Wrapped<?> wrapped) {
+            return findPool(wrapped.unwrap());
+        }
+        return null;
+    }
+
+    /**
+     * Decide whether a chat write may go ahead
+     * @return Mono completing once the write is admitted, possibly after a delay,
+     *         or failing with an IllegalStateException if it is rejected
+     */
+    public Mono<Void> admit() {
+        return Mono.defer(() -> {
+            int pending = pendingAcquires();
+            if (pending < delayThreshold) {
+                admittedCounter.increment();
+                return Mono.empty();
+            }
+            if (pending >= rejectThreshold) {
+                return reject("database connection pool is saturated (" + pending
+                        + " acquires pending, limit " + rejectThreshold + ")");
+            }
+            if (delayedWrites.incrementAndGet() > maxDelayed) {
+                delayedWrites.decrementAndGet();
+                return reject("database connection pool is busy (" + pending
+                        + " acquires pending) and " + maxDelayed + " writes are already waiting");
+            }
+            long start = System.nanoTime();
+            return Flux.interval(RECHECK_INTERVAL)
+                    .map(tick -> pendingAcquires())
+                    .filter(now -> now < delayThreshold || now >= rejectThreshold)
+                    .next()
+                    .timeout(maxDelay, Mono.fromSupplier(this::pendingAcquires))
+                    .flatMap(now -> {
+                        delayTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                        if (now < delayThreshold) {
+                            delayedCounter.increment();
+                            return Mono.<Void>empty();
+                        }
+                        return reject("database connection pool stayed busy for " + maxDelay.toMillis()
+                                + " ms (" + now + " acquires pending)");
+                    })
+                    .doFinally(signal -> delayedWrites.decrementAndGet());
+        });
+    }
+
+    private Mono<Void> reject(String reason) {
+        rejectedCounter.increment();
+        return Mono.error(new IllegalStateException("Chat write rejected: " + reason));
+    }
+
+    private int pendingAcquires() {
+        return poolMetrics != null ? poolMetrics.pendingAcquireSize() : 0;
+    }
+}
@@ -0,0 +1,196 @@
+package com.demo.reactive.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.search.Search;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters read by {@link MetricsService}, resolved once and re-resolved only when a
+ * meter with one of the tracked names is added to or removed from the registry.
+ * Reading values through the bound handles needs no registry search and no allocation.
+ */
+final class MeterBindings {
+
+    private static final Set<String> TRACKED_NAMES = Set.of(
+            "jvm.memory.used", "jvm.memory.committed", "jvm.memory.max",
+            "jvm.threads.live", "jvm.threads.peak", "jvm.threads.daemon",
+            "reactor.netty.http.server.connections.active",
+            "r2dbc.pool.acquired", "r2dbc.pool.idle", "r2dbc.pool.allocated",
+            "r2dbc.pool.max.allocated", "r2dbc.pool.pending", "r2dbc.pool.acquire",
+            "chat.admission", "chat.admission.waiting",
+            "http.server.requests", "db.query", "db.query.first-row",
+            "chat.pipeline"
+    );
+
+    private final MeterRegistry registry;
+
+    private volatile boolean stale = true;
+    private volatile Bound bound;
+
+    MeterBindings(MeterRegistry registry) {
+        this.registry = registry;
+        registry.config()
+                .onMeterAdded(this::onMeterChanged)
+                .onMeterRemoved(this::onMeterChanged);
+    }
+
+    private void onMeterChanged(Meter meter) {
+        if (TRACKED_NAMES.contains(meter.getId().getName())) {
+            stale = true;
+        }
+    }
+
+    /**
+     * @return the current handles, re-resolving them first if the registry changed
+     */
+    Bound current() {
+        if (stale) {
+            // Clear first so a registration racing with bind() marks us stale again
+            stale = false;
+            bound = bind();
+        }
+        return bound;
+    }
+
+    private Bound bind() {
+        return new Bound(
+                gauges(registry.find("jvm.memory.used").tags("area", "heap")),
+                gauges(registry.find("jvm.memory.committed").tags("area", "heap")),
+                gauges(registry.find("jvm.memory.max").tags("area", "heap")),
+                gauges(registry.find("jvm.memory.used").tags("area", "nonheap")),
+                gauges(registry.find("jvm.threads.live")),
+                gauges(registry.find("jvm.threads.peak")),
+                gauges(registry.find("jvm.threads.daemon")),
+                gauges(registry.find("reactor.netty.http.server.connections.active")),
+                gauges(registry.find("r2dbc.pool.acquired")),
+                gauges(registry.find("r2dbc.pool.idle")),
+                gauges(registry.find("r2dbc.pool.allocated")),
+                gauges(registry.find("r2dbc.pool.max.allocated")),
+                gauges(registry.find("r2dbc.pool.pending")),
+                registry.find("r2dbc.pool.acquire").timers().toArray(new Timer[0]),
+                registry.find("r2dbc.pool.acquire").tag("outcome", "error").timers().toArray(new Timer[0]),
+                registry.find("http.server.requests").timers().toArray(new Timer[0]),
+                dbTimers("success", "error"),
+                dbTimers("error"),
+                dbTimers("cancelled"),
+                registry.find("db.query.first-row").timers().toArray(new Timer[0]),
+                chatStageTimers("success", "error"),
+                chatStageTimers("error"),
+                admissionCounters("admitted"),
+                admissionCounters("delayed"),
+                admissionCounters("rejected"),
+                gauges(registry.find("chat.admission.waiting"))
+        );
+    }
+
+    /**
+     * @return chat.pipeline timers with the given outcomes, indexed by stage ordinal
+     */
+    private Timer[][] chatStageTimers(String... outcomes) {
+        Set<String> wanted = Set.of(outcomes);
+        ChatPipelineMetrics.Stage[] stages = ChatPipelineMetrics.Stage.values();
+        Timer[][] timers = new Timer[stages.length][];
+        for (ChatPipelineMetrics.Stage stage : stages) {
+            timers[stage.ordinal()] = registry.find("chat.pipeline").tag("stage", stage.tag()).timers().stream()
+                    .filter(timer -> wanted.contains(timer.getId().getTag("outcome")))
+                    .toArray(Timer[]::new);
+        }
+        return timers;
+    }
+
+    private Counter[] admissionCounters(String decision) {
+        return registry.find("chat.admission").tag("decision", decision).counters().toArray(new Counter[0]);
+    }
+
+    private Timer[] dbTimers(String... outcomes) {
+        Set<String> wanted = Set.of(outcomes);
+        return registry.find("db.query").timers().stream()
+                .filter(timer -> wanted.contains(timer.getId().getTag("outcome")))
+                .toArray(Timer[]::new);
+    }
+
+    private static Gauge[] gauges(Search search) {
+        return search.gauges().toArray(new Gauge[0]);
+    }
+
+    /**
+     * Handles resolved by one bind pass. Memory gauges are per pool, so they are summed.
+     */
+    record Bound(
+            Gauge[] heapUsed,
+            Gauge[] heapCommitted,
+            Gauge[] heapMax,
+            Gauge[] nonHeapUsed,
+            Gauge[] liveThreads,
+            Gauge[] peakThreads,
+            Gauge[] daemonThreads,
+            Gauge[] nettyActiveConnections,
+            Gauge[] poolAcquired,
+            Gauge[] poolIdle,
+            Gauge[] poolAllocated,
+            Gauge[] poolMaxAllocated,
+            Gauge[] poolPending,
+            Timer[] poolAcquireTimers,      // success and error
+            Timer[] poolAcquireErrorTimers,
+            Timer[] httpTimers,
+            Timer[] dbTimers,           // completed queries: success and error
+            Timer[] dbErrorTimers,
+            Timer[] dbCancelledTimers,
+            Timer[] dbFirstRowTimers,
+            Timer[][] chatStageTimers,      // by stage ordinal: success and error
+            Timer[][] chatStageErrorTimers,
+            Counter[] admissionAdmitted,
+            Counter[] admissionDelayed,
+            Counter[] admissionRejected,
+            Gauge[] admissionWaiting
+    ) {}
+
+    /**
+     * Sum of the gauges, skipping undefined values (e.g. a pool with no max reports -1)
+     */
+    static long sum(Gauge[] gauges) {
+        long total = 0;
+        for (Gauge gauge : gauges) {
+            double value = gauge.value();
+            if (value > 0) {
+                total += (long) value;
+            }
+        }
+        return total;
+    }
+
+    static long count(Counter[] counters) {
+        double total = 0;
+        for (Counter counter : counters) {
+            total += counter.count();
+        }
+        return (long) total;
+    }
+
+    static long count(Timer[] timers) {
+        long total = 0;
+        for (Timer timer : timers) {
+            total += timer.count();
+        }
+        return total;
+    }
+
+    /**
+     * Mean across all timers, weighted by their counts
+     */
+    static double mean(Timer[] timers, TimeUnit unit) {
+        long count = 0;
+        double totalTime = 0;
+        for (Timer timer : timers) {
+            count += timer.count();
+            totalTime += timer.totalTime(unit);
+        }
+        return count > 0 ? totalTime / count : 0.0;
+    }
+}
@@ -1,87 +1,190 @@
 package com.demo.reactive.service;
 
 import com.demo.reactive.model.MetricsSnapshot;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
-import io.micrometer.core.instrument.search.Search;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class MetricsService {
 
-    private final MeterRegistry registry;
+    private static final Logger log = LoggerFactory.getLogger(MetricsService.class);
 
-    public MetricsService(MeterRegistry registry) {
-        this.registry = registry;
+    private final MeterBindings meterBindings;
+    private final int maxStreamSubscribers;
+
+    // One sampler shared by every stream subscriber; runs only while someone is subscribed
+    private final Flux<MetricsSnapshot> sharedSnapshots;
+    private final AtomicInteger streamSubscribers = new AtomicInteger();
+
+    // Trailing-window rate and latency engines, fed per request / per query
+    private final SlidingWindowHistogram httpLatency = new SlidingWindowHistogram(300);
+    private final SlidingWindowHistogram dbLatency = new SlidingWindowHistogram(300);
+    private final SlidingWindowHistogram poolAcquireLatency = new SlidingWindowHistogram(300);
+    private final SlidingWindowHistogram[] chatStageLatency;   // by chat pipeline stage ordinal
+
+    public MetricsService(MeterRegistry registry,
+                          @Value("${metrics.stream.interval:2s}") Duration sampleInterval,
+                          @Value("${metrics.stream.max-subscribers:500}") int maxStreamSubscribers) {
+        this.meterBindings = new MeterBindings(registry);
+        this.chatStageLatency = new SlidingWindowHistogram[ChatPipelineMetrics.Stage.values().length];
+        for (int i = 0; i < chatStageLatency.length; i++) {
+            chatStageLatency[i] = new SlidingWindowHistogram(300);
+        }
+        this.maxStreamSubscribers = maxStreamSubscribers;
+        this.sharedSnapshots = Flux.interval(sampleInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> getCurrentMetrics())
+                .replay(1)
+                .refCount();
+        Gauge.builder("metrics.stream.subscribers", streamSubscribers, AtomicInteger::get)
+                .description("Clients subscribed to the shared metrics stream")
+                .register(registry);
     }
 
-    public Mono<MetricsSnapshot> getCurrentMetrics() {
-        return Mono.fromSupplier(() -> {
-            long timestamp = Instant.now().toEpochMilli();
-            
-            // JVM Metrics
-            long heapUsed = (long) getGaugeValue("jvm.memory.used", "area", "heap");
-            long heapCommitted = (long) getGaugeValue("jvm.memory.committed", "area", "heap");
-            long heapMax = (long) getGaugeValue("jvm.memory.max", "area", "heap");
-            long nonHeapUsed = (long) getGaugeValue("jvm.memory.used", "area", "nonheap");
-            
-            int activeThreads = (int) getGaugeValue("jvm.threads.live");
-            int peakThreads = (int) getGaugeValue("jvm.threads.peak");
-            int daemonThreads = (int) getGaugeValue("jvm.threads.daemon");
-
-            MetricsSnapshot.JvmMetrics jvm = new MetricsSnapshot.JvmMetrics(
-                heapUsed, heapCommitted, heapMax, nonHeapUsed,
-                activeThreads, peakThreads, daemonThreads
-            );
-
-            // HTTP Metrics
-            Timer httpTimer = registry.find("http.server.requests").timer();
-            long totalRequests = httpTimer != null ? httpTimer.count() : 0;
-            double avgResponseTime = httpTimer != null ? httpTimer.mean(TimeUnit.MILLISECONDS) : 0.0;
-            // Simple approximation for RPS (this would ideally be a rate over time)
-            double requestsPerSecond = httpTimer != null ? httpTimer.count() / Math.max(1, (System.currentTimeMillis() - 0) / 1000.0) : 0.0; 
-            // Note: Real RPS calculation requires a sliding window or rate aggregation which Micrometer handles but exposing raw rate might need more logic.
-            // For this demo, we might just use the count or a simple calculation if available.
-            // Let's try to get a rate if possible, or just send the count and let frontend calculate rate.
-            // Actually, let's just use the count for now and maybe 0 for RPS if not easily available without more complex setup.
-            
-            // Active connections might be available via other metrics depending on the server (Netty)
-            // reactor.netty.http.server.connections.active
-            long activeConnections = (long) getGaugeValue("reactor.netty.http.server.connections.active");
-
-            MetricsSnapshot.HttpMetrics http = new MetricsSnapshot.HttpMetrics(
-                totalRequests,
-                0.0, // Placeholder for RPS
-                avgResponseTime,
-                activeConnections
-            );
-
-            // DB Metrics
-            Timer dbTimer = registry.find("db.query").timer();
-            double avgQueryTime = dbTimer != null ? dbTimer.mean(TimeUnit.MILLISECONDS) : 0.0;
-            long totalQueries = dbTimer != null ? dbTimer.count() : 0;
-            
-            // Active connections - R2DBC pool metrics might be available if exposed
-            // r2dbc.pool.acquired
-            long dbActiveConnections = (long) getGaugeValue("r2dbc.pool.acquired");
-
-            MetricsSnapshot.DbMetrics db = new MetricsSnapshot.DbMetrics(
-                avgQueryTime, dbActiveConnections, totalQueries
-            );
-
-            return new MetricsSnapshot(timestamp, jvm, http, db);
+    /**
+     * Subscribe to the shared metrics sampler.
+     * Each snapshot is computed once per tick for all subscribers; a subscriber that
+     * falls behind receives only the latest snapshot rather than a backlog.
+     * @return Flux of snapshots, or an error if the subscriber limit is reached
+     */
+    public Flux<MetricsSnapshot> streamMetrics() {
+        return Flux.defer(() -> {
+            if (streamSubscribers.incrementAndGet() > maxStreamSubscribers) {
+                streamSubscribers.decrementAndGet();
+                log.warn("Rejecting metrics stream subscriber; limit of {} reached", maxStreamSubscribers);
+                return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many metrics stream subscribers"));
+            }
+            return sharedSnapshots
+                    .onBackpressureLatest()
+                    .doFinally(signal -> streamSubscribers.decrementAndGet());
         });
     }
 
-    private double getGaugeValue(String name, String... tags) {
-        Search search = registry.find(name);
-        if (tags.length > 0) {
-            search.tags(tags);
-        }
-        return search.gauge() != null ? search.gauge().value() : 0.0;
+    /**
+     * Record a completed HTTP request in the sliding-window engine
+     */
+    public void recordHttpRequest(long durationNanos) {
+        httpLatency.record(durationNanos);
+    }
+
+    /**
+     * Record a completed repository query in the sliding-window engine
+     */
+    public void recordDbQuery(long durationNanos) {
+        dbLatency.record(durationNanos);
+    }
+
+    /**
+     * Record how long a caller waited for a pooled connection in the sliding-window engine
+     */
+    public void recordPoolAcquire(long durationNanos) {
+        poolAcquireLatency.record(durationNanos);
+    }
+
+    /**
+     * Record the time one chat message spent in a pipeline stage in the sliding-window engine
+     */
+    public void recordChatStage(ChatPipelineMetrics.Stage stage, long durationNanos) {
+        chatStageLatency[stage.ordinal()].record(durationNanos);
+    }
+
+    public Mono<MetricsSnapshot> getCurrentMetrics() {
+        return Mono.fromSupplier(this::snapshot);
+    }
+
+    /**
+     * Assemble a snapshot from the pre-resolved meter handles
+     */
+    MetricsSnapshot snapshot() {
+        long timestamp = System.currentTimeMillis();
+        MeterBindings.Bound meters = meterBindings.current();
+
+        // JVM Metrics
+        MetricsSnapshot.JvmMetrics jvm = new MetricsSnapshot.JvmMetrics(
+            MeterBindings.sum(meters.heapUsed()),
+            MeterBindings.sum(meters.heapCommitted()),
+            MeterBindings.sum(meters.heapMax()),
+            MeterBindings.sum(meters.nonHeapUsed()),
+            (int) MeterBindings.sum(meters.liveThreads()),
+            (int) MeterBindings.sum(meters.peakThreads()),
+            (int) MeterBindings.sum(meters.daemonThreads())
+        );
+
+        // HTTP Metrics
+        MetricsSnapshot.LatencyWindows httpWindows = httpLatency.windows();
+        MetricsSnapshot.HttpMetrics http = new MetricsSnapshot.HttpMetrics(
+            MeterBindings.count(meters.httpTimers()),
+            httpWindows.last10s().ratePerSecond(),
+            MeterBindings.mean(meters.httpTimers(), TimeUnit.MILLISECONDS),
+            // Only reported when running on Reactor Netty
+            MeterBindings.sum(meters.nettyActiveConnections()),
+            httpWindows
+        );
+
+        // DB Metrics
+        MetricsSnapshot.PoolMetrics pool = new MetricsSnapshot.PoolMetrics(
+            MeterBindings.sum(meters.poolAcquired()),
+            MeterBindings.sum(meters.poolIdle()),
+            MeterBindings.sum(meters.poolAllocated()),
+            MeterBindings.sum(meters.poolMaxAllocated()),
+            MeterBindings.sum(meters.poolPending()),
+            MeterBindings.count(meters.poolAcquireTimers()),
+            MeterBindings.count(meters.poolAcquireErrorTimers()),
+            MeterBindings.mean(meters.poolAcquireTimers(), TimeUnit.MILLISECONDS),
+            poolAcquireLatency.windows()
+        );
+        MetricsSnapshot.AdmissionMetrics admission = new MetricsSnapshot.AdmissionMetrics(
+            MeterBindings.count(meters.admissionAdmitted()),
+            MeterBindings.count(meters.admissionDelayed()),
+            MeterBindings.count(meters.admissionRejected()),
+            MeterBindings.sum(meters.admissionWaiting())
+        );
+        MetricsSnapshot.LatencyWindows dbWindows = dbLatency.windows();
+        MetricsSnapshot.DbMetrics db = new MetricsSnapshot.DbMetrics(
+            MeterBindings.mean(meters.dbTimers(), TimeUnit.MILLISECONDS),
+            MeterBindings.sum(meters.poolAcquired()),
+            MeterBindings.count(meters.dbTimers()),
+            MeterBindings.count(meters.dbErrorTimers()),
+            MeterBindings.count(meters.dbCancelledTimers()),
+            MeterBindings.mean(meters.dbFirstRowTimers(), TimeUnit.MILLISECONDS),
+            dbWindows.last10s().ratePerSecond(),
+            dbWindows,
+            pool,
+            admission
+        );
+
+        // Chat pipeline metrics
+        MetricsSnapshot.ChatMetrics chat = new MetricsSnapshot.ChatMetrics(
+            stage(meters, ChatPipelineMetrics.Stage.DECODE),
+            stage(meters, ChatPipelineMetrics.Stage.PERSIST),
+            stage(meters, ChatPipelineMetrics.Stage.BROADCAST),
+            stage(meters, ChatPipelineMetrics.Stage.TOTAL),
+            stage(meters, ChatPipelineMetrics.Stage.WRITE)
+        );
+
+        return new MetricsSnapshot(timestamp, jvm, http, db, chat);
+    }
+
+    private MetricsSnapshot.StageMetrics stage(MeterBindings.Bound meters, ChatPipelineMetrics.Stage stage) {
+        int index = stage.ordinal();
+        return new MetricsSnapshot.StageMetrics(
+            MeterBindings.count(meters.chatStageTimers()[index]),
+            MeterBindings.count(meters.chatStageErrorTimers()[index]),
+            MeterBindings.mean(meters.chatStageTimers()[index], TimeUnit.MILLISECONDS),
+            chatStageLatency[index].windows()
+        );
     }
 }
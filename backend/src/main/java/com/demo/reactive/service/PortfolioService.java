@@ -0,0 +1,433 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.PortfolioValuation;
+import com.demo.reactive.model.StockTransaction;
+import com.demo.reactive.repository.StockTransactionRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live portfolio valuation. Holdings are kept in memory only for users with an open
+ * stream: they are rebuilt from stock_transactions on the first subscription, updated as
+ * new transactions are recorded, and dropped when the last subscriber leaves. On each
+ * price tick only the portfolios holding a symbol whose price moved are revalued.
+ */
+@Service
+public class PortfolioService {
+
+    private static final Logger log = LoggerFactory.getLogger(PortfolioService.class);
+
+    public static final String BUY = "BUY";
+    public static final String SELL = "SELL";
+
+    private static final Comparator<PortfolioValuation.Position> LARGEST_PNL_FIRST =
+            Comparator.comparingLong((PortfolioValuation.Position position) -> Math.abs(position.unrealizedPnl())).reversed();
+
+    private final StockTransactionRepository transactionRepository;
+    private final StockPriceService stockPriceService;
+    private final List<String> symbols;
+
+    // Portfolios of users with at least one open stream
+    private final Map<String, Portfolio> portfolios = new ConcurrentHashMap<>();
+    // Active portfolios holding each symbol, indexed as in StockPriceService
+    private final List<Set<Portfolio>> holders;
+
+    // Ticker thread only
+    private long[] lastPrices;
+    private final List<Portfolio> dirty = new ArrayList<>();
+
+    private final Timer revalueTimer;
+    private Disposable tickSubscription;
+
+    public PortfolioService(StockTransactionRepository transactionRepository,
+                            StockPriceService stockPriceService,
+                            MeterRegistry registry) {
+        this.transactionRepository = transactionRepository;
+        this.stockPriceService = stockPriceService;
+
+        this.symbols = stockPriceService.symbols();
+        this.holders = new ArrayList<>(symbols.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            holders.add(ConcurrentHashMap.newKeySet());
+        }
+
+        this.revalueTimer = Timer.builder("portfolio.revalue")
+                .description("Time to revalue and publish the portfolios affected by one price tick")
+                .register(registry);
+        Gauge.builder("portfolio.active", portfolios, Map::size)
+                .description("Portfolios held in memory for streaming")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void subscribeToPrices() {
+        tickSubscription = stockPriceService.ticks()
+                .subscribe(tick -> revalueTimer.record(() -> onTick(tick)));
+    }
+
+    @PreDestroy
+    void unsubscribeFromPrices() {
+        tickSubscription.dispose();
+    }
+
+    /**
+     * Validate and save a transaction, then apply it to the user's live portfolio if one is open
+     * @param transaction the transaction; a missing (zero) price means the current market price
+     * @return Mono of the saved transaction
+     */
+    public Mono<StockTransaction> recordTransaction(StockTransaction transaction) {
+        return Mono.defer(() -> {
+            validate(transaction);
+            return transactionRepository.save(transaction);
+        }).doOnNext(saved -> {
+            Portfolio portfolio = portfolios.get(saved.getUserId());
+            if (portfolio != null) {
+                portfolio.apply(saved);
+            }
+        });
+    }
+
+    /**
+     * @return true if the user's portfolio is currently held in memory
+     */
+    public boolean isStreaming(String userId) {
+        return portfolios.containsKey(userId);
+    }
+
+    /**
+     * Rebuild the live portfolios of these users from the database, e.g. after a bulk
+     * ingest wrote transactions without going through {@link #recordTransaction}
+     * @param userIds users whose portfolios changed; those without a live portfolio are skipped
+     */
+    public void reload(Collection<String> userIds) {
+        for (String userId : userIds) {
+            Portfolio portfolio = portfolios.get(userId);
+            if (portfolio != null && portfolio.reset()) {
+                load(portfolio);
+            }
+        }
+    }
+
+    /**
+     * Get a user's transactions, newest first
+     */
+    public Flux<StockTransaction> getTransactions(String userId) {
+        return transactionRepository.findByUserIdOrderByCreatedAtDesc(userId);
+    }
+
+    /**
+     * Stream a user's portfolio valuation, updated on every trade and every price move
+     * of a held symbol. A subscriber that falls behind receives only the latest valuation.
+     * @param userId the user ID
+     * @return Flux of valuations, starting with the current one
+     */
+    public Flux<PortfolioValuation> streamPortfolio(String userId) {
+        return Flux.defer(() -> {
+            Portfolio portfolio = acquire(userId);
+            return portfolio.valuations.asFlux()
+                    .onBackpressureLatest()
+                    .doFinally(signal -> release(portfolio));
+        });
+    }
+
+    private void validate(StockTransaction transaction) {
+        if (transaction.getUserId() == null || transaction.getUserId().isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "userId is required");
+        }
+        int index = transaction.getSymbol() != null ? stockPriceService.indexOf(transaction.getSymbol()) : -1;
+        if (index < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown symbol: " + transaction.getSymbol());
+        }
+        if (transaction.getQuantity() == null || transaction.getQuantity() <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "quantity must be positive");
+        }
+        String type = transaction.getTransactionType() != null ? transaction.getTransactionType().toUpperCase() : BUY;
+        if (!BUY.equals(type) && !SELL.equals(type)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "transactionType must be BUY or SELL");
+        }
+        transaction.setTransactionType(type);
+        if (transaction.getPricePerShare() == 0) {
+            transaction.setPricePerShare(stockPriceService.latest().priceCents()[index]);
+        } else if (transaction.getPricePerShare() < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "pricePerShare must be positive");
+        }
+        transaction.setId(null);
+        transaction.setCreatedAt(LocalDateTime.now());
+    }
+
+    private Portfolio acquire(String userId) {
+        Portfolio[] created = new Portfolio[1];
+        Portfolio portfolio = portfolios.compute(userId, (id, existing) -> {
+            Portfolio current = existing != null ? existing : (created[0] = new Portfolio(id));
+            current.subscribers++;
+            return current;
+        });
+        if (created[0] != null) {
+            load(portfolio);
+        }
+        return portfolio;
+    }
+
+    private void load(Portfolio portfolio) {
+        int generation = portfolio.generation();
+        log.debug("Loading portfolio for user {}", portfolio.userId);
+        transactionRepository.findByUserIdOrderByCreatedAtAscIdAsc(portfolio.userId)
+                .collectList()
+                .subscribe(history -> portfolio.load(generation, history), error -> {
+                    log.error("Could not load portfolio for user {}: {}", portfolio.userId, error.getMessage());
+                    portfolios.remove(portfolio.userId, portfolio);
+                    portfolio.fail(error);
+                });
+    }
+
+    private void release(Portfolio portfolio) {
+        portfolios.computeIfPresent(portfolio.userId, (id, existing) -> {
+            if (existing != portfolio || --portfolio.subscribers > 0) {
+                return existing;
+            }
+            portfolio.close();
+            log.debug("Dropped portfolio for user {}", id);
+            return null;
+        });
+    }
+
+    private void onTick(StockPriceService.PriceTick tick) {
+        long[] prices = tick.priceCents();
+        for (int i = 0; i < prices.length; i++) {
+            if (lastPrices != null && lastPrices[i] == prices[i]) {
+                continue;
+            }
+            for (Portfolio portfolio : holders.get(i)) {
+                if (portfolio.reprice(i, prices[i]) && !portfolio.queued) {
+                    portfolio.queued = true;
+                    dirty.add(portfolio);
+                }
+            }
+        }
+        lastPrices = prices;
+        for (Portfolio portfolio : dirty) {
+            portfolio.queued = false;
+            portfolio.publish(tick.timestamp());
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Holding of one symbol; money is kept in cents
+     */
+    private static final class Position {
+        private final String symbol;
+        private final int index;
+        private long quantity;
+        private long costCents;
+        private long priceCents;
+
+        private Position(String symbol, int index, long priceCents) {
+            this.symbol = symbol;
+            this.index = index;
+            this.priceCents = priceCents;
+        }
+
+        private long marketValue() {
+            return quantity * priceCents;
+        }
+    }
+
+    /**
+     * In-memory holdings of one user. Trades and reprices run under the portfolio's lock;
+     * the subscriber count is guarded by the portfolios map's compute.
+     */
+    private final class Portfolio {
+        private final String userId;
+        private final Sinks.Many<PortfolioValuation> valuations = Sinks.many().replay().latest();
+        private final Map<String, Position> positions = new HashMap<>();
+        private int subscribers;
+        private boolean queued;   // ticker thread only
+
+        private List<StockTransaction> pending = new ArrayList<>();   // trades recorded while loading
+        private int generation;   // bumped by reset so a superseded load is ignored
+        private boolean loaded;
+        private boolean closed;
+        private long marketValue;
+        private long costBasis;
+
+        private Portfolio(String userId) {
+            this.userId = userId;
+        }
+
+        private synchronized int generation() {
+            return generation;
+        }
+
+        /**
+         * Forget all holdings ahead of a reload; trades recorded meanwhile are buffered again
+         * @return false if the portfolio is already closed
+         */
+        private synchronized boolean reset() {
+            if (closed) {
+                return false;
+            }
+            for (Position position : positions.values()) {
+                if (position.index >= 0) {
+                    holders.get(position.index).remove(this);
+                }
+            }
+            positions.clear();
+            marketValue = 0;
+            costBasis = 0;
+            pending = new ArrayList<>();
+            loaded = false;
+            generation++;
+            return true;
+        }
+
+        private synchronized void load(int expectedGeneration, List<StockTransaction> history) {
+            if (closed || expectedGeneration != generation) {
+                return;
+            }
+            Set<Long> loadedIds = new HashSet<>(history.size() * 2);
+            for (StockTransaction transaction : history) {
+                loadedIds.add(transaction.getId());
+                trade(transaction);
+            }
+            for (StockTransaction transaction : pending) {
+                if (!loadedIds.contains(transaction.getId())) {
+                    trade(transaction);
+                }
+            }
+            pending = null;
+            loaded = true;
+            publish(System.currentTimeMillis());
+        }
+
+        private synchronized void fail(Throwable error) {
+            closed = true;
+            valuations.tryEmitError(error);
+        }
+
+        private synchronized void apply(StockTransaction transaction) {
+            if (closed) {
+                return;
+            }
+            if (!loaded) {
+                pending.add(transaction);
+                return;
+            }
+            trade(transaction);
+            publish(System.currentTimeMillis());
+        }
+
+        /**
+         * Average-cost accounting: a sell removes its share of the cost basis
+         */
+        private void trade(StockTransaction transaction) {
+            Position position = positions.get(transaction.getSymbol());
+            if (position == null) {
+                if (!BUY.equals(transaction.getTransactionType())) {
+                    return;
+                }
+                int index = stockPriceService.indexOf(transaction.getSymbol());
+                long price = index >= 0 ? stockPriceService.latest().priceCents()[index] : 0;
+                position = new Position(transaction.getSymbol(), index, price);
+                positions.put(position.symbol, position);
+                if (index >= 0) {
+                    holders.get(index).add(this);
+                }
+            }
+
+            marketValue -= position.marketValue();
+            costBasis -= position.costCents;
+            long quantity = transaction.getQuantity();
+            if (BUY.equals(transaction.getTransactionType())) {
+                position.quantity += quantity;
+                position.costCents += quantity * transaction.getPricePerShare();
+            } else {
+                long sold = Math.min(quantity, position.quantity);
+                position.costCents -= position.costCents * sold / position.quantity;
+                position.quantity -= sold;
+            }
+            if (position.index < 0) {
+                // Not on the feed: value at cost
+                position.priceCents = position.quantity > 0 ? position.costCents / position.quantity : 0;
+            }
+
+            if (position.quantity == 0) {
+                positions.remove(position.symbol);
+                if (position.index >= 0) {
+                    holders.get(position.index).remove(this);
+                }
+                return;
+            }
+            marketValue += position.marketValue();
+            costBasis += position.costCents;
+        }
+
+        /**
+         * @return true if the portfolio's value changed
+         */
+        private synchronized boolean reprice(int index, long priceCents) {
+            if (!loaded || closed) {
+                return false;
+            }
+            Position position = positions.get(symbols.get(index));
+            if (position == null || position.priceCents == priceCents) {
+                return false;
+            }
+            marketValue += position.quantity * (priceCents - position.priceCents);
+            position.priceCents = priceCents;
+            return true;
+        }
+
+        private synchronized void publish(long timestamp) {
+            if (closed) {
+                return;
+            }
+            List<PortfolioValuation.Position> view = new ArrayList<>(positions.size());
+            for (Position position : positions.values()) {
+                view.add(new PortfolioValuation.Position(
+                        position.symbol,
+                        position.quantity,
+                        position.costCents / position.quantity,
+                        position.priceCents,
+                        position.marketValue(),
+                        position.marketValue() - position.costCents));
+            }
+            view.sort(LARGEST_PNL_FIRST);
+            valuations.tryEmitNext(new PortfolioValuation(userId, timestamp,
+                    marketValue, costBasis, marketValue - costBasis, view));
+        }
+
+        private synchronized void close() {
+            closed = true;
+            for (Position position : positions.values()) {
+                if (position.index >= 0) {
+                    holders.get(position.index).remove(this);
+                }
+            }
+            valuations.tryEmitComplete();
+        }
+    }
+}
@@ -1,48 +1,119 @@
 package com.demo.reactive.service;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Service;
 import org.springframework.web.socket.messaging.SessionConnectEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
+/**
+ * Tracks who is in which room and tells the room about it.
+ * Joins and leaves are coalesced per room over a short window and broadcast as a
+ * delta of user names with a sequence number; a client that sees a gap in the sequence
+ * asks for a snapshot. Rooms that changed also get a full snapshot periodically.
+ * In a cluster, users on other nodes are merged in, and each node sends its own clients
+ * deltas of the merged view.
+ */
 @Service
 public class PresenceService {
     
     private static final Logger log = LoggerFactory.getLogger(PresenceService.class);
 
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatBroadcaster chatBroadcaster;
+    private final ChatCluster cluster;
+    private final Duration coalesceWindow;
+    private final Duration snapshotInterval;
 
-    public PresenceService(SimpMessagingTemplate messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+    private final Counter deltaCounter;
+    private final Counter snapshotCounter;
+
+    private Disposable snapshotTask;
+
+    public PresenceService(ChatBroadcaster chatBroadcaster,
+                           ChatCluster cluster,
+                           MeterRegistry registry,
+                           @Value("${chat.presence.coalesce-window:100ms}") Duration coalesceWindow,
+                           @Value("${chat.presence.snapshot-interval:30s}") Duration snapshotInterval) {
+        this.chatBroadcaster = chatBroadcaster;
+        this.cluster = cluster;
+        this.coalesceWindow = coalesceWindow;
+        this.snapshotInterval = snapshotInterval;
+
+        this.deltaCounter = Counter.builder("chat.presence.broadcasts").tag("type", PresenceUpdate.DELTA)
+                .description("Presence updates sent to rooms")
+                .register(registry);
+        this.snapshotCounter = Counter.builder("chat.presence.broadcasts").tag("type", PresenceUpdate.SNAPSHOT)
+                .description("Presence updates sent to rooms")
+                .register(registry);
     }
     
     // Map of session ID to user information
     private final Map<String, UserPresence> sessions = new ConcurrentHashMap<>();
     
-    // Map of room ID to set of session IDs
-    private final Map<String, Set<String>> roomSessions = new ConcurrentHashMap<>();
+    // Map of room ID to the users in it, reference-counted by session
+    private final Map<String, RoomIndex> rooms = new ConcurrentHashMap<>();
+
+    // Map of room ID to what the room's subscribers have been told so far
+    private final Map<String, RoomBroadcast> broadcasts = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void startSnapshots() {
+        cluster.attach(new ClusterMembers());
+        snapshotTask = Flux.interval(snapshotInterval, snapshotInterval)
+                .onBackpressureDrop()
+                .subscribe(tick -> broadcasts.values().forEach(RoomBroadcast::snapshotIfChanged));
+    }
+
+    @PreDestroy
+    void stopSnapshots() {
+        snapshotTask.dispose();
+    }
     
     /**
      * Handle user joining a room
      */
     public void userJoined(String sessionId, String roomId, String userName) {
+        if (userName == null || userName.isBlank()) {
+            log.warn("Ignoring join to room {} without a user name from session {}", roomId, sessionId);
+            return;
+        }
         log.info("User {} joined room {} with session {}", userName, roomId, sessionId);
         
-        UserPresence presence = new UserPresence(sessionId, userName, roomId);
-        sessions.put(sessionId, presence);
-        
-        roomSessions.computeIfAbsent(roomId, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
-        
-        broadcastPresenceUpdate(roomId);
+        UserPresence previous = sessions.put(sessionId, new UserPresence(sessionId, userName, roomId));
+        if (previous != null) {
+            // The session switched rooms or names; release what it held before
+            leave(previous);
+        }
+
+        // compute() holds the room's bin lock, so this cannot race with the room being removed
+        rooms.compute(roomId, (id, room) -> {
+            RoomIndex index = room != null ? room : new RoomIndex();
+            if (index.add(userName)) {
+                cluster.localPresence(roomId, userName, true);
+            }
+            return index;
+        });
+        presenceChanged(roomId, userName);
     }
     
     /**
@@ -53,59 +124,75 @@ public class PresenceService {
         if (presence != null) {
             log.info("User {} left room {} with session {}", 
                      presence.userName, presence.roomId, sessionId);
-            
-            String roomId = presence.roomId;
-            Set<String> roomSessionSet = roomSessions.get(roomId);
-            if (roomSessionSet != null) {
-                roomSessionSet.remove(sessionId);
-                if (roomSessionSet.isEmpty()) {
-                    roomSessions.remove(roomId);
-                }
-            }
-            
-            broadcastPresenceUpdate(roomId);
+            leave(presence);
         }
     }
+
+    private void leave(UserPresence presence) {
+        // Returning null from computeIfPresent drops the room once its last session leaves
+        rooms.computeIfPresent(presence.roomId, (id, room) -> {
+            boolean occupied = room.remove(presence.userName);
+            if (!room.users.contains(presence.userName)) {
+                cluster.localPresence(id, presence.userName, false);
+            }
+            return occupied ? room : null;
+        });
+        presenceChanged(presence.roomId, presence.userName);
+    }
     
     /**
-     * Get active users in a room
+     * Get active users in a room, on this node and any other in the cluster
+     * @return read-only view of the distinct user names; live unless users are on more than one node
      */
     public Set<String> getActiveUsers(String roomId) {
-        Set<String> sessionIds = roomSessions.get(roomId);
-        if (sessionIds == null) {
-            return Set.of();
+        RoomIndex room = rooms.get(roomId);
+        Set<String> local = room != null ? room.users : Set.of();
+        Set<String> remote = cluster.remoteUsers(roomId);
+        if (remote.isEmpty()) {
+            return local;
         }
-        
-        return sessionIds.stream()
-                .map(sessions::get)
-                .filter(presence -> presence != null)
-                .map(presence -> presence.userName)
-                .collect(Collectors.toSet());
+        if (local.isEmpty()) {
+            return remote;
+        }
+        Set<String> merged = new HashSet<>(local);
+        merged.addAll(remote);
+        return Collections.unmodifiableSet(merged);
     }
     
     /**
-     * Get user count for a room
+     * Get the number of distinct users in a room; a user with several sessions or on several nodes counts once
      */
     public int getUserCount(String roomId) {
-        Set<String> sessionIds = roomSessions.get(roomId);
-        return sessionIds != null ? sessionIds.size() : 0;
+        return getActiveUsers(roomId).size();
     }
     
     /**
-     * Broadcast presence update to all users in a room
+     * Get the presence state last broadcast to a room, for clients resynchronising
+     * @param roomId the room ID
+     * @return snapshot carrying the sequence number of the last delta
      */
-    private void broadcastPresenceUpdate(String roomId) {
-        PresenceUpdate update = new PresenceUpdate(
-                getActiveUsers(roomId),
-                getUserCount(roomId)
-        );
-        
-        log.debug("Broadcasting presence update for room {}: {} users", 
-                  roomId, update.userCount);
-        
-        messagingTemplate.convertAndSend("/topic/presence/" + roomId, update);
+    public PresenceUpdate snapshot(String roomId) {
+        RoomBroadcast room = broadcasts.get(roomId);
+        return room != null ? room.snapshot() : PresenceUpdate.snapshot(0, Set.of(), 0);
     }
-    
+
+    /**
+     * Note a change and make sure the room is flushed once the coalescing window closes
+     */
+    private void presenceChanged(String roomId, String userName) {
+        while (true) {
+            RoomBroadcast room = broadcasts.computeIfAbsent(roomId, RoomBroadcast::new);
+            Boolean schedule = room.touch(userName);
+            if (schedule == null) {
+                continue;   // the room emptied and was retired meanwhile; start a fresh one
+            }
+            if (schedule) {
+                Schedulers.parallel().schedule(room::flush, coalesceWindow.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+    }
+
     /**
      * Handle WebSocket connection event
      */
@@ -128,8 +215,151 @@ public class PresenceService {
         userLeft(sessionId);
     }
     
+    /**
+     * Broadcast state of one room. Flushes and snapshots run under the room's lock so
+     * sequence numbers reach the transport in order.
+     */
+    private final class RoomBroadcast {
+        private final String roomId;
+        private final Set<String> touched = new HashSet<>();   // names changed since the last flush
+        private final Set<String> announced = new HashSet<>();
+        private long seq;
+        private boolean flushScheduled;
+        private boolean changedSinceSnapshot;
+        private boolean retired;
+
+        private RoomBroadcast(String roomId) {
+            this.roomId = roomId;
+        }
+
+        /**
+         * @return true if the caller must schedule a flush, null if the room was retired
+         */
+        private synchronized Boolean touch(String userName) {
+            if (retired) {
+                return null;
+            }
+            touched.add(userName);
+            if (flushScheduled) {
+                return false;
+            }
+            flushScheduled = true;
+            return true;
+        }
+
+        private synchronized void flush() {
+            flushScheduled = false;
+            Set<String> current = getActiveUsers(roomId);
+
+            Set<String> joined = new HashSet<>();
+            Set<String> left = new HashSet<>();
+            for (String userName : touched) {
+                boolean present = current.contains(userName);
+                if (present && announced.add(userName)) {
+                    joined.add(userName);
+                } else if (!present && announced.remove(userName)) {
+                    left.add(userName);
+                }
+            }
+            touched.clear();
+            if (!joined.isEmpty() || !left.isEmpty()) {
+                changedSinceSnapshot = true;
+                log.debug("Broadcasting presence delta {} for room {}: +{} -{}", seq + 1, roomId, joined, left);
+                chatBroadcaster.broadcast("/topic/presence/" + roomId,
+                        PresenceUpdate.delta(++seq, joined, left, announced.size()));
+                deltaCounter.increment();
+            }
+
+            // Also when nothing was broadcast: a join and leave inside one window announce nobody
+            if (announced.isEmpty()) {
+                retired = true;
+                broadcasts.remove(roomId, this);
+            }
+        }
+
+        private synchronized PresenceUpdate snapshot() {
+            return PresenceUpdate.snapshot(seq, Set.copyOf(announced), announced.size());
+        }
+
+        private synchronized void snapshotIfChanged() {
+            if (!changedSinceSnapshot) {
+                return;
+            }
+            changedSinceSnapshot = false;
+            chatBroadcaster.broadcast("/topic/presence/" + roomId, snapshot());
+            snapshotCounter.increment();
+        }
+    }
+
+    /**
+     * This node's rooms as the cluster sees them
+     */
+    private final class ClusterMembers implements ChatCluster.PresenceMembers {
+        @Override
+        public void forEachRoom(BiConsumer<String, Set<String>> consumer) {
+            for (String roomId : rooms.keySet()) {
+                rooms.computeIfPresent(roomId, (id, room) -> {
+                    consumer.accept(id, room.users);
+                    return room;
+                });
+            }
+        }
+
+        @Override
+        public void remoteChanged(String roomId, String userName) {
+            presenceChanged(roomId, userName);
+        }
+    }
+
+    /**
+     * Users in one room with the number of sessions each has open. Mutated only inside
+     * {@code rooms.compute}, which serialises writers per room; readers use {@link #users}.
+     */
+    private static final class RoomIndex {
+        private final Map<String, Integer> sessionCounts = new ConcurrentHashMap<>();
+        private final Set<String> users = Collections.unmodifiableSet(sessionCounts.keySet());
+
+        /**
+         * @return true if this is the user's first session in the room
+         */
+        private boolean add(String userName) {
+            return sessionCounts.merge(userName, 1, Integer::sum) == 1;
+        }
+
+        /**
+         * @return false once the room has no sessions left
+         */
+        private boolean remove(String userName) {
+            sessionCounts.computeIfPresent(userName, (name, count) -> count > 1 ? count - 1 : null);
+            return !sessionCounts.isEmpty();
+        }
+    }
+
     // Inner classes for data structures
     private record UserPresence(String sessionId, String userName, String roomId) {}
-    
-    public record PresenceUpdate(Set<String> activeUsers, int userCount) {}
+
+    /**
+     * Presence message sent on /topic/presence/{roomId}. A delta lists the names that
+     * joined or left since sequence {@code seq - 1}; a snapshot lists everyone as of {@code seq}.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record PresenceUpdate(
+            String type,
+            long seq,
+            Set<String> activeUsers,
+            Set<String> joined,
+            Set<String> left,
+            int userCount
+    ) {
+        public static final String DELTA = "delta";
+        public static final String SNAPSHOT = "snapshot";
+
+        static PresenceUpdate delta(long seq, Set<String> joined, Set<String> left, int userCount) {
+            return new PresenceUpdate(DELTA, seq, null, joined, left, userCount);
+        }
+
+        static PresenceUpdate snapshot(long seq, Set<String> activeUsers, int userCount) {
+            return new PresenceUpdate(SNAPSHOT, seq, activeUsers, null, null, userCount);
+        }
+    }
 }
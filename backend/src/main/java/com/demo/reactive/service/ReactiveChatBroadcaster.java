@@ -0,0 +1,206 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.config.SmileEncoding;
+import com.demo.reactive.model.ChatFrame;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * In-process topic broker for the native reactive WebSocket transport.
+ * Each destination is a multicast sink that exists only while it has subscribers;
+ * a broadcast is serialized once per encoding its subscribers use (JSON, Smile) and
+ * handed to that destination's subscribers only, each of which drains through its own
+ * bounded buffer. Subscriptions are reported to
+ * {@link ChatCluster} so other nodes know which rooms to forward here.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.transport", havingValue = "reactive")
+public class ReactiveChatBroadcaster implements ChatBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(ReactiveChatBroadcaster.class);
+
+    private static final Sinks.EmitFailureHandler RETRY_ON_CONTENTION =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    private final ObjectMapper objectMapper;
+    private final ObjectMapper smileMapper;
+    private final ChatCluster cluster;
+    private final int subscriberBufferSize;
+
+    private final Map<String, Topic> topics = new ConcurrentHashMap<>();
+
+    private final Timer broadcastTimer;
+    private final Counter droppedCounter;
+
+    public ReactiveChatBroadcaster(ObjectMapper objectMapper,
+                                   SmileEncoding smile,
+                                   ChatCluster cluster,
+                                   MeterRegistry registry,
+                                   @Value("${chat.reactive.subscriber-buffer:256}") int subscriberBufferSize) {
+        this.objectMapper = objectMapper;
+        this.smileMapper = smile.mapper();
+        this.cluster = cluster;
+        this.subscriberBufferSize = subscriberBufferSize;
+        this.broadcastTimer = Timer.builder("chat.broadcast")
+                .description("Time to hand one event to the transport for fan-out")
+                .tag("transport", "reactive")
+                .register(registry);
+        this.droppedCounter = Counter.builder("chat.broadcast.dropped")
+                .description("Frames dropped because a subscriber's buffer was full")
+                .tag("transport", "reactive")
+                .register(registry);
+        Gauge.builder("chat.reactive.topics", topics, Map::size).register(registry);
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+        Topic topic = topics.get(destination);
+        if (topic == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        EncodedFrame frame = encode(ChatFrame.message(destination, payload));
+        // Serialize here rather than on the first subscriber's thread; an encoding whose first
+        // subscriber arrives meanwhile is serialized when that subscriber needs it
+        if (topic.uses(Encoding.JSON) && frame.json() == null
+                || topic.uses(Encoding.SMILE) && frame.smile() == null) {
+            return;
+        }
+        topic.sink.emitNext(frame, RETRY_ON_CONTENTION);
+        broadcastTimer.record(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * Subscribe to a destination's serialized frames
+     * @param destination the topic, e.g. /topic/chat/general
+     * @param encoding the encoding the subscriber reads
+     * @return Flux of frames, serialized in that encoding before they are emitted; a
+     *         subscriber that falls more than the buffer size behind loses its oldest frames
+     */
+    public Flux<EncodedFrame> subscribe(String destination, Encoding encoding) {
+        return Flux.defer(() -> {
+            Topic topic = topics.compute(destination, (key, existing) -> {
+                Topic current = existing != null ? existing : new Topic();
+                current.subscribers++;
+                current.encodings.incrementAndGet(encoding.ordinal());
+                return current;
+            });
+            cluster.subscribed(destination);
+            return topic.sink.asFlux()
+                    .onBackpressureBuffer(subscriberBufferSize,
+                            dropped -> droppedCounter.increment(),
+                            BufferOverflowStrategy.DROP_OLDEST)
+                    .doFinally(signal -> release(destination, topic, encoding));
+        });
+    }
+
+    /**
+     * Wrap a frame addressed to one session, to be serialized in the encoding it reads
+     */
+    public EncodedFrame encode(ChatFrame frame) {
+        return new EncodedFrame(frame);
+    }
+
+    private void release(String destination, Topic topic, Encoding encoding) {
+        topics.computeIfPresent(destination, (key, current) -> {
+            if (current != topic) {
+                return current;
+            }
+            current.encodings.decrementAndGet(encoding.ordinal());
+            return --current.subscribers == 0 ? null : current;
+        });
+        cluster.unsubscribed(destination);
+    }
+
+    /**
+     * Wire encodings a WebSocket session can ask for as its subprotocol; JSON without one
+     */
+    public enum Encoding {
+        JSON("json"),
+        SMILE("smile");
+
+        private final String subProtocol;
+
+        Encoding(String subProtocol) {
+            this.subProtocol = subProtocol;
+        }
+
+        public String subProtocol() {
+            return subProtocol;
+        }
+
+        public static Encoding forSubProtocol(String subProtocol) {
+            return SMILE.subProtocol.equals(subProtocol) ? SMILE : JSON;
+        }
+    }
+
+    /**
+     * A frame with its serialized forms, each written at most once however many
+     * subscribers read it. A form that cannot be written is logged and comes back null.
+     */
+    public final class EncodedFrame {
+        private final ChatFrame frame;
+        private volatile String json;
+        private volatile byte[] smile;
+
+        private EncodedFrame(ChatFrame frame) {
+            this.frame = frame;
+        }
+
+        public String json() {
+            String encoded = json;
+            if (encoded == null) {
+                try {
+                    encoded = objectMapper.writeValueAsString(frame);
+                    json = encoded;
+                } catch (JsonProcessingException e) {
+                    log.error("Could not serialize {} frame for {}: {}", frame.type(), frame.destination(), e.getMessage());
+                }
+            }
+            return encoded;
+        }
+
+        public byte[] smile() {
+            byte[] encoded = smile;
+            if (encoded == null) {
+                try {
+                    encoded = smileMapper.writeValueAsBytes(frame);
+                    smile = encoded;
+                } catch (JsonProcessingException e) {
+                    log.error("Could not serialize {} frame for {} as Smile: {}",
+                            frame.type(), frame.destination(), e.getMessage());
+                }
+            }
+            return encoded;
+        }
+    }
+
+    private static final class Topic {
+        private final Sinks.Many<EncodedFrame> sink = Sinks.many().multicast().directBestEffort();
+        // Guarded by the topics map's per-key compute
+        private int subscribers;
+        // Subscribers per encoding; written under the same compute, read by broadcasts without it
+        private final AtomicIntegerArray encodings = new AtomicIntegerArray(Encoding.values().length);
+
+        private boolean uses(Encoding encoding) {
+            return encodings.get(encoding.ordinal()) > 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.MetricsSnapshot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free sliding-window rate and latency histogram.
+ * Keeps one log-linear histogram per second in a fixed ring, so memory is constant
+ * regardless of traffic. A slot is reclaimed by CAS on its epoch-second stamp; a few
+ * samples racing with that reset may be lost, which is acceptable for monitoring.
+ */
+final class SlidingWindowHistogram {
+
+    // Four sub-buckets per power of two gives at most ~25% relative error per bin
+    private static final int SUB_BUCKETS = 4;
+    // Highest tracked octave: 2^27 µs ≈ 134 s; anything slower lands in the last bin
+    private static final int MAX_OCTAVE = 27;
+    static final int BINS = (MAX_OCTAVE - 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final int slots;
+    private final AtomicLongArray stamps;
+    private final AtomicLongArray counts;
+
+    /**
+     * @param maxWindowSeconds the longest window that will be queried
+     */
+    SlidingWindowHistogram(int maxWindowSeconds) {
+        // One extra slot for the second currently being filled
+        this.slots = maxWindowSeconds + 1;
+        this.stamps = new AtomicLongArray(slots);
+        this.counts = new AtomicLongArray(slots * BINS);
+    }
+
+    void record(long durationNanos) {
+        record(durationNanos, System.currentTimeMillis());
+    }
+
+    void record(long durationNanos, long nowMillis) {
+        long second = nowMillis / 1000;
+        int slot = (int) (second % slots);
+        long stamp = stamps.get(slot);
+        if (stamp != second) {
+            if (stamp > second) {
+                return;   // the slot already moved on; this sample is too old to matter
+            }
+            if (stamps.compareAndSet(slot, stamp, second)) {
+                int base = slot * BINS;
+                for (int i = 0; i < BINS; i++) {
+                    counts.set(base + i, 0);
+                }
+            }
+        }
+        counts.incrementAndGet(slot * BINS + bin(TimeUnit.NANOSECONDS.toMicros(durationNanos)));
+    }
+
+    /**
+     * Summarise the last {@code seconds} complete seconds
+     */
+    MetricsSnapshot.LatencyWindow window(int seconds) {
+        return window(seconds, System.currentTimeMillis());
+    }
+
+    MetricsSnapshot.LatencyWindow window(int seconds, long nowMillis) {
+        long now = nowMillis / 1000;
+        long[] merged = new long[BINS];
+        long total = 0;
+        for (long second = now - seconds; second < now; second++) {
+            int slot = (int) (second % slots);
+            if (stamps.get(slot) != second) {
+                continue;
+            }
+            int base = slot * BINS;
+            for (int i = 0; i < BINS; i++) {
+                long count = counts.get(base + i);
+                merged[i] += count;
+                total += count;
+            }
+        }
+        return new MetricsSnapshot.LatencyWindow(
+                (double) total / seconds,
+                percentile(merged, total, 0.50),
+                percentile(merged, total, 0.95),
+                percentile(merged, total, 0.99),
+                total
+        );
+    }
+
+    MetricsSnapshot.LatencyWindows windows() {
+        long now = System.currentTimeMillis();
+        return new MetricsSnapshot.LatencyWindows(window(10, now), window(60, now), window(300, now));
+    }
+
+    /**
+     * @return the midpoint of the bin holding the requested rank, in milliseconds
+     */
+    private static double percentile(long[] bins, long total, double quantile) {
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < bins.length; i++) {
+            seen += bins[i];
+            if (seen >= rank) {
+                return (lowerBound(i) + lowerBound(i + 1)) / 2.0 / 1000.0;
+            }
+        }
+        return lowerBound(bins.length) / 1000.0;
+    }
+
+    static int bin(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+        int octave = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (octave - 2)) & (SUB_BUCKETS - 1);
+        return Math.min((octave - 1) * SUB_BUCKETS + sub, BINS - 1);
+    }
+
+    static long lowerBound(int bin) {
+        if (bin < SUB_BUCKETS) {
+            return bin;
+        }
+        int octave = bin / SUB_BUCKETS + 1;
+        int sub = bin % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (octave - 2);
+    }
+}
@@ -0,0 +1,232 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.StockPrice;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulated market feed. One ticker moves every symbol once per tick and publishes an
+ * immutable {@link PriceTick} that all subscribers share; prices live in primitive arrays
+ * indexed by symbol and each price is serialized once per tick, not once per subscriber.
+ */
+@Service
+public class StockPriceService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockPriceService.class);
+
+    private final ObjectMapper objectMapper;
+    private final Duration tickInterval;
+    private final double maxMove;
+    private final int maxStreamSubscribers;
+
+    private final String[] symbols;
+    private final Map<String, Integer> indexBySymbol = new HashMap<>();
+
+    // Written only by the ticker thread; subscribers read the published ticks
+    private final long[] priceCents;
+    private final long[] openCents;
+
+    // Replays the latest tick so new subscribers see prices immediately
+    private final Sinks.Many<PriceTick> ticks = Sinks.many().replay().latest();
+    private final AtomicInteger streamSubscribers = new AtomicInteger();
+    private final Timer tickTimer;
+
+    private volatile PriceTick latest;
+    private Disposable ticker;
+
+    public StockPriceService(ObjectMapper objectMapper,
+                             MeterRegistry registry,
+                             @Value("${stocks.symbols:AAPL,GOOGL,MSFT,AMZN,TSLA}") List<String> symbols,
+                             @Value("${stocks.tick-interval:500ms}") Duration tickInterval,
+                             @Value("${stocks.max-move:0.02}") double maxMove,
+                             @Value("${stocks.stream.max-subscribers:10000}") int maxStreamSubscribers) {
+        this.objectMapper = objectMapper;
+        this.tickInterval = tickInterval;
+        this.maxMove = maxMove;
+        this.maxStreamSubscribers = maxStreamSubscribers;
+
+        this.symbols = symbols.toArray(new String[0]);
+        this.priceCents = new long[this.symbols.length];
+        this.openCents = new long[this.symbols.length];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < this.symbols.length; i++) {
+            indexBySymbol.put(this.symbols[i], i);
+            priceCents[i] = random.nextLong(5_000, 50_000);
+            openCents[i] = priceCents[i];
+        }
+
+        this.tickTimer = Timer.builder("stocks.tick")
+                .description("Time to move, encode and publish all prices for one tick")
+                .register(registry);
+        Gauge.builder("stocks.stream.subscribers", streamSubscribers, AtomicInteger::get)
+                .description("Clients subscribed to the shared price stream")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void startTicker() {
+        latest = encode(System.currentTimeMillis());
+        ticks.tryEmitNext(latest);
+        ticker = Flux.interval(tickInterval, tickInterval)
+                .onBackpressureDrop()
+                .subscribe(tick -> tickTimer.record(this::tick));
+    }
+
+    @PreDestroy
+    void stopTicker() {
+        ticker.dispose();
+        ticks.tryEmitComplete();
+    }
+
+    /**
+     * @return the tracked symbols, in index order
+     */
+    public List<String> symbols() {
+        return List.of(symbols);
+    }
+
+    /**
+     * @return the index of a symbol in every {@link PriceTick}, or -1 if it is not tracked
+     */
+    public int indexOf(String symbol) {
+        return indexBySymbol.getOrDefault(symbol, -1);
+    }
+
+    /**
+     * @return the most recently published tick
+     */
+    public PriceTick latest() {
+        return latest;
+    }
+
+    /**
+     * Shared feed of ticks, replaying the latest to each new subscriber
+     */
+    public Flux<PriceTick> ticks() {
+        return ticks.asFlux();
+    }
+
+    /**
+     * Subscribe to the shared price stream as pre-encoded JSON arrays.
+     * A subscriber that falls behind skips straight to the latest tick, which carries
+     * the latest price of every symbol.
+     * @param filter symbols to include; all symbols when empty
+     * @return Flux of JSON arrays of {@link StockPrice}, or an error if the subscriber limit is reached
+     */
+    public Flux<String> streamPrices(Collection<String> filter) {
+        int[] selected = resolve(filter);
+        return Flux.defer(() -> {
+            if (streamSubscribers.incrementAndGet() > maxStreamSubscribers) {
+                streamSubscribers.decrementAndGet();
+                log.warn("Rejecting stock stream subscriber; limit of {} reached", maxStreamSubscribers);
+                return Flux.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                        "Too many stock stream subscribers"));
+            }
+            return ticks.asFlux()
+                    .onBackpressureLatest()
+                    .map(tick -> tick.toJson(selected))
+                    .doFinally(signal -> streamSubscribers.decrementAndGet());
+        });
+    }
+
+    private int[] resolve(Collection<String> filter) {
+        if (filter == null || filter.isEmpty()) {
+            return null;
+        }
+        List<String> wanted = filter.stream().map(String::trim).distinct().toList();
+        int[] selected = new int[wanted.size()];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = indexOf(wanted.get(i));
+            if (selected[i] < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown symbol: " + wanted.get(i));
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Move every price by up to ±maxMove and publish the result
+     */
+    private void tick() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < priceCents.length; i++) {
+            double move = (random.nextDouble() * 2 - 1) * maxMove;
+            priceCents[i] = Math.max(1, Math.round(priceCents[i] * (1 + move)));
+        }
+        latest = encode(System.currentTimeMillis());
+        ticks.emitNext(latest, Sinks.EmitFailureHandler.FAIL_FAST);
+    }
+
+    private PriceTick encode(long timestamp) {
+        StockPrice[] prices = new StockPrice[symbols.length];
+        String[] encoded = new String[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            double changePercent = (priceCents[i] - openCents[i]) * 100.0 / openCents[i];
+            prices[i] = new StockPrice(symbols[i], priceCents[i],
+                    Math.round(changePercent * 100) / 100.0, timestamp);
+            try {
+                encoded[i] = objectMapper.writeValueAsString(prices[i]);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Could not encode price for " + symbols[i], e);
+            }
+        }
+        return new PriceTick(timestamp, priceCents.clone(), List.of(prices), encoded, join(encoded, null));
+    }
+
+    /**
+     * Prices of every symbol at one instant, indexed as in {@link #symbols()}
+     * @param priceCents prices in cents
+     * @param prices the same prices as model objects
+     * @param encoded the JSON form of each price
+     * @param allJson the JSON array of every price, built once and shared by unfiltered subscribers
+     */
+    public record PriceTick(long timestamp, long[] priceCents, List<StockPrice> prices, String[] encoded,
+                            String allJson) {
+
+        /**
+         * @param selected symbol indexes to include, or null for all
+         * @return a JSON array built from the pre-encoded prices
+         */
+        public String toJson(int[] selected) {
+            return selected != null ? join(encoded, selected) : allJson;
+        }
+    }
+
+    /**
+     * @param selected symbol indexes to include, or null for all
+     * @return a JSON array of the pre-encoded prices
+     */
+    private static String join(String[] encoded, int[] selected) {
+        int count = selected != null ? selected.length : encoded.length;
+        StringBuilder json = new StringBuilder(64 * count).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(encoded[selected != null ? selected[i] : i]);
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,206 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.IngestResult;
+import com.demo.reactive.model.Money;
+import com.demo.reactive.model.StockTransaction;
+import com.demo.reactive.repository.StockTransactionRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bulk load of stock transactions from NDJSON, one transaction per line.
+ * Lines are read only as fast as chunks are written, so a large upload is held back by
+ * the socket rather than buffered in memory. Each chunk is validated line by line and
+ * written with one multi-row insert; its result is streamed back as soon as it commits.
+ */
+@Service
+public class StockTransactionIngestService {
+
+    private static final Logger log = LoggerFactory.getLogger(StockTransactionIngestService.class);
+
+    // Column limits from schema.sql
+    private static final int MAX_USER_ID_LENGTH = 100;
+    private static final int MAX_SYMBOL_LENGTH = 10;
+    private static final long MAX_PRICE_CENTS = 99_999_999_99L;
+
+    private final StockTransactionRepository transactionRepository;
+    private final PortfolioService portfolioService;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int writeConcurrency;
+
+    private final Counter insertedCounter;
+    private final Counter rejectedCounter;
+    private final Timer chunkTimer;
+
+    public StockTransactionIngestService(StockTransactionRepository transactionRepository,
+                                         PortfolioService portfolioService,
+                                         ObjectMapper objectMapper,
+                                         MeterRegistry registry,
+                                         @Value("${stocks.ingest.chunk-size:500}") int chunkSize,
+                                         @Value("${stocks.ingest.write-concurrency:2}") int writeConcurrency) {
+        this.transactionRepository = transactionRepository;
+        this.portfolioService = portfolioService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.writeConcurrency = writeConcurrency;
+
+        this.insertedCounter = Counter.builder("stocks.ingest.rows").tag("result", "inserted")
+                .description("Transaction lines processed by bulk ingest")
+                .register(registry);
+        this.rejectedCounter = Counter.builder("stocks.ingest.rows").tag("result", "rejected")
+                .description("Transaction lines processed by bulk ingest")
+                .register(registry);
+        this.chunkTimer = Timer.builder("stocks.ingest.chunk")
+                .description("Time to write one chunk of ingested transactions")
+                .register(registry);
+    }
+
+    /**
+     * Ingest an NDJSON request body
+     * @param body the request body; read on a bounded-elastic thread as chunks are written
+     * @return Flux of per-chunk results, in input order
+     */
+    public Flux<IngestResult> ingest(InputStream body) {
+        Flux<String> lines = Flux.using(
+                        () -> new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)),
+                        reader -> Flux.fromStream(reader.lines()),
+                        StockTransactionIngestService::closeQuietly)
+                .subscribeOn(Schedulers.boundedElastic());
+        return ingest(lines);
+    }
+
+    /**
+     * Ingest NDJSON lines
+     * @param lines one JSON transaction per line; blank lines are skipped
+     * @return Flux of per-chunk results, in input order
+     */
+    public Flux<IngestResult> ingest(Flux<String> lines) {
+        // Only users with a live portfolio are remembered, so memory does not grow with the upload
+        Set<String> streamingUsers = ConcurrentHashMap.newKeySet();
+        return lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .map(line -> parse(line.getT1() + 1, line.getT2()))
+                .buffer(chunkSize)
+                .index()
+                .flatMapSequential(chunk -> write(chunk.getT1(), chunk.getT2(), streamingUsers), writeConcurrency)
+                .doFinally(signal -> portfolioService.reload(streamingUsers));
+    }
+
+    private Mono<IngestResult> write(long chunk, List<ParsedLine> lines, Set<String> streamingUsers) {
+        List<StockTransaction> valid = new ArrayList<>(lines.size());
+        List<IngestResult.Rejection> rejections = new ArrayList<>();
+        for (ParsedLine line : lines) {
+            if (line.error() != null) {
+                rejections.add(new IngestResult.Rejection(line.number(), line.error()));
+            } else {
+                valid.add(line.transaction());
+            }
+        }
+        long firstLine = lines.get(0).number();
+        long lastLine = lines.get(lines.size() - 1).number();
+
+        Timer.Sample sample = Timer.start();
+        return transactionRepository.insertAll(valid)
+                .map(inserted -> {
+                    sample.stop(chunkTimer);
+                    for (StockTransaction transaction : valid) {
+                        if (portfolioService.isStreaming(transaction.getUserId())) {
+                            streamingUsers.add(transaction.getUserId());
+                        }
+                    }
+                    insertedCounter.increment(inserted);
+                    rejectedCounter.increment(rejections.size());
+                    return new IngestResult(chunk, firstLine, lastLine, inserted.intValue(), rejections.size(), rejections);
+                })
+                .onErrorResume(error -> {
+                    // The chunk is one statement, so nothing from it was written
+                    log.error("Bulk insert of lines {}-{} failed: {}", firstLine, lastLine, error.getMessage());
+                    String reason = "Insert failed: " + error.getMessage();
+                    List<IngestResult.Rejection> all = new ArrayList<>(lines.size());
+                    for (ParsedLine line : lines) {
+                        all.add(new IngestResult.Rejection(line.number(), line.error() != null ? line.error() : reason));
+                    }
+                    rejectedCounter.increment(all.size());
+                    return Mono.just(new IngestResult(chunk, firstLine, lastLine, 0, all.size(), all));
+                });
+    }
+
+    private ParsedLine parse(long number, String json) {
+        StockTransaction transaction;
+        try {
+            transaction = objectMapper.readValue(json, StockTransaction.class);
+        } catch (JsonProcessingException e) {
+            return new ParsedLine(number, null, "Malformed JSON: " + e.getOriginalMessage());
+        }
+        String error = validate(transaction);
+        return new ParsedLine(number, error == null ? transaction : null, error);
+    }
+
+    /**
+     * Check a transaction against the table's constraints, normalising it in place
+     * @return the reason it is invalid, or null
+     */
+    private static String validate(StockTransaction transaction) {
+        String userId = transaction.getUserId();
+        if (userId == null || userId.isBlank() || userId.length() > MAX_USER_ID_LENGTH) {
+            return "userId must be 1-" + MAX_USER_ID_LENGTH + " characters";
+        }
+        String symbol = transaction.getSymbol();
+        if (symbol == null || symbol.isBlank() || symbol.length() > MAX_SYMBOL_LENGTH) {
+            return "symbol must be 1-" + MAX_SYMBOL_LENGTH + " characters";
+        }
+        if (transaction.getQuantity() == null || transaction.getQuantity() <= 0) {
+            return "quantity must be positive";
+        }
+        String type = transaction.getTransactionType() != null ? transaction.getTransactionType().toUpperCase() : null;
+        if (!PortfolioService.BUY.equals(type) && !PortfolioService.SELL.equals(type)) {
+            return "transactionType must be BUY or SELL";
+        }
+        // More than two decimal places is already rejected by the JSON codec
+        long price = transaction.getPricePerShare();
+        if (price <= 0 || price > MAX_PRICE_CENTS) {
+            return "pricePerShare must be between 0.01 and " + Money.format(MAX_PRICE_CENTS);
+        }
+        transaction.setId(null);
+        transaction.setTransactionType(type);
+        if (transaction.getCreatedAt() == null) {
+            transaction.setCreatedAt(LocalDateTime.now());
+        }
+        return null;
+    }
+
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.debug("Could not close ingest body: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * One input line: either a valid transaction or the reason it was rejected
+     */
+    private record ParsedLine(long number, StockTransaction transaction, String error) {}
+}
@@ -0,0 +1,89 @@
+package com.demo.reactive.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Broadcasts through the STOMP simple broker configured in WebSocketConfig.
+ * In a cluster it also tells {@link ChatCluster} which destinations the broker's
+ * sessions subscribe to, as the broker keeps that to itself.
+ */
+@Service
+@ConditionalOnProperty(name = "chat.transport", havingValue = "stomp", matchIfMissing = true)
+public class StompChatBroadcaster implements ChatBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatCluster cluster;
+    private final Timer broadcastTimer;
+
+    // Session ID to its subscription IDs and their destinations; kept only in a cluster
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+
+    public StompChatBroadcaster(SimpMessagingTemplate messagingTemplate, ChatCluster cluster, MeterRegistry registry) {
+        this.messagingTemplate = messagingTemplate;
+        this.cluster = cluster;
+        this.broadcastTimer = Timer.builder("chat.broadcast")
+                .description("Time to hand one event to the transport for fan-out")
+                .tag("transport", "stomp")
+                .register(registry);
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+        broadcastTimer.record(() -> messagingTemplate.convertAndSend(destination, payload));
+    }
+
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        if (!cluster.isEnabled()) {
+            return;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (accessor.getSessionId() == null || accessor.getSubscriptionId() == null || destination == null) {
+            return;
+        }
+        String previous = subscriptions.computeIfAbsent(accessor.getSessionId(), id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), destination);
+        cluster.subscribed(destination);
+        if (previous != null) {
+            cluster.unsubscribed(previous);
+        }
+    }
+
+    @EventListener
+    public void handleUnsubscribe(SessionUnsubscribeEvent event) {
+        if (!cluster.isEnabled()) {
+            return;
+        }
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> session = accessor.getSessionId() != null ? subscriptions.get(accessor.getSessionId()) : null;
+        String destination = session != null && accessor.getSubscriptionId() != null
+                ? session.remove(accessor.getSubscriptionId()) : null;
+        if (destination != null) {
+            cluster.unsubscribed(destination);
+        }
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        if (!cluster.isEnabled()) {
+            return;
+        }
+        Map<String, String> session = subscriptions.remove(event.getSessionId());
+        if (session != null) {
+            session.values().forEach(cluster::unsubscribed);
+        }
+    }
+}
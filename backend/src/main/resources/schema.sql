@@ -9,6 +9,12 @@ CREATE TABLE IF NOT EXISTS chat_messages (
 
 CREATE INDEX IF NOT EXISTS idx_room_created ON chat_messages(room_id, created_at DESC);
 
+-- Oldest-first scan for the archive job
+CREATE INDEX IF NOT EXISTS idx_created ON chat_messages(created_at);
+
+-- Hi/lo block sequence for chat message IDs assigned before the batched insert
+CREATE SEQUENCE IF NOT EXISTS chat_messages_id_block_seq START WITH 1;
+
 -- Users Table
 CREATE TABLE IF NOT EXISTS users (
   id BIGSERIAL PRIMARY KEY,
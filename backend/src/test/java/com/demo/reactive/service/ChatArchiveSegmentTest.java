@@ -0,0 +1,101 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatCursor;
+import com.demo.reactive.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChatArchiveSegmentTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 2, 3, 0, 0, 123_456_789);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackWhatItWrote() throws Exception {
+        // More than one block for the busy room, written out of order
+        List<ChatMessage> general = messages("general", 1, ChatArchiveSegment.BLOCK_MESSAGES * 2 + 5);
+        List<ChatMessage> random = List.of(message("random", 1_000, 7, "ünïcödé ✓"));
+        List<ChatMessage> all = new ArrayList<>(general);
+        all.addAll(random);
+        Collections.shuffle(all);
+
+        Path path = directory.resolve("chat-test.seg");
+        ChatArchiveSegment.write(path, all);
+        ChatArchiveSegment segment = ChatArchiveSegment.open(path);
+
+        assertThat(segment.messageCount()).isEqualTo(general.size() + random.size());
+        assertThat(segment.maxId()).isEqualTo(1_000);
+        assertThat(segment.first("general")).isEqualTo(ChatCursor.of(general.get(0)));
+        assertThat(segment.last("general")).isEqualTo(ChatCursor.of(general.get(general.size() - 1)));
+        assertThat(segment.first("missing")).isNull();
+        assertThat(flatten(segment.after("general", null)))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(general);
+        assertThat(flatten(segment.after("random", null)))
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactlyElementsOf(random);
+        assertThat(Files.exists(directory.resolve("chat-test.seg.tmp"))).isFalse();
+    }
+
+    @Test
+    void readsEitherWayFromACursor() throws Exception {
+        List<ChatMessage> general = messages("general", 1, 300);
+        Path path = directory.resolve("chat-test.seg");
+        ChatArchiveSegment segment = ChatArchiveSegment.write(path, general);
+        ChatCursor cursor = ChatCursor.of(general.get(150));
+
+        List<ChatMessage> older = flatten(segment.before("general", cursor));
+        assertThat(older).extracting(ChatMessage::getId)
+                .containsExactlyElementsOf(ids(general.subList(0, 150), true));
+
+        List<ChatMessage> newer = flatten(segment.after("general", cursor));
+        assertThat(newer).extracting(ChatMessage::getId)
+                .containsExactlyElementsOf(ids(general.subList(151, 300), false));
+    }
+
+    @Test
+    void rejectsAFileThatIsNotASegment() throws Exception {
+        Path path = directory.resolve("chat-broken.seg");
+        Files.write(path, new byte[64]);
+
+        assertThatThrownBy(() -> ChatArchiveSegment.open(path)).hasMessageContaining("Not a chat archive segment");
+    }
+
+    static List<ChatMessage> messages(String roomId, long firstId, int count) {
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(message(roomId, firstId + i, i, "message " + i));
+        }
+        return messages;
+    }
+
+    static ChatMessage message(String roomId, long id, long seconds, String text) {
+        return new ChatMessage(id, roomId, "user-" + (id % 5), text, START.plusSeconds(seconds));
+    }
+
+    private static List<ChatMessage> flatten(Iterable<List<ChatMessage>> blocks) {
+        List<ChatMessage> messages = new ArrayList<>();
+        blocks.forEach(messages::addAll);
+        return messages;
+    }
+
+    private static List<Long> ids(List<ChatMessage> messages, boolean newestFirst) {
+        List<Long> ids = new ArrayList<>(messages.stream().map(ChatMessage::getId).toList());
+        if (newestFirst) {
+            Collections.reverse(ids);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,82 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatCursor;
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static com.demo.reactive.service.ChatArchiveSegmentTest.message;
+import static com.demo.reactive.service.ChatArchiveSegmentTest.messages;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatArchiveTest {
+
+    private final ChatMessageRepository repository = mock(ChatMessageRepository.class);
+    private final ChatSearchIndex searchIndex = mock(ChatSearchIndex.class);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void mergesOverlappingSegmentsWithoutDuplicates() throws Exception {
+        // The first job stopped before deleting 6..10, so the next one archived them again
+        // along with 11, written late into the same span with the same createdAt as 4
+        List<ChatMessage> first = messages("general", 1, 10);
+        List<ChatMessage> second = new ArrayList<>(first.subList(5, 10));
+        second.add(message("general", 11, 3, "late"));
+        ChatArchiveSegment.write(directory.resolve("chat-a-1.seg"), first);
+        ChatArchiveSegment.write(directory.resolve("chat-a-6.seg"), second);
+
+        ChatArchive archive = archive();
+        archive.openSegments();
+
+        assertThat(archive.before("general", null).map(ChatMessage::getId).collectList().block())
+                .containsExactly(10L, 9L, 8L, 7L, 6L, 5L, 11L, 4L, 3L, 2L, 1L);
+        assertThat(archive.after("general", ChatCursor.of(first.get(2))).map(ChatMessage::getId).collectList().block())
+                .containsExactly(4L, 11L, 5L, 6L, 7L, 8L, 9L, 10L);
+        assertThat(archive.maxArchivedId()).isEqualTo(11);
+    }
+
+    @Test
+    void archivedMessagesLeaveTheSearchIndex() throws Exception {
+        LocalDateTime hour = LocalDateTime.now().minusDays(3).truncatedTo(ChronoUnit.HOURS);
+        List<ChatMessage> rows = List.of(
+                new ChatMessage(1L, "general", "alice", "one", hour.plusMinutes(1)),
+                new ChatMessage(2L, "random", "bob", "two", hour.plusMinutes(2)),
+                new ChatMessage(3L, "general", "carol", "three", hour.plusMinutes(3)));
+        when(repository.findOldestBefore(any(), anyInt())).thenReturn(Flux.fromIterable(rows), Flux.empty());
+        when(repository.deleteByIdIn(anyCollection())).thenReturn(Mono.just(rows.size()));
+
+        ChatArchive archive = archive();
+        archive.openSegments();
+
+        assertThat(archive.archiveOnce().block()).isEqualTo(3);
+        verify(searchIndex).remove("general", Set.of(1L, 3L));
+        verify(searchIndex).remove("random", Set.of(2L));
+        assertThat(archive.before("general", null).map(ChatMessage::getId).collectList().block())
+                .containsExactly(3L, 1L);
+    }
+
+    private ChatArchive archive() {
+        return new ChatArchive(repository, searchIndex, new SimpleMeterRegistry(), false, Duration.ofHours(24),
+                Duration.ofHours(1), Duration.ofMinutes(5), directory.toString(), 1000);
+    }
+}
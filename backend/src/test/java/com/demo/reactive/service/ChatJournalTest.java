@@ -0,0 +1,122 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void recoversEntriesWhoseRowsWereNotWritten() throws Exception {
+        ChatJournal journal = open();
+        ChatMessage first = message(101, "hello");
+        ChatMessage second = message(102, "héllo wörld");
+        long firstSequence = journal.append(first).block();
+        long secondSequence = journal.append(second).block();
+        journal.close();
+
+        ChatJournal reopened = open();
+        assertThat(reopened.recovered()).extracting(ChatJournal.Entry::sequence)
+                .containsExactly(firstSequence, secondSequence);
+        assertThat(reopened.recovered()).extracting(ChatJournal.Entry::message)
+                .usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(first, second);
+        assertThat(reopened.maxRecoveredId()).isEqualTo(102);
+        reopened.close();
+    }
+
+    @Test
+    void skipsEntriesBehindTheCheckpoint() throws Exception {
+        ChatJournal journal = open();
+        long written = journal.append(message(101, "written")).block();
+        journal.append(message(102, "pending")).block();
+        journal.written(List.of(written));
+        journal.close();
+
+        ChatJournal reopened = open();
+        assertThat(reopened.recovered()).extracting(entry -> entry.message().getId()).containsExactly(102L);
+        reopened.close();
+    }
+
+    @Test
+    void stopsAtATornRecord() throws Exception {
+        ChatJournal journal = open();
+        journal.append(message(101, "intact")).block();
+        journal.append(message(102, "torn")).block();
+        journal.close();
+
+        // Flip the last payload byte of the second record, as if the crash cut it short
+        Path file = journalFile();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            int first = recordLength(channel, 0);
+            int second = recordLength(channel, first);
+            ByteBuffer last = ByteBuffer.allocate(1);
+            long at = first + second - 1;
+            channel.read(last, at);
+            last.put(0, (byte) (last.get(0) ^ 0xFF));
+            channel.write(last.rewind(), at);
+        }
+
+        ChatJournal reopened = open();
+        assertThat(reopened.recovered()).extracting(entry -> entry.message().getMessageText()).containsExactly("intact");
+        reopened.close();
+    }
+
+    @Test
+    void appendsAfterRestartContinueTheSequence() throws Exception {
+        ChatJournal journal = open();
+        long before = journal.append(message(101, "before")).block();
+        journal.close();
+
+        ChatJournal reopened = open();
+        long after = reopened.append(message(102, "after")).block();
+        assertThat(after).isGreaterThan(before);
+        reopened.close();
+    }
+
+    private ChatJournal open() throws IOException {
+        ChatJournal journal = new ChatJournal(new SimpleMeterRegistry(), true, directory.toString(),
+                DataSize.ofKilobytes(64), true);
+        journal.open();
+        return journal;
+    }
+
+    private Path journalFile() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().startsWith("journal-"))
+                    .sorted()
+                    .findFirst()
+                    .orElseThrow();
+        }
+    }
+
+    /**
+     * Size of the record at the offset, header included
+     */
+    private static int recordLength(FileChannel channel, long at) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        channel.read(length, at);
+        return 16 + length.getInt(0);
+    }
+
+    private static ChatMessage message(long id, String text) {
+        return new ChatMessage(id, "general", "alice", text, LocalDateTime.of(2024, 1, 2, 3, 4, 5, 678_000_000));
+    }
+}
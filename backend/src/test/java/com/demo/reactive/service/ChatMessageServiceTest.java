@@ -0,0 +1,69 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatMessageServiceTest {
+
+    private final ChatMessageRepository repository = mock(ChatMessageRepository.class);
+    private final ChatHistoryCache historyCache = mock(ChatHistoryCache.class);
+    private final ChatSearchIndex searchIndex = mock(ChatSearchIndex.class);
+    private final ChatJournal journal = mock(ChatJournal.class);
+
+    private ChatMessageService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatMessageService(repository, mock(ChatMessageIdAllocator.class), historyCache, searchIndex,
+                mock(ChatArchive.class), journal, mock(ChatBroadcaster.class), mock(ChatCluster.class),
+                mock(ChatPipelineMetrics.class), mock(ChatWriteAdmission.class), new SimpleMeterRegistry(),
+                100, Duration.ofMillis(10), 1000, 1, 200);
+        service.startWritePipeline();
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stopWritePipeline();
+    }
+
+    @Test
+    void replaySkipsEntriesWhoseRowsExist() {
+        ChatMessage stored = message(1);
+        ChatMessage lost = message(2);
+        when(journal.recovered()).thenReturn(List.of(new ChatJournal.Entry(11, stored), new ChatJournal.Entry(12, lost)));
+        when(repository.findExistingIds(anyCollection())).thenReturn(Flux.just(1L));
+        when(repository.insertAll(anyList())).thenReturn(Mono.just(1L));
+
+        service.replayJournal();
+
+        verify(journal).written(List.of(11L));
+        verify(repository, timeout(1_000)).insertAll(List.of(lost));
+        verify(journal, timeout(1_000)).written(List.of(12L));
+        verify(historyCache, never()).append(stored);
+        verify(historyCache).append(lost);
+        verify(searchIndex, never()).add(stored);
+        verify(searchIndex).add(lost);
+    }
+
+    private static ChatMessage message(long id) {
+        return new ChatMessage(id, "general", "alice", "message " + id, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,59 @@
+package com.demo.reactive.service;
+
+import com.demo.reactive.model.ChatMessage;
+import com.demo.reactive.repository.ChatMessageRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ChatSearchIndexTest {
+
+    private ChatSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        ChatMessageRepository repository = mock(ChatMessageRepository.class);
+        when(repository.findAllOrderById()).thenReturn(Flux.empty());
+        index = new ChatSearchIndex(repository, new SimpleMeterRegistry(), DataSize.ofMegabytes(2));
+        index.rebuild();
+    }
+
+    @Test
+    void ranksMessagesContainingMoreOfTheQuery() {
+        index.add(message(1, "deploy went fine"));
+        index.add(message(2, "deploy failed, rolling back the deploy"));
+        index.add(message(3, "lunch?"));
+
+        ChatSearchIndex.Page page = index.search("general", "deploy", 0, 10).block();
+
+        assertThat(page.total()).isEqualTo(2);
+        assertThat(page.hits()).extracting(ChatSearchIndex.Hit::id).containsExactly(2L, 1L);
+    }
+
+    @Test
+    void removedMessagesNoLongerMatch() {
+        index.add(message(1, "release notes"));
+        index.add(message(2, "release party"));
+        index.add(message(3, "party tonight"));
+
+        index.remove("general", Set.of(1L, 3L));
+
+        assertThat(index.search("general", "release party", 0, 10).block().hits())
+                .extracting(ChatSearchIndex.Hit::id)
+                .containsExactly(2L);
+        assertThat(index.search("general", "notes", 0, 10).block().total()).isZero();
+    }
+
+    private static ChatMessage message(long id, String text) {
+        return new ChatMessage(id, "general", "alice", text, LocalDateTime.now());
+    }
+}
@@ -1,7 +1,14 @@
 import { apiClient } from './client';
-import type { ChatMessage } from '../types';
+import type { ChatMessage, ChatSearchPage } from '../types';
 
 export const fetchChatHistory = async (roomId: string): Promise<ChatMessage[]> => {
     const response = await apiClient.get<ChatMessage[]>(`/chat/${roomId}/history`);
     return response.data;
 };
+
+export const searchChat = async (roomId: string, query: string, offset = 0): Promise<ChatSearchPage> => {
+    const response = await apiClient.get<ChatSearchPage>(`/chat/${roomId}/search`, {
+        params: { q: query, offset },
+    });
+    return response.data;
+};
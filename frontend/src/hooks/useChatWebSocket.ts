@@ -19,6 +19,7 @@ export const useChatWebSocket = (roomId: string): UseChatWebSocketReturn => {
     const [activeUsers, setActiveUsers] = useState<string[]>([]);
     const [userCount, setUserCount] = useState(0);
     const clientRef = useRef<Client | null>(null);
+    const presenceSeqRef = useRef(-1);
     const [userName, setUserName] = useState<string | null>(null);
 
     useEffect(() => {
@@ -37,12 +38,44 @@ export const useChatWebSocket = (roomId: string): UseChatWebSocketReturn => {
                     setMessages((prev) => [...prev, chatMessage]);
                 });
 
+                // Errors meant for this session only, such as messages dropped by the rate limit
+                client.subscribe('/user/queue/errors', (message: IMessage) => {
+                    console.warn('Server reported error: ' + JSON.parse(message.body).message);
+                });
+
+                // Deltas must arrive in sequence; on any gap (or a reset after the room emptied) resync
+                const applyPresence = (presence: PresenceEvent) => {
+                    if (presence.type === 'snapshot') {
+                        setActiveUsers(presence.activeUsers ?? []);
+                    } else if (presence.seq === presenceSeqRef.current + 1) {
+                        setActiveUsers((prev) => {
+                            const users = new Set(prev);
+                            presence.left?.forEach((name) => users.delete(name));
+                            presence.joined?.forEach((name) => users.add(name));
+                            return [...users];
+                        });
+                    } else {
+                        requestPresenceSnapshot();
+                        return;
+                    }
+                    presenceSeqRef.current = presence.seq;
+                    setUserCount(presence.userCount);
+                };
+
+                // One-shot reply from the server; used on connect and after a missed delta
+                const requestPresenceSnapshot = () => {
+                    const subscription = client.subscribe(`/app/chat/presence/${roomId}`, (message: IMessage) => {
+                        subscription.unsubscribe();
+                        applyPresence(JSON.parse(message.body));
+                    });
+                };
+
                 // Subscribe to presence updates
+                presenceSeqRef.current = -1;
                 client.subscribe(`/topic/presence/${roomId}`, (message: IMessage) => {
-                    const presence: PresenceEvent = JSON.parse(message.body);
-                    setActiveUsers(presence.activeUsers);
-                    setUserCount(presence.userCount);
+                    applyPresence(JSON.parse(message.body));
                 });
+                requestPresenceSnapshot();
 
                 // If we have a username, join the room
                 if (userName) {
@@ -6,7 +6,20 @@ export interface ChatMessage {
     createdAt?: string;
 }
 
+// One page of search results, best match first; score only compares hits within one search
+export interface ChatSearchPage {
+    query: string;
+    hits: { message: ChatMessage; score: number }[];
+    total: number;
+    nextOffset: number | null;
+}
+
+// A delta lists names that joined or left since seq - 1; a snapshot lists everyone as of seq
 export interface PresenceEvent {
-    activeUsers: string[];
+    type: 'delta' | 'snapshot';
+    seq: number;
+    activeUsers?: string[];
+    joined?: string[];
+    left?: string[];
     userCount: number;
 }
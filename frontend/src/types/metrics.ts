@@ -8,17 +8,73 @@ export interface JvmMetrics {
     daemonThreads: number;
 }
 
+export interface LatencyWindow {
+    ratePerSecond: number;
+    p50: number;
+    p95: number;
+    p99: number;
+    count: number;
+}
+
+export interface LatencyWindows {
+    last10s: LatencyWindow;
+    last1m: LatencyWindow;
+    last5m: LatencyWindow;
+}
+
 export interface HttpMetrics {
     totalRequests: number;
     requestsPerSecond: number;
     averageResponseTime: number;
     activeConnections: number;
+    latency: LatencyWindows;
 }
 
 export interface DbMetrics {
     averageQueryTime: number;
     activeConnections: number;
     totalQueries: number;
+    failedQueries: number;
+    cancelledQueries: number;
+    averageTimeToFirstRow: number;
+    queriesPerSecond: number;
+    latency: LatencyWindows;
+    pool: PoolMetrics;
+    admission: AdmissionMetrics;
+}
+
+export interface PoolMetrics {
+    acquired: number;
+    idle: number;
+    allocated: number;
+    maxAllocated: number;
+    pendingAcquires: number;
+    totalAcquires: number;
+    failedAcquires: number;
+    averageAcquireTime: number;
+    acquireLatency: LatencyWindows;
+}
+
+export interface AdmissionMetrics {
+    admitted: number;
+    delayed: number;
+    rejected: number;
+    waiting: number;
+}
+
+export interface StageMetrics {
+    count: number;
+    errors: number;
+    averageTime: number;
+    latency: LatencyWindows;
+}
+
+export interface ChatMetrics {
+    decode: StageMetrics;
+    persist: StageMetrics;
+    broadcast: StageMetrics;
+    total: StageMetrics;
+    write: StageMetrics;
 }
 
 export interface MetricsSnapshot {
@@ -26,4 +82,5 @@ export interface MetricsSnapshot {
     jvm: JvmMetrics;
     http: HttpMetrics;
     db: DbMetrics;
+    chat: ChatMetrics;
 }
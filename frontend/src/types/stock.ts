@@ -1,7 +1,8 @@
 export interface StockPrice {
     symbol: string;
     price: number;
-    timestamp: string;
+    changePercent: number;
+    timestamp: number;
 }
 
 export interface StockTransaction {
@@ -17,3 +18,36 @@ export interface Portfolio {
     transactions: StockTransaction[];
     totalValue: number;
 }
+
+export interface PortfolioPosition {
+    symbol: string;
+    quantity: number;
+    averageCost: number;
+    currentPrice: number;
+    marketValue: number;
+    unrealizedPnl: number;
+}
+
+// Streamed from /api/portfolio/{userId}/stream
+export interface PortfolioValuation {
+    userId: string;
+    timestamp: number;
+    totalValue: number;
+    costBasis: number;
+    unrealizedPnl: number;
+    positions: PortfolioPosition[];
+}
+
+// From /api/stocks/{symbol}/candles; each /stream event is a Candle[] as well,
+// the open candle preceded by the one it closed when an interval rolls over
+export interface Candle {
+    symbol: string;
+    resolution: '1s' | '1m' | '5m';
+    start: number;
+    open: number;
+    high: number;
+    low: number;
+    close: number;
+    ticks: number;
+    closed: boolean;
+}